@@ -0,0 +1,125 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that every way of calculating a frame gives exactly the frame
+ * calculated in one go: in progressive passes, resumed from a lower maximum
+ * of iterations, and panned from a previous frame.
+ *
+ */
+public class MandelbrotCalculatorTest {
+
+    private static final int SIZE = 101;
+    private static final double RADIUS_SQUARED = MandelbrotCalculator.DEFAULT_RADIUS_SQUARED;
+
+    private static final DeepViewport SEAHORSE_VALLEY = new DeepViewport(new BigDecimal("-0.7453"),
+            new BigDecimal("0.1127"), 0.0123, 0.0123);
+    private static final DeepViewport DOUBLE_DOUBLE = new DeepViewport(new BigDecimal("-1.7589"),
+            new BigDecimal("0.0"), 1e-11, 1e-11);
+
+    private final MandelbrotCalculator calculator = new MandelbrotCalculator();
+
+    @Test
+    void progressiveMatchesOneShot() {
+        for (boolean simd : new boolean[] {true, false}) {
+            this.calculator.setSimd(simd);
+            int[] progressive = new int[SIZE * SIZE];
+            this.calculator.calcMandelbrotSetProgressive(progressive, 0, SIZE, SIZE, SIZE, SEAHORSE_VALLEY, 2000,
+                    RADIUS_SQUARED, new CancellationToken(), new PassListener() {
+                        @Override
+                        public void passFinished(int[] buffer, int step) {
+                        }
+                    }, false);
+            assertArrayEquals(this.oneShot(SEAHORSE_VALLEY, 2000), progressive);
+        }
+    }
+
+    @Test
+    void periodicProgressiveMatchesOneShot() {
+        this.calculator.setPeriodicityCheck(true);
+        int[] progressive = new int[SIZE * SIZE];
+        this.calculator.calcMandelbrotSetProgressive(progressive, 0, SIZE, SIZE, SIZE, SEAHORSE_VALLEY, 2000,
+                RADIUS_SQUARED, new CancellationToken(), new PassListener() {
+                    @Override
+                    public void passFinished(int[] buffer, int step) {
+                    }
+                }, false);
+        assertArrayEquals(this.oneShot(SEAHORSE_VALLEY, 2000), progressive);
+    }
+
+    @Test
+    void resumedMatchesOneShot() {
+        for (boolean simd : new boolean[] {true, false}) {
+            this.calculator.setSimd(simd);
+            int[] frame = new int[SIZE * SIZE];
+            ResumeState state = this.calculator.calcMandelbrotSetInto(frame, 0, SIZE, SIZE, SIZE, SEAHORSE_VALLEY,
+                    300, RADIUS_SQUARED, false, new CancellationToken(), true);
+            assertNotNull(state);
+            state = this.calculator.calcMandelbrotSetResumed(frame, 0, SIZE, state, 1000, new CancellationToken());
+            assertArrayEquals(this.oneShot(SEAHORSE_VALLEY, 1000), frame);
+            this.calculator.calcMandelbrotSetResumed(frame, 0, SIZE, state, 2500, new CancellationToken());
+            assertArrayEquals(this.oneShot(SEAHORSE_VALLEY, 2500), frame);
+        }
+    }
+
+    @Test
+    void flatMatchesTwoDimensional() {
+        int[][] rows = this.calculator.calcMandelbrotSet(SIZE, SIZE, -0.76, -0.73, 0.09, 0.12, 1000,
+                RADIUS_SQUARED);
+        int[] flat = new int[SIZE * SIZE];
+        this.calculator.calcMandelbrotSetInto(flat, 0, SIZE, SIZE, SIZE, -0.76, -0.73, 0.09, 0.12, 1000,
+                RADIUS_SQUARED);
+        for (int y = 0; y < SIZE; y++) {
+            assertArrayEquals(rows[y], Arrays.copyOfRange(flat, y * SIZE, (y + 1) * SIZE));
+        }
+    }
+
+    @Test
+    void pannedMatchesOneShot() {
+        this.checkPans(SEAHORSE_VALLEY);
+    }
+
+    @Test
+    void deepPannedMatchesOneShot() {
+        this.checkPans(DOUBLE_DOUBLE);
+    }
+
+    /**
+     * Pans a frame at random and back to where it started, checking each
+     * panned frame against one calculated in one go.
+     */
+    private void checkPans(DeepViewport start) {
+        Random random = new Random(7);
+        DeepViewport viewport = start;
+        int[] frame = this.oneShot(start, 2000);
+        int[] first = frame;
+        int totalX = 0;
+        int totalY = 0;
+        for (int i = 0; i < 6; i++) {
+            int dx = i == 5 ? -totalX : random.nextInt(61) - 30;
+            int dy = i == 5 ? -totalY : random.nextInt(61) - 30;
+            totalX += dx;
+            totalY += dy;
+            viewport = viewport.pan(dx, dy, SIZE, SIZE);
+            int[] panned = new int[SIZE * SIZE];
+            this.calculator.calcMandelbrotSetPanned(panned, 0, SIZE, SIZE, SIZE, frame, dx, dy, viewport, 2000,
+                    RADIUS_SQUARED, new CancellationToken(), false);
+            assertArrayEquals(this.oneShot(viewport, 2000), panned);
+            frame = panned;
+        }
+        assertArrayEquals(first, frame);
+    }
+
+    private int[] oneShot(DeepViewport viewport, int maxIterations) {
+        int[] frame = new int[SIZE * SIZE];
+        this.calculator.calcMandelbrotSetInto(frame, 0, SIZE, SIZE, SIZE, viewport, maxIterations, RADIUS_SQUARED,
+                false, new CancellationToken(), false);
+        return frame;
+    }
+}
@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that models survive being saved and loaded, both in the .mandelbrot
+ * format and as the serialized Models that older versions saved.
+ *
+ */
+public class MandelbrotFileTest {
+
+    private static final int SIZE = 48;
+
+    @TempDir
+    File directory;
+
+    private Model model;
+    private int[] firstFrame;
+    private DeepViewport firstViewport;
+    private int[] secondFrame;
+
+    @BeforeEach
+    void setUp() {
+        this.model = new Model();
+        this.model.setFrameSize(SIZE);
+        this.model.setProgressive(false);
+        render(this.model);
+        this.firstFrame = this.model.getMData();
+        this.firstViewport = this.model.getViewport();
+        this.model.calcMinMax(10, 12, 30, 32);
+        this.model.setMaxIts("300");
+        render(this.model);
+        this.secondFrame = this.model.getMData();
+    }
+
+    @Test
+    void roundTrip() throws Exception {
+        this.model.setSmooth(true);
+        this.model.setPeriodicityCheck(true);
+        File file = new File(this.directory, "round.mandelbrot");
+        MandelbrotFile.write(this.model, file);
+
+        Model loaded = MandelbrotFile.read(file);
+        assertEquals(this.model.getViewport(), loaded.getViewport());
+        assertEquals(300, loaded.getMaxIts());
+        assertEquals(SIZE, loaded.getFrameSize());
+        assertTrue(loaded.isSmooth());
+        assertTrue(loaded.isPeriodicityCheck());
+        assertEquals(!this.model.isProgressive(), !loaded.isProgressive());
+        assertArrayEquals(this.secondFrame, loaded.getMData());
+        assertEquals(2, loaded.getHistory().size());
+        loaded.undo();
+        assertArrayEquals(this.firstFrame, loaded.getMData());
+        assertEquals(this.firstViewport, loaded.getViewport());
+    }
+
+    @Test
+    void serializedModelIsMigrated() throws Exception {
+        // the fields as models saved before flat frames and deep zoom left
+        // them: no flat frame or viewports, and int[][] frames in history
+        History history = this.model.getHistory();
+        ArrayList<Object> rows = new ArrayList<Object>();
+        rows.add(toRows(this.firstFrame));
+        rows.add(toRows(this.secondFrame));
+        setField(history, "dataList", rows);
+        setField(history, "viewportList", null);
+        setField(history, "budgetBytes", 0L);
+        DeepViewport viewport = this.model.getViewport();
+        setField(this.model, "mFlatData", null);
+        setField(this.model, "viewport", null);
+        File file = new File(this.directory, "old.mandelbrot");
+        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+        try {
+            out.writeObject(this.model);
+        } finally {
+            out.close();
+        }
+
+        Model loaded = MandelbrotFile.read(file);
+        assertArrayEquals(this.secondFrame, loaded.getMData());
+        // made from the double bounds, which were all older files had
+        assertEquals(DeepViewport.fromBounds(viewport.getMinReal(), viewport.getMaxReal(), viewport.getMinImag(),
+                viewport.getMaxImag()), loaded.getViewport());
+        assertEquals(300, loaded.getMaxIts());
+        loaded.undo();
+        assertArrayEquals(this.firstFrame, loaded.getMData());
+
+        // saved again in the current format
+        File saved = new File(this.directory, "new.mandelbrot");
+        MandelbrotFile.write(loaded, saved);
+        assertArrayEquals(this.firstFrame, MandelbrotFile.read(saved).getMData());
+    }
+
+    /**
+     * Calculates the model's frame as the renderer would, in one pass.
+     */
+    private static void render(Model model) {
+        RenderJob job = model.createJob();
+        model.applyRender(job, model.render(job));
+    }
+
+    private static int[][] toRows(int[] frame) {
+        int[][] rows = new int[SIZE][SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            System.arraycopy(frame, y * SIZE, rows[y], 0, SIZE);
+        }
+        return rows;
+    }
+
+    private static void setField(Object object, String name, Object value) throws IOException {
+        try {
+            Field field = object.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(object, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("No field " + name, e);
+        }
+    }
+}
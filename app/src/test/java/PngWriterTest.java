@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the PNGs written are read back by a standard decoder with
+ * every pixel as written.
+ *
+ */
+public class PngWriterTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void wholeImageReadsBack() throws IOException {
+        int[] pixels = colours(37, 23);
+        File file = new File(this.directory, "small.png");
+        PngWriter.write(pixels, 37, 23, file);
+        checkImage(file, pixels, 37, 23);
+    }
+
+    @Test
+    void imageOfManyBlocksReadsBack() throws IOException {
+        // far more than one block of compressed rows, written in bands
+        int width = 300;
+        int height = 400;
+        int[] pixels = colours(width, height);
+        File file = new File(this.directory, "large.png");
+        PngWriter png = new PngWriter(new BufferedOutputStream(new FileOutputStream(file)), width, height, 1);
+        try {
+            for (int y = 0; y < height; y += 64) {
+                png.writeRows(pixels, y * width, width, Math.min(64, height - y));
+            }
+        } finally {
+            png.close();
+        }
+        checkImage(file, pixels, width, height);
+    }
+
+    /**
+     * Returns the colours of a frame of the Mandelbrot set, which has both
+     * long runs and busy areas.
+     */
+    private static int[] colours(int width, int height) {
+        int[] frame = new int[width * height];
+        new MandelbrotCalculator().calcMandelbrotSetInto(frame, 0, width, width, height, -2.2, 0.8, -1.5, 1.5, 200,
+                MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+        int[] pixels = new int[frame.length];
+        for (int i = 0; i < frame.length; i++) {
+            pixels[i] = 0xFF000000 | frame[i] * 0x010307 + i % 5;
+        }
+        return pixels;
+    }
+
+    private static void checkImage(File file, int[] pixels, int width, int height) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        assertNotNull(image);
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(pixels[y * width + x] & 0xFFFFFF, image.getRGB(x, y) & 0xFFFFFF,
+                        "pixel " + x + "," + y);
+            }
+        }
+    }
+}
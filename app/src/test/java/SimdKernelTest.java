@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the vector kernel gives exactly the values of the scalar
+ * kernel, for whole tiles and for the spread out pixels of progressive
+ * passes.
+ *
+ */
+public class SimdKernelTest {
+
+    private static final int SIZE = 67;
+    private static final double RADIUS_SQUARED = MandelbrotCalculator.DEFAULT_RADIUS_SQUARED;
+
+    private MandelbrotCalculator calculator;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(MandelbrotCalculator.SIMD_AVAILABLE && SimdKernel.isUseful());
+        this.calculator = new MandelbrotCalculator();
+    }
+
+    @Test
+    void wholeSetMatchesScalar() {
+        assertEquals(0, this.countMismatches(TileGrid.forBounds(SIZE, SIZE, -2.2, 0.8, -1.5, 1.5), 500, 1, 1));
+    }
+
+    @Test
+    void seahorseValleyMatchesScalar() {
+        assertEquals(0, this.countMismatches(TileGrid.forBounds(SIZE, SIZE, -0.76, -0.73, 0.09, 0.12), 2000, 1, 1));
+    }
+
+    @Test
+    void spacedPixelsMatchScalar() {
+        TileGrid grid = TileGrid.forBounds(SIZE, SIZE, -1.8, -1.7, -0.05, 0.05);
+        assertEquals(0, this.countMismatches(grid, 1000, 4, 4));
+        assertEquals(0, this.countMismatches(grid, 1000, 2, 8));
+    }
+
+    @Test
+    void withoutBulbCheckMatchesScalar() {
+        this.calculator.setBulbCheck(false);
+        assertEquals(0, this.countMismatches(TileGrid.forBounds(SIZE, SIZE, -1.3, 0.4, -0.8, 0.8), 300, 1, 1));
+    }
+
+    /**
+     * Calculates every xStep-th pixel across and yStep-th down of the frame
+     * on grid with each kernel, and returns how many of them differ.
+     */
+    private int countMismatches(TileGrid grid, int maxIterations, int xStep, int yStep) {
+        int[] scalar = new int[SIZE * SIZE];
+        int[] vector = new int[SIZE * SIZE];
+        this.calculator.scalarKernel(grid, maxIterations, RADIUS_SQUARED, null).calcSpaced(scalar, 0, SIZE, 0, 0,
+                SIZE, SIZE, xStep, yStep);
+        new SimdKernel(grid, maxIterations, RADIUS_SQUARED, this.calculator.isBulbCheck(),
+                this.calculator.getStats(), null).calcSpaced(vector, 0, SIZE, 0, 0, SIZE, SIZE, xStep, yStep);
+
+        int mismatches = 0;
+        for (int i = 0; i < scalar.length; i++) {
+            if (scalar[i] != vector[i]) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+}
@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures how many pixels rectangle subdivision gets wrong by filling a
+ * rectangle that a thin filament crosses.
+ *
+ */
+public class SubdivisionTaskTest {
+
+    private static final int SIZE = 120;
+    private static final double RADIUS_SQUARED = MandelbrotCalculator.DEFAULT_RADIUS_SQUARED;
+
+    @Test
+    void wholeSetIsNearlyExact() {
+        assertTrue(countSubdivisionErrors(-2.2, 0.8, -1.5, 1.5, 500) <= SIZE * SIZE / 100);
+    }
+
+    @Test
+    void seahorseValleyIsNearlyExact() {
+        assertTrue(countSubdivisionErrors(-0.76, -0.73, 0.09, 0.12, 1000) <= SIZE * SIZE / 100);
+    }
+
+    /**
+     * Calculates a view both with calcMandelbrotSetSubdivided and with
+     * calcMandelbrotSetInto, and returns how many pixels differ.
+     */
+    private static int countSubdivisionErrors(double minReal, double maxReal, double minImaginary,
+            double maxImaginary, int maxIterations) {
+        MandelbrotCalculator calculator = new MandelbrotCalculator();
+        int[] exact = new int[SIZE * SIZE];
+        int[] subdivided = new int[SIZE * SIZE];
+        calculator.calcMandelbrotSetInto(exact, 0, SIZE, SIZE, SIZE, minReal, maxReal, minImaginary, maxImaginary,
+                maxIterations, RADIUS_SQUARED);
+        calculator.calcMandelbrotSetSubdivided(subdivided, 0, SIZE, SIZE, SIZE, minReal, maxReal, minImaginary,
+                maxImaginary, maxIterations, RADIUS_SQUARED);
+
+        int errors = 0;
+        for (int i = 0; i < exact.length; i++) {
+            if (exact[i] != subdivided[i]) {
+                errors++;
+            }
+        }
+        return errors;
+    }
+}
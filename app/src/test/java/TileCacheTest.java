@@ -0,0 +1,72 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that frames assembled from cached tiles are identical to frames
+ * calculated afresh, and that the cache keeps within its budget.
+ *
+ */
+public class TileCacheTest {
+
+    private static final int SIZE = 200;
+    private static final int MAX_ITERATIONS = 2000;
+    private static final double RADIUS_SQUARED = MandelbrotCalculator.DEFAULT_RADIUS_SQUARED;
+
+    private final MandelbrotCalculator calculator = new MandelbrotCalculator();
+
+    @Test
+    void pannedFrameFromCacheMatchesFresh() {
+        TileCache cache = new TileCache();
+        DeepViewport viewport = new DeepViewport(new BigDecimal("-0.7453"), new BigDecimal("0.1127"), 0.0123,
+                0.0123);
+        assertArrayEquals(this.fresh(viewport), this.cached(viewport, cache));
+
+        DeepViewport panned = viewport.pan(37, 19, SIZE, SIZE);
+        long hits = cache.getHits();
+        assertArrayEquals(this.fresh(panned), this.cached(panned, cache));
+        assertTrue(cache.getHits() > hits);
+    }
+
+    @Test
+    void defaultViewFromCacheMatchesFresh() {
+        TileCache cache = new TileCache();
+        DeepViewport viewport = DeepViewport.fromBounds(MandelbrotCalculator.INITIAL_MIN_REAL,
+                MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY,
+                MandelbrotCalculator.INITIAL_MAX_IMAGINARY);
+        this.cached(viewport, cache);
+        long hits = cache.getHits();
+        assertArrayEquals(this.fresh(viewport), this.cached(viewport, cache));
+        assertTrue(cache.getHits() > hits);
+    }
+
+    @Test
+    void budgetEvictsLeastRecentlyUsed() {
+        int[] tile = new int[TileCache.TILE_SIZE * TileCache.TILE_SIZE];
+        TileCache cache = new TileCache(3 * (4L * tile.length + 128));
+        TileGrid grid = TileGrid.forBounds(SIZE, SIZE, -2, 1, -1.5, 1.5);
+        for (int x = 0; x < 4; x++) {
+            cache.put(new TileKey(grid, x, 0, MAX_ITERATIONS, RADIUS_SQUARED, false), tile);
+        }
+        assertEquals(3, cache.getTileCount());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    private int[] fresh(DeepViewport viewport) {
+        int[] frame = new int[SIZE * SIZE];
+        this.calculator.calcMandelbrotSetInto(frame, 0, SIZE, SIZE, SIZE, viewport, MAX_ITERATIONS, RADIUS_SQUARED,
+                false, new CancellationToken(), false);
+        return frame;
+    }
+
+    private int[] cached(DeepViewport viewport, TileCache cache) {
+        int[] frame = new int[SIZE * SIZE];
+        this.calculator.calcMandelbrotSetCached(frame, 0, SIZE, SIZE, SIZE, viewport, MAX_ITERATIONS,
+                RADIUS_SQUARED, cache, new CancellationToken(), false);
+        return frame;
+    }
+}
@@ -0,0 +1,66 @@
+import mandelbrot.bench.Fixture;
+
+/**
+ * Colours one frame of Seahorse Valley into MDisplay's image, as painting the
+ * display does whenever its data changes. The parameters are the colouring,
+ * banded, smooth or equalized, the maximum iterations and the width and
+ * height of the frame. Smooth and equalized colouring use the first built in
+ * gradient, and banded colouring the gradient's lookup table.
+ *
+ */
+public class ColouringFixture implements Fixture {
+
+    private MDisplay display;
+    private int[] data;
+    private float[] smoothData;
+    private long[] cumulative;
+    private int size;
+
+    @Override
+    public void setUp(String... params) {
+        String colouring = params[0];
+        int maxIts = Integer.parseInt(params[1]);
+        this.size = Integer.parseInt(params[2]);
+        MandelbrotCalculator calculator = new MandelbrotCalculator();
+        DeepViewport viewport = KernelFixture.viewport("seahorse");
+        this.data = new int[this.size * this.size];
+        calculator.calcMandelbrotSetInto(this.data, 0, this.size, this.size, this.size, viewport, maxIts,
+                MandelbrotCalculator.DEFAULT_RADIUS_SQUARED, false);
+        if (colouring.equals("smooth")) {
+            this.smoothData = calculator.calcSmooth(this.data, 0, this.size, this.size, this.size, viewport,
+                    maxIts, CancellationToken.NONE);
+        } else if (colouring.equals("equalized")) {
+            this.cumulative = calculator.calcHistogram(this.data, 0, this.size, this.size, this.size, maxIts);
+        } else if (!colouring.equals("banded")) {
+            throw new IllegalArgumentException("Unknown colouring " + colouring);
+        }
+        this.display = new MDisplay();
+        this.display.setMaxIts(maxIts);
+        // from black and white to the first gradient
+        this.display.setColourMode();
+        this.display.setEqualized(this.cumulative != null);
+    }
+
+    @Override
+    public Object run() {
+        // new data leaves the image to be coloured again
+        this.display.setMData(this.data, this.size);
+        if (this.smoothData != null) {
+            this.display.setSmoothData(this.smoothData);
+        }
+        if (this.cumulative != null) {
+            this.display.setCumulative(this.cumulative);
+        }
+        return this.display.getImg();
+    }
+
+    @Override
+    public long getBytes() {
+        return 0;
+    }
+
+    @Override
+    public void tearDown() {
+        this.display = null;
+    }
+}
@@ -0,0 +1,62 @@
+import java.io.File;
+
+import mandelbrot.bench.Fixture;
+
+/**
+ * Saves or loads a model with a history of frames as a .mandelbrot file. The
+ * parameters are the operation, save or load, the number of history entries
+ * and the width and height of the frames.
+ *
+ * The model is built in setUp by zooming into the set one step at a time, as
+ * the user would; for load it is saved once there too.
+ *
+ */
+public class FileFixture implements Fixture {
+
+    private Model model;
+    private File file;
+    private boolean save;
+
+    @Override
+    public void setUp(String... params) throws Exception {
+        this.save = params[0].equals("save");
+        if (!this.save && !params[0].equals("load")) {
+            throw new IllegalArgumentException("Unknown operation " + params[0]);
+        }
+        int entries = Integer.parseInt(params[1]);
+        int size = Integer.parseInt(params[2]);
+        this.model = new Model();
+        this.model.setFrameSize(size);
+        this.model.setMaxIts("500");
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) {
+                // zoom into the middle of the left half of the frame
+                this.model.calcMinMax(size / 8, size / 4, size / 2, size * 3 / 4);
+            }
+            RenderJob job = this.model.createJob();
+            this.model.applyRender(job, this.model.render(job));
+        }
+        this.file = File.createTempFile("bench", ".mandelbrot");
+        this.file.deleteOnExit();
+        MandelbrotFile.write(this.model, this.file);
+    }
+
+    @Override
+    public Object run() throws Exception {
+        if (this.save) {
+            MandelbrotFile.write(this.model, this.file);
+            return this.file;
+        }
+        return MandelbrotFile.read(this.file);
+    }
+
+    @Override
+    public long getBytes() {
+        return this.file.length();
+    }
+
+    @Override
+    public void tearDown() {
+        this.file.delete();
+    }
+}
@@ -0,0 +1,70 @@
+import java.math.BigDecimal;
+
+import mandelbrot.bench.Fixture;
+
+/**
+ * Fills a new History with frames, as zooming in step by step does, so that
+ * its memory can be measured as it grows past its budget. The parameters are
+ * the number of frames to add, the width and height of the frames and the
+ * history's memory budget in megabytes.
+ *
+ * The frames are calculated once, in setUp, zooming into Seahorse Valley by
+ * a factor of two each time, and added in turn, each as a new array as the
+ * model adds them.
+ *
+ */
+public class HistoryFixture implements Fixture {
+
+    // the number of different frames calculated and cycled through
+    private static final int DISTINCT_FRAMES = 8;
+    private static final int MAX_ITS = 500;
+
+    private int[][] frames;
+    private DeepViewport[] viewports;
+    private int count;
+    private long budgetBytes;
+    private History history;
+
+    @Override
+    public void setUp(String... params) {
+        this.count = Integer.parseInt(params[0]);
+        int size = Integer.parseInt(params[1]);
+        this.budgetBytes = Long.parseLong(params[2]) * 1024 * 1024;
+        MandelbrotCalculator calculator = new MandelbrotCalculator();
+        this.frames = new int[DISTINCT_FRAMES][];
+        this.viewports = new DeepViewport[DISTINCT_FRAMES];
+        DeepViewport viewport = KernelFixture.viewport("full");
+        DeepViewport target = KernelFixture.viewport("seahorse");
+        for (int i = 0; i < DISTINCT_FRAMES; i++) {
+            this.frames[i] = new int[size * size];
+            calculator.calcMandelbrotSetInto(this.frames[i], 0, size, size, size, viewport, MAX_ITS,
+                    MandelbrotCalculator.DEFAULT_RADIUS_SQUARED, false);
+            this.viewports[i] = viewport;
+            viewport = new DeepViewport(
+                    viewport.getCentreReal().add(target.getCentreReal()).divide(BigDecimal.valueOf(2)),
+                    viewport.getCentreImag().add(target.getCentreImag()).divide(BigDecimal.valueOf(2)),
+                    viewport.getRealSpan() / 2, viewport.getImagSpan() / 2);
+        }
+    }
+
+    @Override
+    public Object run() {
+        this.history = new History();
+        this.history.setBudgetBytes(this.budgetBytes);
+        for (int i = 0; i < this.count; i++) {
+            int[] frame = this.frames[i % DISTINCT_FRAMES];
+            this.history.add(frame.clone(), MAX_ITS, this.viewports[i % DISTINCT_FRAMES]);
+        }
+        return this.history;
+    }
+
+    @Override
+    public long getBytes() {
+        return this.history == null ? 0 : this.history.getUsedBytes();
+    }
+
+    @Override
+    public void tearDown() {
+        this.history = null;
+    }
+}
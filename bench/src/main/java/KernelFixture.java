@@ -0,0 +1,70 @@
+import java.math.BigDecimal;
+
+import mandelbrot.bench.Fixture;
+
+/**
+ * Calculates one frame of a standard viewport with
+ * MandelbrotCalculator.calcMandelbrotSetInto. The parameters are the name of
+ * the viewport, the maximum iterations and the width and height of the frame.
+ *
+ * The viewports are the whole set, Seahorse Valley, Elephant Valley, and a
+ * viewport deep enough to be calculated by perturbation.
+ *
+ */
+public class KernelFixture implements Fixture {
+
+    private MandelbrotCalculator calculator;
+    private DeepViewport viewport;
+    private int maxIts;
+    private int size;
+    private int[] buffer;
+
+    /**
+     * Returns one of the standard viewports by name.
+     *
+     * @param name
+     *            full, seahorse, elephant or deep
+     * @return the viewport
+     */
+    static DeepViewport viewport(String name) {
+        if (name.equals("full")) {
+            return DeepViewport.fromBounds(MandelbrotCalculator.INITIAL_MIN_REAL,
+                    MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY,
+                    MandelbrotCalculator.INITIAL_MAX_IMAGINARY);
+        } else if (name.equals("seahorse")) {
+            return DeepViewport.fromBounds(-0.7485, -0.7425, 0.0985, 0.1045);
+        } else if (name.equals("elephant")) {
+            return DeepViewport.fromBounds(0.2675, 0.2825, -0.0075, 0.0075);
+        } else if (name.equals("deep")) {
+            return new DeepViewport(new BigDecimal("-0.743643887037158704752191506114774"),
+                    new BigDecimal("0.131825904205311970493132056385139"), 1e-20, 1e-20);
+        }
+        throw new IllegalArgumentException("Unknown viewport " + name);
+    }
+
+    @Override
+    public void setUp(String... params) {
+        this.calculator = new MandelbrotCalculator();
+        this.viewport = viewport(params[0]);
+        this.maxIts = Integer.parseInt(params[1]);
+        this.size = Integer.parseInt(params[2]);
+        this.buffer = new int[this.size * this.size];
+    }
+
+    @Override
+    public Object run() {
+        this.calculator.calcMandelbrotSetInto(this.buffer, 0, this.size, this.size, this.size, this.viewport,
+                this.maxIts, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED, false);
+        return this.buffer;
+    }
+
+    @Override
+    public long getBytes() {
+        return 0;
+    }
+
+    @Override
+    public void tearDown() {
+        this.buffer = null;
+    }
+}
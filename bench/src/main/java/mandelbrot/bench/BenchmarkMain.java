@@ -0,0 +1,39 @@
+package mandelbrot.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks as JMH's own main does, taking the same options, but
+ * writes the results as JSON to jmh-result.json unless told otherwise, so
+ * that runs of different versions can be compared by machine.
+ *
+ */
+public class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args
+     *            JMH's options, such as a regular expression naming the
+     *            benchmarks to run
+     * @throws Exception
+     *             if the benchmarks could not be run
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<String>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.add(0, "-rf");
+            options.add(1, "json");
+        }
+        if (!options.contains("-rff")) {
+            options.add(0, "-rff");
+            options.add(1, "jmh-result.json");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,28 @@
+package mandelbrot.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reports a size in bytes alongside a benchmark's time, such as the memory a
+ * history holds on to or the size of a saved file, as a secondary result of
+ * the benchmark. Each iteration reports the size after its last operation.
+ *
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class ByteCounters {
+
+    public long bytes;
+
+    /**
+     * Forgets the size reported by the iteration before.
+     */
+    @Setup(Level.Iteration)
+    public void clear() {
+        this.bytes = 0;
+    }
+}
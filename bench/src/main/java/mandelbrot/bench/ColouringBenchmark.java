@@ -0,0 +1,77 @@
+package mandelbrot.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long MDisplay takes to colour a frame into its image, banded
+ * through the palette's lookup table, smoothly or equalized (see
+ * ColouringFixture).
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class ColouringBenchmark {
+
+    @Param({"banded", "smooth", "equalized"})
+    public String colouring;
+
+    @Param({"1000"})
+    public String maxIts;
+
+    @Param({"900"})
+    public String size;
+
+    private Fixture fixture;
+
+    /**
+     * Calculates the frame to colour and creates the display.
+     *
+     * @throws Exception
+     *             if the fixture could not be set up
+     */
+    @Setup
+    public void setUp() throws Exception {
+        this.fixture = Fixture.create("ColouringFixture");
+        this.fixture.setUp(this.colouring, this.maxIts, this.size);
+    }
+
+    /**
+     * Colours the frame once.
+     *
+     * @return the coloured image
+     * @throws Exception
+     *             if the colouring failed
+     */
+    @Benchmark
+    public Object colour() throws Exception {
+        return this.fixture.run();
+    }
+
+    /**
+     * Releases the display.
+     *
+     * @throws Exception
+     *             if the fixture could not be cleaned up
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        this.fixture.tearDown();
+    }
+}
@@ -0,0 +1,81 @@
+package mandelbrot.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long saving and loading a model with a history takes, and the
+ * size of the file, reported as the secondary result "bytes" (see
+ * FileFixture).
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class FileBenchmark {
+
+    @Param({"save", "load"})
+    public String operation;
+
+    @Param({"1", "10"})
+    public String entries;
+
+    @Param({"900"})
+    public String size;
+
+    private Fixture fixture;
+
+    /**
+     * Builds the model, and saves it for loading.
+     *
+     * @throws Exception
+     *             if the fixture could not be set up
+     */
+    @Setup
+    public void setUp() throws Exception {
+        this.fixture = Fixture.create("FileFixture");
+        this.fixture.setUp(this.operation, this.entries, this.size);
+    }
+
+    /**
+     * Saves or loads the model once.
+     *
+     * @param counters
+     *            where the size of the file is reported
+     * @return the file saved or the model loaded
+     * @throws Exception
+     *             if the model could not be saved or loaded
+     */
+    @Benchmark
+    public Object saveOrLoad(ByteCounters counters) throws Exception {
+        Object result = this.fixture.run();
+        counters.bytes = this.fixture.getBytes();
+        return result;
+    }
+
+    /**
+     * Deletes the file.
+     *
+     * @throws Exception
+     *             if the fixture could not be cleaned up
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        this.fixture.tearDown();
+    }
+}
@@ -0,0 +1,64 @@
+package mandelbrot.bench;
+
+/**
+ * A piece of the program's work set up to be benchmarked. The program's
+ * classes are all in the default package, which a class in a package cannot
+ * name, and JMH will not generate benchmarks in the default package. So each
+ * benchmark drives its work through a fixture: a class in the default package
+ * which implements this interface, and which the benchmark loads by name.
+ *
+ */
+public interface Fixture {
+
+    /**
+     * Sets up the work, outside of any measurement.
+     *
+     * @param params
+     *            the benchmark's parameters, in the order the fixture
+     *            documents
+     * @throws Exception
+     *             if the work could not be set up
+     */
+    void setUp(String... params) throws Exception;
+
+    /**
+     * Does the work once.
+     *
+     * @return the result of the work, for the benchmark to consume
+     * @throws Exception
+     *             if the work failed
+     */
+    Object run() throws Exception;
+
+    /**
+     * Returns how much memory the result of the last run holds on to, for
+     * fixtures which measure memory.
+     *
+     * @return the size in bytes; 0 if the fixture does not measure memory
+     */
+    long getBytes();
+
+    /**
+     * Releases anything set up, outside of any measurement.
+     *
+     * @throws Exception
+     *             if the work could not be cleaned up
+     */
+    void tearDown() throws Exception;
+
+    /**
+     * Creates a fixture from its class name.
+     *
+     * @param className
+     *            the name of a class in the default package which implements
+     *            Fixture and has a public constructor without parameters
+     * @return a new instance of the class
+     */
+    static Fixture create(String className) {
+        try {
+            return (Fixture) Class.forName(className).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create fixture " + className, e);
+        }
+    }
+}
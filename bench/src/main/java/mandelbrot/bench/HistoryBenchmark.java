@@ -0,0 +1,82 @@
+package mandelbrot.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long adding frames to a History takes, and how much memory
+ * the history holds on to afterwards, as it packs and drops frames to stay
+ * within its budget (see HistoryFixture). The memory is reported as the
+ * secondary result "bytes".
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class HistoryBenchmark {
+
+    @Param({"10", "50", "200"})
+    public String frames;
+
+    @Param({"900"})
+    public String size;
+
+    @Param({"64"})
+    public String budgetMegabytes;
+
+    private Fixture fixture;
+
+    /**
+     * Calculates the frames to add.
+     *
+     * @throws Exception
+     *             if the fixture could not be set up
+     */
+    @Setup
+    public void setUp() throws Exception {
+        this.fixture = Fixture.create("HistoryFixture");
+        this.fixture.setUp(this.frames, this.size, this.budgetMegabytes);
+    }
+
+    /**
+     * Fills a new history with the frames.
+     *
+     * @param counters
+     *            where the history's memory is reported
+     * @return the history
+     * @throws Exception
+     *             if the frames could not be added
+     */
+    @Benchmark
+    public Object add(ByteCounters counters) throws Exception {
+        Object history = this.fixture.run();
+        counters.bytes = this.fixture.getBytes();
+        return history;
+    }
+
+    /**
+     * Releases the history.
+     *
+     * @throws Exception
+     *             if the fixture could not be cleaned up
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        this.fixture.tearDown();
+    }
+}
@@ -0,0 +1,76 @@
+package mandelbrot.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long MandelbrotCalculator takes to calculate a frame of each
+ * standard viewport (see KernelFixture) at several maximum iterations.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class KernelBenchmark {
+
+    @Param({"full", "seahorse", "elephant", "deep"})
+    public String viewport;
+
+    @Param({"100", "1000", "10000"})
+    public String maxIts;
+
+    @Param({"512"})
+    public String size;
+
+    private Fixture fixture;
+
+    /**
+     * Creates the calculator and the frame's buffer.
+     *
+     * @throws Exception
+     *             if the fixture could not be set up
+     */
+    @Setup
+    public void setUp() throws Exception {
+        this.fixture = Fixture.create("KernelFixture");
+        this.fixture.setUp(this.viewport, this.maxIts, this.size);
+    }
+
+    /**
+     * Calculates one frame.
+     *
+     * @return the frame's values
+     * @throws Exception
+     *             if the calculation failed
+     */
+    @Benchmark
+    public Object calculate() throws Exception {
+        return this.fixture.run();
+    }
+
+    /**
+     * Releases the frame's buffer.
+     *
+     * @throws Exception
+     *             if the fixture could not be cleaned up
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        this.fixture.tearDown();
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * A flag which one thread sets to tell a calculation running on other threads
+ * that its result is no longer wanted. The calculation checks the flag
+ * between tiles and stops calculating as soon as it is set, leaving the rest
+ * of its buffer unfilled.
+ *
+ */
+public class CancellationToken {
+
+    /** A token which is never cancelled, for calculations that always finish. */
+    static final CancellationToken NONE = new CancellationToken();
+
+    private volatile boolean cancelled;
+
+    /**
+     * Asks the calculation holding this token to stop.
+     */
+    public void cancel() {
+        if (this != NONE) {
+            this.cancelled = true;
+        }
+    }
+
+    /**
+     * Returns whether cancel has been called.
+     *
+     * @return true if the calculation should stop
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Returns a kernel which calculates tiles with the given kernel until this
+     * token is cancelled, and skips them after that.
+     *
+     * @param kernel
+     *            the kernel to wrap
+     * @return a kernel which stops calculating once this token is cancelled
+     */
+    TileKernel wrap(final TileKernel kernel) {
+        if (this == NONE) {
+            return kernel;
+        }
+        return new TileKernel() {
+            @Override
+            public void calcTile(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+                if (!CancellationToken.this.cancelled) {
+                    kernel.calcTile(buffer, offset, stride, x0, y0, x1, y1);
+                }
+            }
+
+            @Override
+            public void calcSpaced(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1, int xStep,
+                    int yStep) {
+                if (!CancellationToken.this.cancelled) {
+                    kernel.calcSpaced(buffer, offset, stride, x0, y0, x1, y1, xStep, yStep);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,24 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for the colouring of the display's image from
+ * the frame's values by MDisplay. The display does not know the frame's
+ * viewport, so the event has none.
+ *
+ */
+@Name("mandelbrot.Colour")
+@Label("Colour Image")
+@Description("Colouring of the display's image from the frame's values")
+public class ColourEvent extends MandelbrotEvent {
+
+    @Label("Colour Mode")
+    int colourMode;
+
+    @Label("Smooth")
+    boolean smooth;
+
+    @Label("Equalized")
+    boolean equalized;
+}
@@ -3,17 +3,19 @@ import java.util.ArrayList;
 
 /**
  * Generates and stores arrays of RGB values to use for the different colour
- * modes.
+ * modes. Mode 0 is black and white; modes 1 to 5 are the built in 255 colour
+ * gradients, and any palettes loaded by the user follow them.
+ *
+ * For colouring a frame, getTable works out the colour of every iteration
+ * value up to the maximum once, so that each pixel is a single array lookup.
  *
  */
 public class Colours {
 
-    private static final int GRADIENT_5 = 5;
-    private static final int GRADIENT_4 = 4;
-    private static final int GRADIENT_3 = 3;
-    private static final int GRADIENT_2 = 2;
-    private static final int GRADIENT_1 = 1;
     private static final int COL_MAX = 255;
+    // the most iteration values a table is made for, 16MB of colours;
+    // frames with a higher maximum are coloured value by value
+    private static final int MAX_TABLE_SIZE = 1 << 22;
 
     /**
      * Returns the number of colours in a gradient array. This is 255 for sake
@@ -46,15 +48,15 @@ public class Colours {
     private static final int GE2 = 230;
     private static final int BE2 = 150;
 
-    private int black = new Color(0, 0, 0).getRGB();
     private int white = new Color(COL_MAX, COL_MAX, COL_MAX).getRGB();
-    private final int numOfColours = 5;
 
-    private ArrayList<Integer> gradient1 = new ArrayList<Integer>();
-    private ArrayList<Integer> gradient2 = new ArrayList<Integer>();
-    private ArrayList<Integer> gradient3 = new ArrayList<Integer>();
-    private ArrayList<Integer> gradient4 = new ArrayList<Integer>();
-    private ArrayList<Integer> gradient5 = new ArrayList<Integer>();
+    // the palette of each colour mode, black and white first
+    private ArrayList<Palette> palettes = new ArrayList<Palette>();
+
+    // the table last made by getTable, and what it was made for
+    private int[] table;
+    private int tableMode = -1;
+    private int tableMaxIts = -1;
 
     // gradient1
     // at each step change the value by:
@@ -71,77 +73,88 @@ public class Colours {
     private double bs2 = ((double) BE2 - B2) / COL_MAX;
 
     Colours() {
+        // the built in gradients, only needed to make their palettes
+        int[] gradient1 = new int[COL_MAX];
+        int[] gradient2 = new int[COL_MAX];
+        int[] gradient3 = new int[COL_MAX];
+        int[] gradient4 = new int[COL_MAX];
+        int[] gradient5 = new int[COL_MAX];
         for (int k = 0; k < COL_MAX; k++) {
 
-            this.gradient1
-                    .add(new Color(R + (int) (this.rs * k), G + (int) (this.gs * k), B + (int) (this.bs * k)).getRGB());
-            this.gradient2
-                    .add(new Color(R2 + (int) (this.rs2 * k), G2 + (int) (this.gs2 * k), B2 + (int) (this.bs2 * k))
-                            .getRGB());
-            this.gradient3.add(new Color(COL_MAX - k, COL_MAX - k, k).getRGB());
-            this.gradient4.add(new Color(0, k, k).getRGB());
-            this.gradient5.add(new Color(k, 0, 0).getRGB());
+            gradient1[k] = new Color(R + (int) (this.rs * k), G + (int) (this.gs * k), B + (int) (this.bs * k))
+                    .getRGB();
+            gradient2[k] = new Color(R2 + (int) (this.rs2 * k), G2 + (int) (this.gs2 * k),
+                    B2 + (int) (this.bs2 * k)).getRGB();
+            gradient3[k] = new Color(COL_MAX - k, COL_MAX - k, k).getRGB();
+            gradient4[k] = new Color(0, k, k).getRGB();
+            gradient5[k] = new Color(k, 0, 0).getRGB();
         }
 
+        this.palettes.add(new Palette("Black and white", new int[] {this.white}));
+        this.palettes.add(new Palette("Gradient 1", gradient1));
+        this.palettes.add(new Palette("Gradient 2", gradient2));
+        this.palettes.add(new Palette("Gradient 3", gradient3));
+        this.palettes.add(new Palette("Gradient 4", gradient4));
+        this.palettes.add(new Palette("Gradient 5", gradient5));
+
     }
 
     /**
-     * Given a gradient number g and an integer i, returns the colour integer
-     * from the appropriate gradient array list at index i.
+     * Returns the number of colour schemes, other than black and white, built
+     * in or loaded.
      * 
-     * @param g
-     *            the gradient number, which is used to select the appropriate
-     *            arraylist.
-     * @param i
-     *            the index of the colour to return from g
-     * @return a colour integer
+     * @return number of colour schemes
      */
-    public int get(int g, int i) {
-
-        switch (g) {
-
-            case GRADIENT_1:
-                return this.gradient1.get(i);
-            case GRADIENT_2:
-                return this.gradient2.get(i);
-            case GRADIENT_3:
-                return this.gradient3.get(i);
-            case GRADIENT_4:
-                return this.gradient4.get(i);
-            case GRADIENT_5:
-                return this.gradient5.get(i);
-
-            default:
-                return -1;
-        }
+    public int getNumOfColours() {
+        return this.palettes.size() - 1;
+    }
 
+    /**
+     * Adds a palette loaded by the user as a new colour mode.
+     *
+     * @param palette
+     *            the palette to add
+     * @return the colour mode of the palette
+     */
+    public int addPalette(Palette palette) {
+        this.palettes.add(palette);
+        return this.palettes.size() - 1;
     }
 
     /**
-     * Used for the basic black and white colour view, simply returns the black
-     * and white colour values.
-     * 
-     * @param s
-     *            takes a string, either 'black' or 'white'.
-     * @return returns the colour integer for black or white, or -1 if the
-     *         string input is neither.
+     * Returns the palette of a colour mode.
+     *
+     * @param mode
+     *            the colour mode, 0 for black and white
+     * @return the mode's palette
      */
-    public int get(String s) {
-        if (s == "black") {
-            return this.black;
-        } else if (s == "white") {
-            return this.white;
-        }
-        return -1;
+    public Palette getPalette(int mode) {
+        return this.palettes.get(mode);
     }
 
     /**
-     * Returns the number of colour schemes implemented in the Colours class.
-     * 
-     * @return number of colour schemes
+     * Returns the colour of every iteration value from 0 to maxIts in a
+     * colour mode. The table is kept until a table for another mode or
+     * maximum is asked for.
+     *
+     * @param mode
+     *            the colour mode, 0 for black and white
+     * @param maxIts
+     *            the maximum number of iterations
+     * @return an array of maxIts + 1 ARGB colours, indexed by iteration
+     *         value, which must not be changed; or null if maxIts is too
+     *         large to make a table for
      */
-    public int getNumOfColours() {
-        return this.numOfColours;
+    public int[] getTable(int mode, int maxIts) {
+        if (maxIts >= MAX_TABLE_SIZE) {
+            return null;
+        }
+        if (mode != this.tableMode || maxIts != this.tableMaxIts) {
+            this.table = this.palettes.get(mode).table(maxIts);
+            this.tableMode = mode;
+            this.tableMaxIts = maxIts;
+        }
+        return this.table;
     }
 
 }
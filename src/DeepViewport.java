@@ -0,0 +1,280 @@
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * An immutable area of the complex plane, stored as a centre point with as
+ * many decimal digits as the zoom depth needs plus the width and height of the
+ * area as doubles. The bounds kept by the model as plain doubles can only be
+ * told apart down to a width of around 1e-13, but the centre of a
+ * DeepViewport keeps its precision however far in the user zooms, and the
+ * width and height are only limited by the range of a double.
+ *
+ */
+public class DeepViewport implements Serializable {
+
+    // below this many double ULPs per pixel, plain double arithmetic breaks
+    // the image up into blocks and a more precise PrecisionTier is used
+    static final double DEEP_ZOOM_ULPS = 256;
+
+    // decimal digits kept beyond the pixel step
+    private static final int GUARD_DIGITS = 10;
+
+    private static final long serialVersionUID = 1L;
+
+    private final BigDecimal centreReal;
+    private final BigDecimal centreImag;
+    private final double realSpan;
+    private final double imagSpan;
+
+    /**
+     * Creates a viewport from its centre and size.
+     *
+     * @param centreReal
+     *            the real value of the centre of the area
+     * @param centreImag
+     *            the imaginary value of the centre of the area
+     * @param realSpan
+     *            the difference between the maximum and minimum real values
+     * @param imagSpan
+     *            the difference between the maximum and minimum imaginary
+     *            values
+     */
+    public DeepViewport(BigDecimal centreReal, BigDecimal centreImag, double realSpan, double imagSpan) {
+        this.centreReal = centreReal;
+        this.centreImag = centreImag;
+        this.realSpan = realSpan;
+        this.imagSpan = imagSpan;
+    }
+
+    /**
+     * Creates a viewport covering the given double bounds.
+     *
+     * @param minReal
+     *            the minimum real value
+     * @param maxReal
+     *            the maximum real value
+     * @param minImag
+     *            the minimum imaginary value
+     * @param maxImag
+     *            the maximum imaginary value
+     * @return a viewport with the same bounds
+     */
+    public static DeepViewport fromBounds(double minReal, double maxReal, double minImag, double maxImag) {
+        BigDecimal two = BigDecimal.valueOf(2);
+        BigDecimal cr = new BigDecimal(minReal).add(new BigDecimal(maxReal)).divide(two);
+        BigDecimal ci = new BigDecimal(minImag).add(new BigDecimal(maxImag)).divide(two);
+        return new DeepViewport(cr, ci, maxReal - minReal, maxImag - minImag);
+    }
+
+    /**
+     * Returns the viewport covering the given rectangle of pixels of this one,
+     * as selected by the user's zoom marquee.
+     *
+     * @param x1
+     *            the upper left x coordinate of the zoom area
+     * @param y1
+     *            the upper left y coordinate of the zoom area
+     * @param x2
+     *            the lower right x coordinate of the zoom area
+     * @param y2
+     *            the lower right y coordinate of the zoom area
+     * @param xResolution
+     *            the width in pixels of the frame the coordinates refer to
+     * @param yResolution
+     *            the height in pixels of the frame the coordinates refer to
+     * @return the zoomed viewport
+     */
+    public DeepViewport zoom(double x1, double y1, double x2, double y2, int xResolution, int yResolution) {
+        double newRealSpan = (x2 - x1) / xResolution * this.realSpan;
+        double newImagSpan = (y2 - y1) / yResolution * this.imagSpan;
+        // offset of the new centre from the old one, which is small enough
+        // compared with the span to be worked out in doubles
+        double realShift = ((x1 + x2) / 2 / xResolution - 0.5) * this.realSpan;
+        double imagShift = ((y1 + y2) / 2 / yResolution - 0.5) * this.imagSpan;
+
+        DeepViewport zoomed = new DeepViewport(this.centreReal, this.centreImag, newRealSpan, newImagSpan);
+        MathContext mc = zoomed.getMathContext(xResolution, yResolution);
+        return new DeepViewport(this.centreReal.add(new BigDecimal(realShift), mc),
+                this.centreImag.add(new BigDecimal(imagShift), mc), newRealSpan, newImagSpan);
+    }
+
+    /**
+     * Returns this viewport moved by a whole number of pixels, so that the
+     * point at pixel (x + dx, y + dy) of this viewport is at pixel (x, y) of
+     * the new one. The span is unchanged, and the centre is moved by exactly
+     * dx and dy pixel steps, without rounding, so the two viewports lie on
+     * the same TileGrid and the pixels they share have exactly the same C in
+     * double arithmetic.
+     *
+     * @param dx
+     *            the number of pixels to move right by; negative to move left
+     * @param dy
+     *            the number of pixels to move down by; negative to move up
+     * @param xResolution
+     *            the width in pixels of the frame
+     * @param yResolution
+     *            the height in pixels of the frame
+     * @return the moved viewport
+     */
+    public DeepViewport pan(int dx, int dy, int xResolution, int yResolution) {
+        BigDecimal realShift = new BigDecimal(this.realSpan / xResolution).multiply(BigDecimal.valueOf(dx));
+        BigDecimal imagShift = new BigDecimal(this.imagSpan / yResolution).multiply(BigDecimal.valueOf(dy));
+        return new DeepViewport(this.centreReal.add(realShift), this.centreImag.add(imagShift), this.realSpan,
+                this.imagSpan);
+    }
+
+    /**
+     * Returns the precision needed to tell apart the centres of neighbouring
+     * pixels when the viewport is drawn at the given resolution, with some
+     * digits to spare.
+     *
+     * @param xResolution
+     *            the width in pixels of the frame
+     * @param yResolution
+     *            the height in pixels of the frame
+     * @return a MathContext for calculations at this zoom depth
+     */
+    public MathContext getMathContext(int xResolution, int yResolution) {
+        double step = Math.min(Math.abs(this.realSpan) / xResolution, Math.abs(this.imagSpan) / yResolution);
+        double magnitude = Math.max(1, Math.max(Math.abs(this.centreReal.doubleValue()),
+                Math.abs(this.centreImag.doubleValue())));
+        int digits = (int) Math.ceil(Math.log10(magnitude / step));
+        return new MathContext(Math.max(17, digits) + GUARD_DIGITS, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Returns how many double ULPs at the viewport's coordinates fit between
+     * two neighbouring pixels, in whichever direction has the fewest.
+     *
+     * @param xResolution
+     *            the width in pixels of the frame
+     * @param yResolution
+     *            the height in pixels of the frame
+     * @return the pixel step measured in ULPs
+     */
+    public double getPixelStepInUlps(int xResolution, int yResolution) {
+        double realUlp = Math.ulp(Math.max(Math.abs(this.getMinReal()), Math.abs(this.getMaxReal())));
+        double imagUlp = Math.ulp(Math.max(Math.abs(this.getMinImag()), Math.abs(this.getMaxImag())));
+        return Math.min(Math.abs(this.realSpan) / xResolution / realUlp,
+                Math.abs(this.imagSpan) / yResolution / imagUlp);
+    }
+
+    /**
+     * Returns whether the viewport is zoomed in too far to be drawn at the
+     * given resolution with plain double arithmetic, so that one of the deep
+     * zoom PrecisionTiers is needed.
+     *
+     * @param xResolution
+     *            the width in pixels of the frame
+     * @param yResolution
+     *            the height in pixels of the frame
+     * @return true if a deep zoom engine is needed
+     */
+    public boolean isDeep(int xResolution, int yResolution) {
+        return this.getPixelStepInUlps(xResolution, yResolution) < DEEP_ZOOM_ULPS;
+    }
+
+    /**
+     * Returns the real value of the centre of the viewport.
+     *
+     * @return the real value of the centre
+     */
+    public BigDecimal getCentreReal() {
+        return this.centreReal;
+    }
+
+    /**
+     * Returns the imaginary value of the centre of the viewport.
+     *
+     * @return the imaginary value of the centre
+     */
+    public BigDecimal getCentreImag() {
+        return this.centreImag;
+    }
+
+    /**
+     * Returns the width of the viewport.
+     *
+     * @return the difference between the maximum and minimum real values
+     */
+    public double getRealSpan() {
+        return this.realSpan;
+    }
+
+    /**
+     * Returns the height of the viewport.
+     *
+     * @return the difference between the maximum and minimum imaginary values
+     */
+    public double getImagSpan() {
+        return this.imagSpan;
+    }
+
+    /**
+     * Returns the minimum real value, rounded to the nearest double.
+     *
+     * @return the minimum real value
+     */
+    public double getMinReal() {
+        return this.centreReal.subtract(new BigDecimal(this.realSpan / 2)).doubleValue();
+    }
+
+    /**
+     * Returns the maximum real value, rounded to the nearest double.
+     *
+     * @return the maximum real value
+     */
+    public double getMaxReal() {
+        return this.centreReal.add(new BigDecimal(this.realSpan / 2)).doubleValue();
+    }
+
+    /**
+     * Returns the minimum imaginary value, rounded to the nearest double.
+     *
+     * @return the minimum imaginary value
+     */
+    public double getMinImag() {
+        return this.centreImag.subtract(new BigDecimal(this.imagSpan / 2)).doubleValue();
+    }
+
+    /**
+     * Returns the maximum imaginary value, rounded to the nearest double.
+     *
+     * @return the maximum imaginary value
+     */
+    public double getMaxImag() {
+        return this.centreImag.add(new BigDecimal(this.imagSpan / 2)).doubleValue();
+    }
+
+    /**
+     * Viewports are equal if they have numerically equal centres and the same
+     * spans, however many digits their centres were written with.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof DeepViewport)) {
+            return false;
+        }
+        DeepViewport viewport = (DeepViewport) other;
+        return this.centreReal.compareTo(viewport.centreReal) == 0
+                && this.centreImag.compareTo(viewport.centreImag) == 0
+                && Double.compare(this.realSpan, viewport.realSpan) == 0
+                && Double.compare(this.imagSpan, viewport.imagSpan) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        // stripped so that equal centres with different scales hash alike
+        return ((this.centreReal.stripTrailingZeros().hashCode() * 31
+                + this.centreImag.stripTrailingZeros().hashCode()) * 31 + Double.hashCode(this.realSpan)) * 31
+                + Double.hashCode(this.imagSpan);
+    }
+
+    @Override
+    public String toString() {
+        return "centre " + this.centreReal.toString() + " + " + this.centreImag.toString() + "i, span "
+                + this.realSpan + " x " + this.imagSpan;
+    }
+}
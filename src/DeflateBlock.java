@@ -0,0 +1,153 @@
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * A fork/join task which compresses one block of a PNG's filtered rows as
+ * part of a single deflate stream, so that PngWriter can compress the blocks
+ * of an image on every thread at once, as pigz does.
+ *
+ * Each block is compressed as raw deflate data, primed with the last
+ * DICTIONARY_BYTES of the block before as its dictionary, so that matches
+ * reaching back into the previous block are found just as they would be by
+ * one Deflater compressing the whole stream. Every block but the last ends
+ * with a sync flush, which ends its data on a byte boundary with the stream
+ * left open, so that the blocks' data can simply be written one after
+ * another. The Adler-32 checksum of the block is worked out alongside, to be
+ * combined into the checksum of the whole stream.
+ *
+ */
+public class DeflateBlock extends RecursiveAction {
+
+    // the size of the deflate window, and so the most of the previous block
+    // worth priming with
+    static final int DICTIONARY_BYTES = 32 * 1024;
+
+    private static final long serialVersionUID = 1L;
+    // the modulus of Adler-32
+    private static final int ADLER_BASE = 65521;
+
+    private final int level;
+    private final byte[] previous;
+    private final byte[] data;
+    private final int length;
+    private final boolean last;
+    private byte[] compressed;
+    private int compressedLength;
+    private int adler;
+
+    /**
+     * Creates a task for one block.
+     *
+     * @param level
+     *            the Deflater compression level
+     * @param previous
+     *            the data of the block before, which must hold at least
+     *            DICTIONARY_BYTES or be the whole of the stream before; null
+     *            for the first block
+     * @param data
+     *            the block's data, which must not be changed until the task
+     *            is done
+     * @param length
+     *            the number of bytes of data in the block
+     * @param last
+     *            true if this block ends the stream
+     */
+    DeflateBlock(int level, byte[] previous, byte[] data, int length, boolean last) {
+        this.level = level;
+        this.previous = previous;
+        this.data = data;
+        this.length = length;
+        this.last = last;
+    }
+
+    @Override
+    protected void compute() {
+        Deflater deflater = new Deflater(this.level, true);
+        try {
+            if (this.previous != null) {
+                int size = Math.min(DICTIONARY_BYTES, this.previous.length);
+                deflater.setDictionary(this.previous, this.previous.length - size, size);
+            }
+            deflater.setInput(this.data, 0, this.length);
+            // about right for a mandelbrot image, and grown if it is not
+            byte[] out = new byte[Math.max(64, this.length / 8)];
+            int size = 0;
+            if (this.last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (size == out.length) {
+                        out = Arrays.copyOf(out, out.length * 2);
+                    }
+                    size += deflater.deflate(out, size, out.length - size);
+                }
+            } else {
+                // the flush is complete once it leaves space over
+                do {
+                    if (size == out.length) {
+                        out = Arrays.copyOf(out, out.length * 2);
+                    }
+                    size += deflater.deflate(out, size, out.length - size, Deflater.SYNC_FLUSH);
+                } while (size == out.length);
+            }
+            this.compressed = out;
+            this.compressedLength = size;
+        } finally {
+            deflater.end();
+        }
+        Adler32 checksum = new Adler32();
+        checksum.update(this.data, 0, this.length);
+        this.adler = (int) checksum.getValue();
+    }
+
+    /**
+     * Returns the block's compressed data, once the task is done.
+     *
+     * @return an array whose first getCompressedLength bytes are the data
+     */
+    byte[] getCompressed() {
+        return this.compressed;
+    }
+
+    /**
+     * Returns the length of the block's compressed data, once the task is
+     * done.
+     *
+     * @return the number of bytes of compressed data
+     */
+    int getCompressedLength() {
+        return this.compressedLength;
+    }
+
+    /**
+     * Returns the Adler-32 checksum of the stream up to and including this
+     * block, from the checksum of the stream before it.
+     *
+     * @param before
+     *            the checksum of the stream before this block; 1 for the
+     *            first block
+     * @return the checksum of the stream with this block
+     */
+    int combineAdler(int before) {
+        // as zlib's adler32_combine
+        long remainder = this.length % ADLER_BASE;
+        long sum1 = before & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (this.adler & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((before >>> 16) & 0xFFFF) + ((this.adler >>> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= 2L * ADLER_BASE) {
+            sum2 -= 2L * ADLER_BASE;
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return (int) (sum1 | (sum2 << 16));
+    }
+}
@@ -5,13 +5,17 @@ import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import javax.imageio.ImageIO;
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -22,6 +26,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JTextField;
 import javax.swing.JToolBar;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
 /**
  * Delegate observes Model. It is responsible for setting up the GUI, listening
@@ -37,6 +42,8 @@ import javax.swing.SwingUtilities;
  */
 public class Delegate implements Observer {
 
+    private static final Logger LOGGER = Logger.getLogger(Delegate.class.getName());
+
     static final int TEXT_HEIGHT = 10;
     private static final int TEXT_WIDTH = 10;
     static final int FRAME_SIZE = 900;
@@ -52,6 +59,8 @@ public class Delegate implements Observer {
     private JToolBar toolbar;
     private JTextField inputField;
     private JMenuBar menu;
+    // calculates frames off the event thread
+    private final Renderer renderer;
 
     /**
      * Constructs a new Delegate, passing the model that it will observe.
@@ -69,6 +78,17 @@ public class Delegate implements Observer {
         this.mDisplay = new MDisplay();
         this.zoomHandler = new ZoomHandler(this.mDisplay, this.model);
         this.mDisplay.setZoomHandler(this.zoomHandler);
+        this.renderer = new Renderer(new RenderListener() {
+            @Override
+            public void renderFinished(RenderJob job, int[] mData) {
+                Delegate.this.showRender(job, mData);
+            }
+
+            @Override
+            public void renderProgress(RenderJob job, int[] mData) {
+                Delegate.this.showPreview(job, mData);
+            }
+        });
         this.setupComponents();
         model.addObserver(this);
         model.setFrameSize(Delegate.FRAME_SIZE);
@@ -79,17 +99,80 @@ public class Delegate implements Observer {
     /**
      * runAll is called whenever the display needs to be updated, e.g. when the
      * model notifies the delegate that its values have changed, or when a file
-     * is loaded.
+     * is loaded. It takes a snapshot of the model's values and hands it to the
+     * renderer, which calculates the frame in the background and passes it to
+     * showRender when it is done. Any frame still being calculated is
+     * abandoned.
      */
     public void runAll() {
-        this.model.calculate();
+        this.renderer.submit(this.model, this.model.createJob());
+    }
+
+    /**
+     * Called on the event thread with each frame the renderer finishes.
+     * Stores the frame in the model and its history and displays it.
+     *
+     * @param job
+     *            the snapshot of the model the frame was calculated from
+     * @param mData
+     *            the frame's mandelbrot data
+     */
+    private void showRender(RenderJob job, int[] mData) {
+        this.model.applyRender(job, mData);
+        if (job.isColouring()) {
+            // the frame on display may have changed, by undo or redo, while
+            // its colouring was worked out
+            if (this.model.getMData() == mData) {
+                this.mDisplay.setSmoothData(this.model.getSmoothData());
+                this.showCumulative();
+                this.mDisplay.repaint();
+            }
+            this.completeColouring();
+            return;
+        }
         // need max its to implement colour views
-        this.mDisplay.setMaxIts(this.model.getMaxIts());
+        this.mDisplay.setMaxIts(job.getMaxIts());
         // data to display
-        this.mDisplay.setMData(this.model.getMData());
-        System.out.println("Repainting..");
+        this.mDisplay.setMData(mData, job.getFrameSize());
+        this.mDisplay.setSmoothData(this.model.getSmoothData());
+        this.showCumulative();
+        LOGGER.finer("Repainting");
+        this.mDisplay.repaint();
+        this.completeColouring();
+    }
+
+    /**
+     * Works out the smooth values and histogram of the frame on display in
+     * the background, if it came without those its colouring needs, so that
+     * it is coloured as chosen once they arrive. A frame already being
+     * calculated is left to finish, and its colouring is worked out once it
+     * is shown.
+     */
+    private void completeColouring() {
+        if (this.renderer.isBusy()) {
+            return;
+        }
+        RenderJob colouring = this.model.createColouringJob();
+        if (colouring != null) {
+            this.renderer.submit(this.model, colouring);
+        }
+    }
+
+    /**
+     * Called on the event thread with each coarse pass of a progressive
+     * frame. Displays it without storing it, as it is replaced by the
+     * finished frame, but has the model map input through its viewport.
+     *
+     * @param job
+     *            the snapshot of the model the frame is being calculated from
+     * @param mData
+     *            the preview's mandelbrot data
+     */
+    private void showPreview(RenderJob job, int[] mData) {
+        this.model.showPreview(job);
+        this.mDisplay.setMaxIts(job.getMaxIts());
+        this.mDisplay.setMData(mData, job.getFrameSize());
         this.mDisplay.repaint();
-        this.model.addToHistory();
     }
 
     private void setupComponents() {
@@ -106,12 +189,32 @@ public class Delegate implements Observer {
         JMenuItem load = new JMenuItem("Load");
         JMenuItem save = new JMenuItem("Save");
         JMenuItem saveAsPNG = new JMenuItem("Save as PNG");
+        JMenuItem loadPalette = new JMenuItem("Load palette");
 
         file.add(load);
         file.add(save);
         file.add(saveAsPNG);
+        file.add(loadPalette);
         this.menu.add(file);
 
+        JMenu options = new JMenu("Options");
+        final JCheckBoxMenuItem periodicity = new JCheckBoxMenuItem("Periodicity check");
+        periodicity.setSelected(this.model.isPeriodicityCheck());
+        options.add(periodicity);
+        final JCheckBoxMenuItem subdivision = new JCheckBoxMenuItem("Rectangle subdivision");
+        subdivision.setSelected(this.model.isSubdivision());
+        options.add(subdivision);
+        final JCheckBoxMenuItem progressive = new JCheckBoxMenuItem("Progressive rendering");
+        progressive.setSelected(this.model.isProgressive());
+        options.add(progressive);
+        final JCheckBoxMenuItem smooth = new JCheckBoxMenuItem("Smooth colouring");
+        smooth.setSelected(this.model.isSmooth());
+        options.add(smooth);
+        final JCheckBoxMenuItem equalized = new JCheckBoxMenuItem("Equalized colouring");
+        equalized.setSelected(this.mDisplay.isEqualized());
+        options.add(equalized);
+        this.menu.add(options);
+
         load.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -123,14 +226,31 @@ public class Delegate implements Observer {
 
                         File fileName = fileChooser.getSelectedFile();
 
-                        model = model.loadFromFile(fileName);
+                        Model loaded = model.loadFromFile(fileName);
+                        // a frame of the old model still being calculated
+                        // must not be stored in the loaded one
+                        renderer.cancel();
+                        model.deleteObserver(Delegate.this);
+                        model = loaded;
+                        periodicity.setSelected(model.isPeriodicityCheck());
+                        subdivision.setSelected(model.isSubdivision());
+                        progressive.setSelected(model.isProgressive());
+                        smooth.setSelected(model.isSmooth());
+                        model.setEqualized(mDisplay.isEqualized());
                         zoomHandler = new ZoomHandler(mDisplay, model);
                         mDisplay.setZoomHandler(zoomHandler);
-                        runAll();
+                        // a loaded model has no observers
+                        model.addObserver(Delegate.this);
+                        // the file's current frame is shown as it was saved
+                        if (model.getMData() == null) {
+                            runAll();
+                        } else {
+                            updateDisplay();
+                        }
                     }
 
                 } catch (Exception exception) {
-                    System.out.println(exception);
+                    LOGGER.log(Level.WARNING, "Could not load file", exception);
                     JOptionPane.showMessageDialog(Delegate.this.mainFrame, "Sorry, could not load file.");
 
                 }
@@ -152,38 +272,121 @@ public class Delegate implements Observer {
 
                         model.saveToFile(fileName);
 
-                        System.out.println("Saved.");
+                        LOGGER.fine("Saved model");
                         JOptionPane.showMessageDialog(Delegate.this.mainFrame, "Saved.");
                     }
 
                 } catch (Exception exception) {
-                    System.out.println(exception);
+                    LOGGER.log(Level.WARNING, "Could not save model", exception);
                     JOptionPane.showMessageDialog(Delegate.this.mainFrame, "Sorry, save failed.");
                 }
 
             }
         });
 
+        periodicity.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Delegate.this.model.setPeriodicityCheck(periodicity.isSelected());
+                Delegate.this.runAll();
+            }
+        });
+
+        subdivision.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Delegate.this.model.setSubdivision(subdivision.isSelected());
+                Delegate.this.runAll();
+            }
+        });
+
+        progressive.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Delegate.this.model.setProgressive(progressive.isSelected());
+                Delegate.this.runAll();
+            }
+        });
+
+        smooth.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Delegate.this.model.setSmooth(smooth.isSelected());
+                // the frame on display is coloured again, not calculated
+                Delegate.this.updateDisplay();
+            }
+        });
+
+        equalized.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Delegate.this.mDisplay.setEqualized(equalized.isSelected());
+                Delegate.this.model.setEqualized(equalized.isSelected());
+                Delegate.this.showCumulative();
+                Delegate.this.mDisplay.repaint();
+                // a frame without a histogram is coloured as before until it
+                // has been counted
+                Delegate.this.completeColouring();
+            }
+        });
+
         saveAsPNG.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
 
-                try {
+                JFileChooser fileChooser = new JFileChooser();
+                fileChooser.setApproveButtonText("Save");
+                int returnValue = fileChooser.showOpenDialog(null);
+                if (returnValue == JFileChooser.APPROVE_OPTION) {
+                    final File file = new File(fileChooser.getSelectedFile() + ".png");
                     BufferedImage mandelbrot = Delegate.this.mDisplay.getImg();
+                    final int width = mandelbrot.getWidth();
+                    final int height = mandelbrot.getHeight();
+                    // copied, as the display colours its image in place
+                    final int[] pixels = ((DataBufferInt) mandelbrot.getRaster().getDataBuffer()).getData().clone();
+                    new SwingWorker<Void, Void>() {
+                        @Override
+                        protected Void doInBackground() throws IOException {
+                            PngWriter.write(pixels, width, height, file);
+                            return null;
+                        }
+
+                        @Override
+                        protected void done() {
+                            try {
+                                this.get();
+                                LOGGER.fine("Saved image");
+                                JOptionPane.showMessageDialog(Delegate.this.mainFrame, "Saved.");
+                            } catch (InterruptedException exception) {
+                                Thread.currentThread().interrupt();
+                            } catch (ExecutionException exception) {
+                                LOGGER.log(Level.WARNING, "Could not save image", exception.getCause());
+                                JOptionPane.showMessageDialog(Delegate.this.mainFrame, "Sorry, save failed.");
+                            }
+                        }
+                    }.execute();
+                }
+
+            }
+        });
+
+        loadPalette.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
 
+                try {
                     JFileChooser fileChooser = new JFileChooser();
-                    fileChooser.setApproveButtonText("Save");
                     int returnValue = fileChooser.showOpenDialog(null);
                     if (returnValue == JFileChooser.APPROVE_OPTION) {
-                        File file = new File(fileChooser.getSelectedFile() + ".png");
-                        ImageIO.write(mandelbrot, "png", file);
-                        System.out.println("Saved.");
-                        JOptionPane.showMessageDialog(Delegate.this.mainFrame, "Saved.");
+                        Palette palette = Palette.load(fileChooser.getSelectedFile());
+                        Delegate.this.mDisplay.addPalette(palette);
+                        Delegate.this.mDisplay.repaint();
                     }
 
                 } catch (IOException exception) {
-                    System.out.println(exception);
-                    JOptionPane.showMessageDialog(Delegate.this.mainFrame, "Sorry, save failed.");
+                    LOGGER.log(Level.WARNING, "Could not load palette", exception);
+                    JOptionPane.showMessageDialog(Delegate.this.mainFrame,
+                            "Sorry, could not load palette: " + exception.getMessage());
                 }
 
             }
@@ -199,6 +402,8 @@ public class Delegate implements Observer {
         undoButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                // a frame still being calculated would overwrite this one
+                Delegate.this.renderer.cancel();
                 Delegate.this.model.undo();
                 Delegate.this.updateDisplay();
             }
@@ -208,6 +413,7 @@ public class Delegate implements Observer {
         redoButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                Delegate.this.renderer.cancel();
                 Delegate.this.model.redo();
                 Delegate.this.updateDisplay();
             }
@@ -217,6 +423,7 @@ public class Delegate implements Observer {
         resetButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                Delegate.this.renderer.cancel();
                 Delegate.this.model.reset();
                 Delegate.this.updateDisplay();
             }
@@ -292,18 +499,36 @@ public class Delegate implements Observer {
         });
     }
 
+    /**
+     * Gives the display the histogram of the frame on display if it is
+     * colouring with equalized colours. Frames calculated by the renderer
+     * come with one; other frames are counted by a colouring job.
+     */
+    private void showCumulative() {
+        if (this.mDisplay.isEqualized()) {
+            this.mDisplay.setCumulative(this.model.getCumulative());
+        }
+    }
+
     /**
      * When undo or redo are called, we want to redraw the display without
      * recalculating the mandelbrot data. (the data to use will be set in the
      * model by the undo() or redo() method which gets it from the model's
-     * History object)
+     * History object). A frame the history has dropped is calculated again.
      */
     public void updateDisplay() {
+        if (this.model.isFrameDropped()) {
+            this.runAll();
+            return;
+        }
         this.mDisplay.setMaxIts(this.model.getMaxIts());
         // data to display
-        this.mDisplay.setMData(this.model.getMData());
-        System.out.println("Repainting..");
+        this.mDisplay.setMData(this.model.getMData(), this.model.getFrameSize());
+        this.mDisplay.setSmoothData(this.model.getSmoothData());
+        this.showCumulative();
+        LOGGER.finer("Repainting");
         this.mDisplay.repaint();
+        this.completeColouring();
     }
 
 }
@@ -0,0 +1,132 @@
+import java.math.BigDecimal;
+
+/**
+ * A TileKernel which iterates every pixel in double-double arithmetic. Each
+ * number is held as the unevaluated sum of two doubles, hi + lo, with lo no
+ * bigger than half an ULP of hi, which gives about 106 bits of precision. This
+ * is used between the depth where plain doubles break down and the depth where
+ * even this runs out and perturbation takes over (see PrecisionTier).
+ *
+ */
+public class DoubleDoubleKernel implements TileKernel {
+
+    private final double centreRealHi;
+    private final double centreRealLo;
+    private final double centreImagHi;
+    private final double centreImagLo;
+    private final double realStep;
+    private final double imaginaryStep;
+    private final double xCentre;
+    private final double yCentre;
+    private final int maxIterations;
+    private final double radiusSquared;
+    private final KernelStats stats;
+
+    /**
+     * Creates a kernel for the given frame.
+     *
+     * @param viewport
+     *            the area of the complex plane to draw
+     * @param xResolution
+     *            the width of the frame in pixels
+     * @param yResolution
+     *            the height of the frame in pixels
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param stats
+     *            the counters to record the work done in
+     */
+    DoubleDoubleKernel(DeepViewport viewport, int xResolution, int yResolution, int maxIterations,
+            double radiusSquared, KernelStats stats) {
+        BigDecimal cr = viewport.getCentreReal();
+        BigDecimal ci = viewport.getCentreImag();
+        this.centreRealHi = cr.doubleValue();
+        this.centreRealLo = cr.subtract(new BigDecimal(this.centreRealHi)).doubleValue();
+        this.centreImagHi = ci.doubleValue();
+        this.centreImagLo = ci.subtract(new BigDecimal(this.centreImagHi)).doubleValue();
+        this.realStep = viewport.getRealSpan() / xResolution;
+        this.imaginaryStep = viewport.getImagSpan() / yResolution;
+        this.xCentre = xResolution / 2.0;
+        this.yCentre = yResolution / 2.0;
+        this.maxIterations = maxIterations;
+        this.radiusSquared = radiusSquared;
+        this.stats = stats;
+    }
+
+    @Override
+    public void calcTile(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+        double[] t = new double[2];
+        for (int y = y0; y < y1; y++) {
+            add(this.centreImagHi, this.centreImagLo, (y - this.yCentre) * this.imaginaryStep, 0, t);
+            double ciHi = t[0];
+            double ciLo = t[1];
+            int index = offset + y * stride + x0;
+            for (int x = x0; x < x1; x++) {
+                add(this.centreRealHi, this.centreRealLo, (x - this.xCentre) * this.realStep, 0, t);
+                buffer[index++] = this.calcPixel(t[0], t[1], ciHi, ciLo, t);
+            }
+            this.stats.addRow(x1 - x0, 0, 0);
+        }
+    }
+
+    /**
+     * Iterates one pixel. The number of iterations is counted the same way as
+     * MandelbrotCalculator.calcMandel counts them.
+     */
+    private int calcPixel(double crHi, double crLo, double ciHi, double ciLo, double[] t) {
+        double zrHi = 0;
+        double zrLo = 0;
+        double ziHi = 0;
+        double ziLo = 0;
+        for (int iterations = 0; iterations < this.maxIterations; iterations++) {
+            mul(zrHi, zrLo, zrHi, zrLo, t);
+            double zr2Hi = t[0];
+            double zr2Lo = t[1];
+            mul(ziHi, ziLo, ziHi, ziLo, t);
+            double zi2Hi = t[0];
+            double zi2Lo = t[1];
+            if (zr2Hi + zi2Hi > this.radiusSquared) {
+                return iterations + 1;
+            }
+
+            // zi = 2 * zr * zi + ci
+            mul(zrHi, zrLo, ziHi, ziLo, t);
+            add(2 * t[0], 2 * t[1], ciHi, ciLo, t);
+            ziHi = t[0];
+            ziLo = t[1];
+
+            // zr = zr^2 - zi^2 + cr
+            add(zr2Hi, zr2Lo, -zi2Hi, -zi2Lo, t);
+            add(t[0], t[1], crHi, crLo, t);
+            zrHi = t[0];
+            zrLo = t[1];
+        }
+        return this.maxIterations;
+    }
+
+    /**
+     * Adds two double-doubles, storing the sum's hi and lo parts in out.
+     */
+    static void add(double aHi, double aLo, double bHi, double bLo, double[] out) {
+        double s = aHi + bHi;
+        double v = s - aHi;
+        double e = (aHi - (s - v)) + (bHi - v) + aLo + bLo;
+        double hi = s + e;
+        out[0] = hi;
+        out[1] = e - (hi - s);
+    }
+
+    /**
+     * Multiplies two double-doubles, storing the product's hi and lo parts in
+     * out.
+     */
+    static void mul(double aHi, double aLo, double bHi, double bLo, double[] out) {
+        double p = aHi * bHi;
+        double e = Math.fma(aHi, bHi, -p) + (aHi * bLo + aLo * bHi);
+        double hi = p + e;
+        out[0] = hi;
+        out[1] = e - (hi - p);
+    }
+}
@@ -0,0 +1,30 @@
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for a model being saved to or loaded from a
+ * .mandelbrot file by MandelbrotFile, or an image being saved by PngWriter.
+ * The frame is the model's current one; a saved image has no viewport or
+ * maximum iterations.
+ *
+ */
+@Name("mandelbrot.File")
+@Label("File Save or Load")
+@Description("A model saved or loaded, or an image saved")
+public class FileEvent extends MandelbrotEvent {
+
+    @Label("Action")
+    String action;
+
+    @Label("Path")
+    String path;
+
+    @Label("File Size")
+    @DataAmount
+    long bytes;
+
+    @Label("History Frames")
+    int frames;
+}
@@ -0,0 +1,262 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.zip.Deflater;
+
+/**
+ * Renders an image of any size straight to a PNG file from the command line,
+ * without a display. The image is calculated a band of rows at a time, and
+ * each band is coloured and written out before the next is calculated, so
+ * memory use depends on the width of the image and not on its height.
+ *
+ * <pre>
+ * java HeadlessRenderer [options] output.png
+ *   --size WxH            size of the image in pixels (900x900)
+ *   --centre RE,IM        centre of the image, to any number of digits
+ *   --span S              real span of the image (2.7)
+ *   --bounds R0,R1,I0,I1  real and imaginary bounds, instead of centre and
+ *                         span
+ *   --model FILE          view, iterations and colouring of a saved model
+ *   --its N               maximum iterations (50)
+ *   --colours N           built in colour mode, 0 to 5 (1)
+ *   --palette FILE        palette file to colour with instead
+ *   --smooth              colour by continuous escape values
+ *   --band ROWS           rows calculated at a time
+ *   --level N             compression level, 0 to 9 (6)
+ * </pre>
+ *
+ * A centre and span, or a saved model, describe a square view: for other
+ * sizes the imaginary span is scaled by the height over the width, so that
+ * pixels keep the shape they have on the display.
+ *
+ */
+public class HeadlessRenderer {
+
+    private static final int DEFAULT_SIZE = 900;
+    private static final int DEFAULT_COLOUR_MODE = 1;
+    private static final int DEFAULT_LEVEL = 6;
+    // the number of pixels of a band, unless set with --band; 16MB of
+    // values, and as many again of colours
+    private static final int BAND_PIXELS = 1 << 22;
+    private static final String USAGE = "Usage: java HeadlessRenderer [--size WxH] [--centre RE,IM] [--span S] "
+            + "[--bounds R0,R1,I0,I1] [--model FILE] [--its N] [--colours N] [--palette FILE] [--smooth] "
+            + "[--band ROWS] [--level N] output.png";
+
+    private int width = DEFAULT_SIZE;
+    private int height = DEFAULT_SIZE;
+    private DeepViewport viewport;
+    private int maxIts = MandelbrotCalculator.INITIAL_MAX_ITERATIONS;
+    private int colourMode = DEFAULT_COLOUR_MODE;
+    private Palette palette;
+    private boolean smooth;
+    private int bandRows;
+    private int level = DEFAULT_LEVEL;
+    private File output;
+
+    /**
+     * Renders the image described by the arguments.
+     *
+     * @param args
+     *            the options and output file, as above
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        HeadlessRenderer renderer = new HeadlessRenderer();
+        try {
+            renderer.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        try {
+            renderer.render();
+        } catch (IOException e) {
+            System.err.println("Could not write " + renderer.output + ": " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    private void parse(String[] args) throws IOException {
+        BigDecimal centreReal = null;
+        BigDecimal centreImag = null;
+        double span = MandelbrotCalculator.INITIAL_MAX_REAL - MandelbrotCalculator.INITIAL_MIN_REAL;
+        // the imaginary span of a square image over its real span
+        double aspect = 1;
+        double[] bounds = null;
+        int i = 0;
+        try {
+            for (; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--smooth")) {
+                    this.smooth = true;
+                } else if (!arg.startsWith("--")) {
+                    if (this.output != null) {
+                        throw new IllegalArgumentException("More than one output file given");
+                    }
+                    this.output = new File(arg);
+                } else if (i + 1 == args.length) {
+                    throw new IllegalArgumentException(arg + " needs a value");
+                } else if (arg.equals("--size")) {
+                    String[] size = args[++i].split("x");
+                    if (size.length != 2) {
+                        throw new IllegalArgumentException("Size must be WxH: " + args[i]);
+                    }
+                    this.width = Integer.parseInt(size[0]);
+                    this.height = Integer.parseInt(size[1]);
+                } else if (arg.equals("--centre")) {
+                    String[] centre = args[++i].split(",");
+                    if (centre.length != 2) {
+                        throw new IllegalArgumentException("Centre must be RE,IM: " + args[i]);
+                    }
+                    centreReal = new BigDecimal(centre[0].trim());
+                    centreImag = new BigDecimal(centre[1].trim());
+                } else if (arg.equals("--span")) {
+                    span = Double.parseDouble(args[++i]);
+                } else if (arg.equals("--bounds")) {
+                    String[] values = args[++i].split(",");
+                    if (values.length != 4) {
+                        throw new IllegalArgumentException("Bounds must be R0,R1,I0,I1: " + args[i]);
+                    }
+                    bounds = new double[4];
+                    for (int b = 0; b < 4; b++) {
+                        bounds[b] = Double.parseDouble(values[b].trim());
+                    }
+                } else if (arg.equals("--model")) {
+                    Model model;
+                    try {
+                        model = MandelbrotFile.read(new File(args[++i]));
+                    } catch (ClassNotFoundException e) {
+                        throw new IOException(args[i] + " is not a model");
+                    }
+                    DeepViewport saved = model.getViewport();
+                    centreReal = saved.getCentreReal();
+                    centreImag = saved.getCentreImag();
+                    span = saved.getRealSpan();
+                    aspect = saved.getImagSpan() / saved.getRealSpan();
+                    this.maxIts = model.getMaxIts();
+                    this.smooth = model.isSmooth();
+                } else if (arg.equals("--its")) {
+                    this.maxIts = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--colours")) {
+                    this.colourMode = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--palette")) {
+                    this.palette = Palette.load(new File(args[++i]));
+                } else if (arg.equals("--band")) {
+                    this.bandRows = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--level")) {
+                    this.level = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + args[i]);
+        }
+
+        if (this.output == null) {
+            throw new IllegalArgumentException("No output file given");
+        }
+        if (this.width < 1 || this.height < 1) {
+            throw new IllegalArgumentException("Invalid size " + this.width + "x" + this.height);
+        }
+        if (this.maxIts < 1) {
+            throw new IllegalArgumentException("Invalid maximum iterations " + this.maxIts);
+        }
+        if (this.colourMode < 0 || this.colourMode > new Colours().getNumOfColours()) {
+            throw new IllegalArgumentException("Invalid colour mode " + this.colourMode);
+        }
+        if (this.level < Deflater.NO_COMPRESSION || this.level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + this.level);
+        }
+        if (bounds != null) {
+            this.viewport = DeepViewport.fromBounds(bounds[0], bounds[1], bounds[2], bounds[3]);
+        } else {
+            if (centreReal == null) {
+                centreReal = BigDecimal.valueOf(
+                        (MandelbrotCalculator.INITIAL_MIN_REAL + MandelbrotCalculator.INITIAL_MAX_REAL) / 2);
+                centreImag = BigDecimal.ZERO;
+            }
+            this.viewport = new DeepViewport(centreReal, centreImag, span,
+                    span * aspect * this.height / this.width);
+        }
+        if (this.bandRows < 1) {
+            this.bandRows = Math.max(1, BAND_PIXELS / this.width);
+        }
+        this.bandRows = Math.min(this.bandRows, this.height);
+    }
+
+    /**
+     * Calculates, colours and writes out the image band by band.
+     */
+    private void render() throws IOException {
+        Colours modes = new Colours();
+        int mode = this.palette != null ? modes.addPalette(this.palette) : this.colourMode;
+        Palette colouring = modes.getPalette(mode);
+        // null if maxIts is too high for a table, when values are coloured
+        // one by one
+        int[] table = modes.getTable(mode, this.maxIts);
+        MandelbrotCalculator calculator = new MandelbrotCalculator();
+        int[] values = new int[this.width * this.bandRows];
+        int[] colours = new int[this.width * this.bandRows];
+
+        System.out.println("Rendering " + this.width + "x" + this.height + " at " + this.viewport + ", "
+                + this.maxIts + " iterations, " + this.bandRows + " rows at a time");
+        long start = System.nanoTime();
+        PngWriter png = new PngWriter(new BufferedOutputStream(new FileOutputStream(this.output)), this.width,
+                this.height, this.level);
+        try {
+            for (int y = 0; y < this.height; y += this.bandRows) {
+                int rows = Math.min(this.bandRows, this.height - y);
+                int count = rows * this.width;
+                DeepViewport band = this.band(y, rows);
+                calculator.calcMandelbrotSetInto(values, 0, this.width, this.width, rows, band, this.maxIts,
+                        MandelbrotCalculator.DEFAULT_RADIUS_SQUARED, false);
+                if (this.smooth) {
+                    float[] smoothValues = calculator.calcSmooth(values, 0, this.width, this.width, rows, band,
+                            this.maxIts, CancellationToken.NONE);
+                    for (int i = 0; i < count; i++) {
+                        colours[i] = colouring.colourAt(smoothValues[i], this.maxIts);
+                    }
+                } else if (table != null) {
+                    for (int i = 0; i < count; i++) {
+                        int n = values[i];
+                        colours[i] = table[n < 0 ? 0 : n > this.maxIts ? this.maxIts : n];
+                    }
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        colours[i] = colouring.colourOf(values[i], this.maxIts);
+                    }
+                }
+                png.writeRows(colours, 0, this.width, rows);
+                System.out.println("Rows " + (y + rows) + " of " + this.height + " written");
+            }
+        } finally {
+            png.close();
+        }
+        System.out.println("Wrote " + this.output + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /**
+     * Returns the viewport of the band of rows starting at row y0, whose
+     * pixels lie exactly where they would in the whole image. The centre is
+     * worked out at the precision of the whole image so that deep bands line
+     * up.
+     */
+    private DeepViewport band(int y0, int rows) {
+        MathContext mc = this.viewport.getMathContext(this.width, this.height);
+        // the band's centre is (2 * y0 + rows - height) / (2 * height) of the
+        // imaginary span from the image's
+        BigDecimal shift = new BigDecimal(this.viewport.getImagSpan())
+                .multiply(BigDecimal.valueOf(2L * y0 + rows - this.height), mc)
+                .divide(BigDecimal.valueOf(2L * this.height), mc);
+        return new DeepViewport(this.viewport.getCentreReal(), this.viewport.getCentreImag().add(shift, mc),
+                this.viewport.getRealSpan(), this.viewport.getImagSpan() * rows / this.height);
+    }
+}
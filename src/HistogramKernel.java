@@ -0,0 +1,43 @@
+/**
+ * A TileKernel which counts the values of each rectangle into an
+ * IterationHistogram straight after the kernel of the frame has calculated
+ * it, while the values are still in the thread's cache. Without a kernel it
+ * only counts the values already in the buffer.
+ *
+ */
+public class HistogramKernel implements TileKernel {
+
+    private final TileKernel kernel;
+    private final IterationHistogram histogram;
+
+    /**
+     * Creates a kernel which counts what another calculates.
+     *
+     * @param kernel
+     *            the kernel which calculates the frame's pixels, or null to
+     *            count the buffer as it is
+     * @param histogram
+     *            the histogram to count into
+     */
+    HistogramKernel(TileKernel kernel, IterationHistogram histogram) {
+        this.kernel = kernel;
+        this.histogram = histogram;
+    }
+
+    @Override
+    public void calcTile(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+        if (this.kernel != null) {
+            this.kernel.calcTile(buffer, offset, stride, x0, y0, x1, y1);
+        }
+        this.histogram.count(buffer, offset, stride, x0, y0, x1, y1);
+    }
+
+    @Override
+    public void calcSpaced(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1, int xStep,
+            int yStep) {
+        if (this.kernel != null) {
+            this.kernel.calcSpaced(buffer, offset, stride, x0, y0, x1, y1, xStep, yStep);
+        }
+        this.histogram.count(buffer, offset, stride, x0, y0, x1, y1, xStep, yStep);
+    }
+}
@@ -1,58 +1,282 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * History keeps track of the current state of the Model’s variables, plus any
  * past or previous states, to enable undo and redo.
+ *
+ * The frames are kept within a memory budget. When they take up more than
+ * that, the frames furthest from the current position are packed first, and
+ * if that is not enough they are dropped, leaving only their viewport and
+ * maximum iterations. getMData returns null for a dropped frame, which the
+ * model then calculates again and hands back with restore.
  * 
  *
  * 
  */
 public class History implements Serializable {
 
-    private ArrayList<int[][]> dataList;
+    // keeps files saved before frames were stored flat loadable
+    private static final long serialVersionUID = 6472317995485837376L;
+    private static final Logger LOGGER = Logger.getLogger(History.class.getName());
+
+    // 64MB, room for about twenty unpacked 900x900 frames
+    static final long DEFAULT_BUDGET_BYTES = 64L << 20;
+
+    private ArrayList<HistoryFrame> dataList;
     private ArrayList<Integer> itsList;
     private ArrayList<double[]> coordsList;
+    private ArrayList<DeepViewport> viewportList;
 
     private int curPos;
+    private long budgetBytes;
 
     History() {
-        this.dataList = new ArrayList<int[][]>();
+        this.dataList = new ArrayList<HistoryFrame>();
         this.itsList = new ArrayList<Integer>();
         this.coordsList = new ArrayList<double[]>();
+        this.viewportList = new ArrayList<DeepViewport>();
         this.curPos = 0;
+        this.budgetBytes = DEFAULT_BUDGET_BYTES;
 
     }
 
+    /**
+     * Creates a history from the entries read from a file.
+     *
+     * @param frames
+     *            the frame of each entry
+     * @param its
+     *            the maximum number of iterations of each entry
+     * @param viewports
+     *            the viewport of each entry
+     * @param curPos
+     *            the current position
+     * @param budgetBytes
+     *            the most memory, in bytes, the frames should take up
+     */
+    History(ArrayList<HistoryFrame> frames, ArrayList<Integer> its, ArrayList<DeepViewport> viewports, int curPos,
+            long budgetBytes) {
+        this.dataList = frames;
+        this.itsList = its;
+        this.viewportList = viewports;
+        this.coordsList = new ArrayList<double[]>();
+        for (DeepViewport viewport : viewports) {
+            double[] coords = {viewport.getMinReal(), viewport.getMaxReal(), viewport.getMinImag(),
+                    viewport.getMaxImag()};
+            this.coordsList.add(coords);
+        }
+        this.curPos = curPos;
+        this.budgetBytes = budgetBytes;
+        this.fitBudget();
+    }
+
     /**
      * takes a variety of values and adds each one to the appropriate arraylist
      * in history.
      * 
      * @param mData
-     *            a 2d array of values calculated by the mandelbrotCalculator
-     *            class and used to draw the image
+     *            a row-major array of values calculated by the
+     *            mandelbrotCalculator class and used to draw the image
      * @param maxIts
      *            the maximum number of iterations
-     * @param minReal
-     *            the minimum real number used to calculate the mandelbrot data
-     * @param maxReal
-     *            the minimum real number used to calculate the mandelbrot data
-     * @param minImag
-     *            the minimum imaginary number used to calculate the mandelbrot
-     *            data
-     * 
-     * @param maxImag
-     *            the maximum imaginary number used to calculate the mandelbrot
-     *            data
+     * @param viewport
+     *            the area of the complex plane used to calculate the
+     *            mandelbrot data
      */
-    public void add(int[][] mData, int maxIts, double minReal, double maxReal, double minImag, double maxImag) {
-        System.out.println("Saving to history..");
-        this.dataList.add(mData);
+    public void add(int[] mData, int maxIts, DeepViewport viewport) {
+        LOGGER.finer("Saving to history");
+        HistoryEvent event = new HistoryEvent();
+        event.begin();
+        this.dataList.add(new HistoryFrame(mData));
         this.itsList.add(maxIts);
-        double[] coords = {minReal, maxReal, minImag, maxImag};
+        double[] coords = {viewport.getMinReal(), viewport.getMaxReal(), viewport.getMinImag(),
+                viewport.getMaxImag()};
         this.coordsList.add(coords);
-        System.out.println("History position: " + this.curPos);
+        this.viewportList.add(viewport);
         this.redo();
+        this.fitBudget();
+        this.commit(event, "add", mData, maxIts, viewport);
+    }
+
+    /**
+     * Gives the frame at the current history position its data again, if it
+     * was dropped and has been calculated again.
+     *
+     * @param mData
+     *            the frame's row-major mandelbrot data, calculated with the
+     *            viewport and maximum iterations at the current position
+     */
+    public void restore(int[] mData) {
+        HistoryEvent event = new HistoryEvent();
+        event.begin();
+        this.dataList.get(this.curPos).restore(mData);
+        this.fitBudget();
+        this.commit(event, "restore", mData, this.getIts(), this.getViewport());
+    }
+
+    /**
+     * Ends a history event about a frame, and records it if a recording
+     * wants it.
+     */
+    private void commit(HistoryEvent event, String action, int[] mData, int maxIts, DeepViewport viewport) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.setFrame(viewport, maxIts, mData);
+            event.action = action;
+            event.position = this.curPos;
+            event.frames = this.dataList.size();
+            event.usedBytes = this.getUsedBytes();
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns whether the frame at the current history position has been
+     * dropped and has to be calculated again.
+     *
+     * @return true if getMData would return null; false if the history is
+     *         empty
+     */
+    public boolean isDropped() {
+        return !this.dataList.isEmpty() && this.dataList.get(this.curPos).isDropped();
+    }
+
+    /**
+     * Returns the number of entries in the history.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return this.dataList.size();
+    }
+
+    /**
+     * Returns the current history position.
+     *
+     * @return the index of the current entry
+     */
+    int getPosition() {
+        return this.curPos;
+    }
+
+    /**
+     * Returns the frame of an entry, in whatever form it is held.
+     *
+     * @param i
+     *            the index of the entry
+     * @return the entry's frame
+     */
+    HistoryFrame getFrame(int i) {
+        return this.dataList.get(i);
+    }
+
+    /**
+     * Returns the maximum number of iterations of an entry.
+     *
+     * @param i
+     *            the index of the entry
+     * @return the entry's maximum iterations
+     */
+    int getIts(int i) {
+        return this.itsList.get(i);
+    }
+
+    /**
+     * Returns the viewport of an entry.
+     *
+     * @param i
+     *            the index of the entry
+     * @return the entry's viewport
+     */
+    DeepViewport getViewport(int i) {
+        return this.viewportList.get(i);
+    }
+
+    /**
+     * Sets how much memory the frames may take up, packing or dropping
+     * frames straight away if they take up more. The frame at the current
+     * position is never packed or dropped, so it may go over a small budget.
+     *
+     * @param budgetBytes
+     *            the most memory, in bytes, the frames should take up
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        this.fitBudget();
+    }
+
+    /**
+     * Returns how much memory the frames may take up.
+     *
+     * @return the budget in bytes
+     */
+    public long getBudgetBytes() {
+        return this.budgetBytes;
+    }
+
+    /**
+     * Returns roughly how much memory the frames take up.
+     *
+     * @return the size of all the frames in bytes
+     */
+    public long getUsedBytes() {
+        long used = 0;
+        for (HistoryFrame frame : this.dataList) {
+            used += frame.getBytes();
+        }
+        return used;
+    }
+
+    /**
+     * Packs the frames furthest from the current position until the frames
+     * are within the budget, and if packing them all is not enough, drops
+     * them in the same order.
+     */
+    private void fitBudget() {
+        long used = this.getUsedBytes();
+        if (used <= this.budgetBytes) {
+            return;
+        }
+        Integer[] order = new Integer[this.dataList.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        final int pos = this.curPos;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Integer.compare(Math.abs(b - pos), Math.abs(a - pos));
+            }
+        });
+        for (int i = 0; i < order.length && used > this.budgetBytes; i++) {
+            HistoryFrame frame = this.dataList.get(order[i]);
+            if (order[i] != pos && frame.isUnpacked()) {
+                used -= frame.getBytes();
+                frame.pack();
+                used += frame.getBytes();
+            }
+        }
+        int dropped = 0;
+        for (int i = 0; i < order.length && used > this.budgetBytes; i++) {
+            HistoryFrame frame = this.dataList.get(order[i]);
+            if (order[i] != pos && !frame.isDropped()) {
+                used -= frame.getBytes();
+                frame.drop();
+                used += frame.getBytes();
+                dropped++;
+            }
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("History frames take up " + (used >> 10) + "KB"
+                    + (dropped > 0 ? ", dropped " + dropped + " frames" : ""));
+        }
     }
 
     /**
@@ -66,16 +290,17 @@ public class History implements Serializable {
         this.itsList = new ArrayList<Integer>();
         this.itsList.add(origMaxIt);
 
-        int[][] origData = this.dataList.get(0);
-        this.dataList = new ArrayList<int[][]>();
+        HistoryFrame origData = this.dataList.get(0);
+        this.dataList = new ArrayList<HistoryFrame>();
         this.dataList.add(origData);
 
         double[] origCoords = this.coordsList.get(0);
         this.coordsList = new ArrayList<double[]>();
         this.coordsList.add(origCoords);
 
-        System.out.println("History position: " + this.curPos);
-
+        DeepViewport origViewport = this.viewportList.get(0);
+        this.viewportList = new ArrayList<DeepViewport>();
+        this.viewportList.add(origViewport);
     }
 
     /**
@@ -84,7 +309,9 @@ public class History implements Serializable {
     public void undo() {
         if (this.curPos > 0) {
             this.curPos--;
-            System.out.println("Decremented pos. History position: " + this.curPos);
+            if (LOGGER.isLoggable(Level.FINER)) {
+                LOGGER.finer("History position: " + this.curPos);
+            }
         }
 
     }
@@ -107,6 +334,17 @@ public class History implements Serializable {
 
     }
 
+    /**
+     * Returns the viewport at the current history position. Unlike the values
+     * returned by getCoords, this keeps its full precision at deep zooms.
+     *
+     * @return the area of the complex plane at the current history position
+     */
+    public DeepViewport getViewport() {
+
+        return this.viewportList.get(this.curPos);
+    }
+
     /**
      * returns the number of maximum iterations at the current history position.
      * 
@@ -120,12 +358,13 @@ public class History implements Serializable {
     /**
      * returns the mandelbrot data at the current history position.
      * 
-     * @return a 2d array containing the mandelbrot image data at the current
-     *         history position
+     * @return a row-major array containing the mandelbrot image data at the
+     *         current history position, which must not be changed; or null
+     *         if the frame has been dropped
      */
-    public int[][] getMData() {
+    public int[] getMData() {
 
-        return this.dataList.get(this.curPos);
+        return this.dataList.get(this.curPos).getData();
     }
 
     /**
@@ -134,8 +373,49 @@ public class History implements Serializable {
     public void redo() {
         if (this.curPos < this.dataList.size() - 1) {
             this.curPos++;
-            System.out.println("Incremented pos. History position: " + this.curPos);
+            if (LOGGER.isLoggable(Level.FINER)) {
+                LOGGER.finer("History position: " + this.curPos);
+            }
+        }
+
+    }
+
+    /**
+     * Reads a saved history, flattening any int[][] frames written before
+     * frames were stored as row-major int arrays, wrapping the int[] frames
+     * written before frames were packed, and making viewports from the
+     * double bounds of histories saved before deep zoom.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        ArrayList<?> saved = this.dataList;
+        ArrayList<HistoryFrame> frames = new ArrayList<HistoryFrame>(saved.size());
+        for (Object frame : saved) {
+            if (frame instanceof HistoryFrame) {
+                frames.add((HistoryFrame) frame);
+            } else if (frame instanceof int[][]) {
+                int[][] rows = (int[][]) frame;
+                int width = rows.length == 0 ? 0 : rows[0].length;
+                int[] flat = new int[rows.length * width];
+                for (int y = 0; y < rows.length; y++) {
+                    System.arraycopy(rows[y], 0, flat, y * width, width);
+                }
+                frames.add(new HistoryFrame(flat));
+            } else {
+                frames.add(new HistoryFrame((int[]) frame));
+            }
         }
+        this.dataList = frames;
+        if (this.budgetBytes == 0) {
+            this.budgetBytes = DEFAULT_BUDGET_BYTES;
+        }
+        this.fitBudget();
 
+        if (this.viewportList == null) {
+            this.viewportList = new ArrayList<DeepViewport>();
+            for (double[] coords : this.coordsList) {
+                this.viewportList.add(DeepViewport.fromBounds(coords[0], coords[1], coords[2], coords[3]));
+            }
+        }
     }
 }
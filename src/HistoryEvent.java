@@ -0,0 +1,29 @@
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for a frame being added to the History, or a
+ * dropped frame being restored, including packing and dropping older frames
+ * to keep within the memory budget.
+ *
+ */
+@Name("mandelbrot.History")
+@Label("Update History")
+@Description("A frame added to or restored in the history")
+public class HistoryEvent extends MandelbrotEvent {
+
+    @Label("Action")
+    String action;
+
+    @Label("Position")
+    int position;
+
+    @Label("Frames")
+    int frames;
+
+    @Label("Used Memory")
+    @DataAmount
+    long usedBytes;
+}
@@ -0,0 +1,254 @@
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * One frame of the history, held in whichever of three forms History has
+ * left it in to stay within its memory budget: the row-major values
+ * themselves, those values packed, or nothing at all, in which case the
+ * frame has to be calculated again from its history entry's viewport and
+ * maximum iterations.
+ *
+ * Frames are packed as runs of equal values, as a frame is mostly bands of
+ * equal iteration counts. Each run is written as the difference between its
+ * value and the value of the run before, then the length of the run less
+ * one, both as variable length integers of seven bits to a byte, the
+ * difference zigzag encoded so that small negative steps stay small.
+ *
+ * A frame read from a .mandelbrot file is left packed in the file, which is
+ * mapped into memory, and is only unpacked when it is asked for.
+ *
+ */
+public class HistoryFrame implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // the memory an empty frame takes up, roughly
+    static final long OVERHEAD_BYTES = 64;
+
+    private int length;
+    // at most one of these is non-null; all are null once dropped
+    private int[] data;
+    private byte[] packed;
+    // packed values in a mapped file, read with absolute gets only
+    private transient ByteBuffer mapped;
+
+    /**
+     * Creates a frame holding the given values.
+     *
+     * @param data
+     *            a row-major array of mandelbrot data, which must not be
+     *            changed afterwards
+     */
+    HistoryFrame(int[] data) {
+        this.length = data.length;
+        this.data = data;
+    }
+
+    /**
+     * Creates a frame whose packed values are in a buffer, such as part of a
+     * mapped file, unpacking them only when they are asked for.
+     *
+     * @param length
+     *            the number of values in the frame
+     * @param packed
+     *            the frame's packed values, from position to limit; null if
+     *            the frame was dropped
+     */
+    HistoryFrame(int length, ByteBuffer packed) {
+        this.length = length;
+        this.mapped = packed == null ? null : packed.slice();
+    }
+
+    /**
+     * Returns the frame's values, unpacking them if they are packed.
+     *
+     * @return a row-major array of mandelbrot data, which must not be
+     *         changed; or null if the frame has been dropped
+     */
+    int[] getData() {
+        if (this.data != null) {
+            return this.data;
+        }
+        if (this.packed != null) {
+            return unpack(ByteBuffer.wrap(this.packed), this.length);
+        }
+        if (this.mapped != null) {
+            return unpack(this.mapped, this.length);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the frame's packed values, packing them afresh if the frame
+     * is not packed.
+     *
+     * @return the packed values, from position to limit; or null if the
+     *         frame has been dropped
+     */
+    ByteBuffer getPacked() {
+        if (this.data != null) {
+            return ByteBuffer.wrap(pack(this.data));
+        }
+        if (this.packed != null) {
+            return ByteBuffer.wrap(this.packed);
+        }
+        if (this.mapped != null) {
+            return this.mapped.duplicate();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of values in the frame, even once it is dropped.
+     *
+     * @return the frame's width times its height
+     */
+    int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Gives a dropped frame its values again.
+     *
+     * @param data
+     *            the frame's row-major mandelbrot data, calculated again,
+     *            which must not be changed afterwards
+     */
+    void restore(int[] data) {
+        this.length = data.length;
+        this.data = data;
+        this.packed = null;
+        this.mapped = null;
+    }
+
+    /**
+     * Packs the frame's values, if they are not packed already.
+     */
+    void pack() {
+        if (this.data != null) {
+            this.packed = pack(this.data);
+            this.data = null;
+        }
+    }
+
+    /**
+     * Drops the frame's values, so that it has to be calculated again.
+     */
+    void drop() {
+        this.data = null;
+        this.packed = null;
+        this.mapped = null;
+    }
+
+    /**
+     * Returns whether the frame's values are held as they are.
+     *
+     * @return true if the frame is neither packed nor dropped
+     */
+    boolean isUnpacked() {
+        return this.data != null;
+    }
+
+    /**
+     * Returns whether the frame's values have been dropped.
+     *
+     * @return true if the frame has to be calculated again
+     */
+    boolean isDropped() {
+        return this.data == null && this.packed == null && this.mapped == null;
+    }
+
+    /**
+     * Returns roughly how much memory the frame takes up. A frame left in a
+     * mapped file takes up none of the heap.
+     *
+     * @return the frame's size in bytes
+     */
+    long getBytes() {
+        if (this.data != null) {
+            return OVERHEAD_BYTES + 4L * this.data.length;
+        }
+        if (this.packed != null) {
+            return OVERHEAD_BYTES + this.packed.length;
+        }
+        return OVERHEAD_BYTES;
+    }
+
+    private static byte[] pack(int[] data) {
+        byte[] out = new byte[Math.max(16, data.length / 4)];
+        int size = 0;
+        int previous = 0;
+        int i = 0;
+        while (i < data.length) {
+            int value = data[i];
+            int run = i + 1;
+            while (run < data.length && data[run] == value) {
+                run++;
+            }
+            // two variable length integers take up ten bytes at most
+            if (size + 10 > out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            int delta = value - previous;
+            size = writeVarInt(out, size, (delta << 1) ^ (delta >> 31));
+            size = writeVarInt(out, size, run - i - 1);
+            previous = value;
+            i = run;
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    /**
+     * Copies a frame left in a mapped file into the heap before it is
+     * serialized.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (this.mapped != null) {
+            byte[] bytes = new byte[this.mapped.remaining()];
+            this.mapped.duplicate().get(bytes);
+            this.packed = bytes;
+            this.mapped = null;
+        }
+        out.defaultWriteObject();
+    }
+
+    private static int[] unpack(ByteBuffer packed, int length) {
+        int[] data = new int[length];
+        int[] position = {packed.position()};
+        int previous = 0;
+        int i = 0;
+        while (i < length) {
+            int zigzag = readVarInt(packed, position);
+            int value = previous + ((zigzag >>> 1) ^ -(zigzag & 1));
+            int end = i + readVarInt(packed, position) + 1;
+            Arrays.fill(data, i, end, value);
+            previous = value;
+            i = end;
+        }
+        return data;
+    }
+
+    private static int writeVarInt(byte[] out, int index, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[index++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[index++] = (byte) value;
+        return index;
+    }
+
+    private static int readVarInt(ByteBuffer in, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get(position[0]++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
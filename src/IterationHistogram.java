@@ -0,0 +1,197 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Counts how many pixels of a frame have each iteration value, as the frame
+ * is calculated. Each thread counts into its own array, so that the threads
+ * of the pool never contend; finish then adds the arrays together and works
+ * out the cumulative counts, both in parallel, once every thread is done,
+ * and lets go of the threads' arrays, which may be long and would otherwise
+ * live on with the threads of the pool.
+ * The cumulative counts drive MDisplay's equalized colouring, which spreads
+ * the palette evenly over the pixels rather than over the iteration values.
+ *
+ * Values below zero are counted as zero and values above the maximum as the
+ * maximum.
+ *
+ */
+public class IterationHistogram {
+
+    // the highest maximum iterations a histogram is made for, as each thread
+    // needs an array this long
+    static final int MAX_ITERATIONS = 1 << 20;
+
+    private final int maxIterations;
+    // the slot of each thread which has counted anything, added to without
+    // locking; a slot holds the thread's array until finish empties it
+    private final ConcurrentLinkedQueue<int[][]> parts = new ConcurrentLinkedQueue<int[][]>();
+    private final ThreadLocal<int[][]> part = new ThreadLocal<int[][]>() {
+        @Override
+        protected int[][] initialValue() {
+            return new int[1][];
+        }
+    };
+    private long[] cumulative;
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param maxIterations
+     *            the maximum number of iterations of the frame, at most
+     *            MAX_ITERATIONS
+     */
+    public IterationHistogram(int maxIterations) {
+        if (maxIterations > MAX_ITERATIONS) {
+            throw new IllegalArgumentException("Too many iterations for a histogram: " + maxIterations);
+        }
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Returns whether a histogram can be made for a maximum number of
+     * iterations.
+     *
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @return true if it is at most MAX_ITERATIONS
+     */
+    public static boolean supports(int maxIterations) {
+        return maxIterations >= 0 && maxIterations <= MAX_ITERATIONS;
+    }
+
+    /**
+     * Counts the values of the rectangle of pixels from (x0, y0) inclusive
+     * to (x1, y1) exclusive into the calling thread's array.
+     *
+     * @param buffer
+     *            the row-major array holding the values
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between two neighbouring rows
+     * @param x0
+     *            the left edge of the rectangle
+     * @param y0
+     *            the top edge of the rectangle
+     * @param x1
+     *            the right edge of the rectangle (exclusive)
+     * @param y1
+     *            the bottom edge of the rectangle (exclusive)
+     */
+    public void count(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+        this.count(buffer, offset, stride, x0, y0, x1, y1, 1, 1);
+    }
+
+    /**
+     * Counts the values of the pixels from (x0, y0) up to but not including
+     * x1 and y1 which are a whole number of xStep pixels right of x0 and
+     * yStep pixels down from y0 into the calling thread's array.
+     *
+     * @param buffer
+     *            the row-major array holding the values
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between two neighbouring rows
+     * @param x0
+     *            the left edge of the pixels
+     * @param y0
+     *            the top edge of the pixels
+     * @param x1
+     *            the right edge of the pixels (exclusive)
+     * @param y1
+     *            the bottom edge of the pixels (exclusive)
+     * @param xStep
+     *            the distance between two neighbouring pixels of a row
+     * @param yStep
+     *            the distance between two neighbouring rows of pixels
+     */
+    public void count(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1, int xStep,
+            int yStep) {
+        int[][] slot = this.part.get();
+        int[] counts = slot[0];
+        if (counts == null) {
+            counts = new int[this.maxIterations + 1];
+            slot[0] = counts;
+            this.parts.add(slot);
+        }
+        int max = this.maxIterations;
+        for (int y = y0; y < y1; y += yStep) {
+            int index = offset + y * stride + x0;
+            int end = offset + y * stride + x1;
+            for (; index < end; index += xStep) {
+                int n = buffer[index];
+                counts[n < 0 ? 0 : n > max ? max : n]++;
+            }
+        }
+    }
+
+    /**
+     * Forgets everything counted so far. Must not be called while any thread
+     * is counting.
+     */
+    public void clear() {
+        for (int[][] slot : this.parts) {
+            Arrays.fill(slot[0], 0);
+        }
+        this.cumulative = null;
+    }
+
+    /**
+     * Adds the threads' arrays together and works out the cumulative counts,
+     * then lets go of the arrays, so anything counted afterwards starts from
+     * nothing. Must only be called once every thread has finished counting.
+     *
+     * @return the number of pixels with each value or less, indexed by value
+     */
+    public long[] finish() {
+        final int[][] all = new int[this.parts.size()][];
+        int i = 0;
+        for (int[][] slot : this.parts) {
+            all[i++] = slot[0];
+            // a thread's slot stays with it while the histogram lives
+            slot[0] = null;
+        }
+        this.parts.clear();
+        long[] merged = new long[this.maxIterations + 1];
+        Arrays.parallelSetAll(merged, new IntToLongFunction() {
+            @Override
+            public long applyAsLong(int value) {
+                long sum = 0;
+                for (int[] counts : all) {
+                    sum += counts[value];
+                }
+                return sum;
+            }
+        });
+        Arrays.parallelPrefix(merged, new LongBinaryOperator() {
+            @Override
+            public long applyAsLong(long left, long right) {
+                return left + right;
+            }
+        });
+        this.cumulative = merged;
+        return merged;
+    }
+
+    /**
+     * Returns the cumulative counts worked out by finish.
+     *
+     * @return the number of pixels with each value or less, indexed by
+     *         value; or null if finish has not been called
+     */
+    public long[] getCumulative() {
+        return this.cumulative;
+    }
+
+    /**
+     * Returns the maximum number of iterations of the frame.
+     *
+     * @return the highest value counted separately
+     */
+    public int getMaxIterations() {
+        return this.maxIterations;
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what the MandelbrotCalculator's kernel has done since the counters
+ * were last reset. The counters are updated once per row by whichever thread
+ * calculated it, so they can be read while a frame is being calculated.
+ *
+ */
+public class KernelStats {
+
+    private final LongAdder pixels = new LongAdder();
+    private final LongAdder bulbSkipped = new LongAdder();
+    private final LongAdder cyclesFound = new LongAdder();
+    private final LongAdder rebases = new LongAdder();
+
+    /**
+     * Records a finished row of pixels.
+     *
+     * @param rowPixels
+     *            the number of pixels in the row
+     * @param rowBulbSkipped
+     *            how many of them were found to be inside the main cardioid
+     *            or the period-2 bulb without iterating
+     * @param rowCyclesFound
+     *            how many of them stopped early because their orbit repeated
+     */
+    void addRow(int rowPixels, int rowBulbSkipped, int rowCyclesFound) {
+        this.pixels.add(rowPixels);
+        this.bulbSkipped.add(rowBulbSkipped);
+        this.cyclesFound.add(rowCyclesFound);
+    }
+
+    /**
+     * Records pixels of a deep zoom frame being rebased onto the start of the
+     * reference orbit.
+     *
+     * @param count
+     *            the number of rebases
+     */
+    void addRebases(int count) {
+        this.rebases.add(count);
+    }
+
+    /**
+     * Returns the number of pixels calculated.
+     *
+     * @return the number of pixels calculated since the last reset
+     */
+    public long getPixels() {
+        return this.pixels.sum();
+    }
+
+    /**
+     * Returns the number of pixels whose iteration loop was skipped by the
+     * cardioid and bulb check.
+     *
+     * @return the number of skipped pixels since the last reset
+     */
+    public long getBulbSkipped() {
+        return this.bulbSkipped.sum();
+    }
+
+    /**
+     * Returns the number of pixels that stopped iterating early because the
+     * periodicity check found their orbit repeating.
+     *
+     * @return the number of cycles found since the last reset
+     */
+    public long getCyclesFound() {
+        return this.cyclesFound.sum();
+    }
+
+    /**
+     * Returns the number of times a perturbation glitch was found and the
+     * pixel rebased onto the start of the reference orbit.
+     *
+     * @return the number of rebases since the last reset
+     */
+    public long getRebases() {
+        return this.rebases.sum();
+    }
+
+    /**
+     * Returns the fraction of pixels whose iteration loop was skipped by the
+     * cardioid and bulb check.
+     *
+     * @return a value from 0 to 1, or 0 if no pixels have been calculated
+     */
+    public double getBulbSkipRate() {
+        long total = this.getPixels();
+        return total == 0 ? 0 : (double) this.getBulbSkipped() / total;
+    }
+
+    /**
+     * Sets every counter back to zero.
+     */
+    public void reset() {
+        this.pixels.reset();
+        this.bulbSkipped.reset();
+        this.cyclesFound.reset();
+        this.rebases.reset();
+    }
+}
@@ -1,6 +1,13 @@
 
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.swing.JPanel;
 
@@ -9,18 +16,29 @@ import javax.swing.JPanel;
  * Extends JPanel to draw and redraw the mandelbrot data (and/or the zoom
  * marquee) to a buffered image according the current colour mode.
  *
+ * The image is kept between paints and only coloured again when the data,
+ * the maximum iterations or the colour mode change, writing straight into
+ * its pixel array. The zoom marquee is drawn over the image, and moving it
+ * repaints only the area the marquee covered and now covers, so dragging it
+ * costs next to nothing.
+ *
+ * If the data comes with continuous escape values, they are coloured instead,
+ * blending the palette's colours, in bands of rows shared out between the
+ * threads of the common fork/join pool.
+ *
+ * In equalized colouring the palette is spread over the pixels rather than
+ * over the iteration values: each value is coloured by the fraction of the
+ * pixels outside the set with that value or less, taken from the cumulative
+ * histogram worked out while the frame was calculated. Every colour of the
+ * palette then covers about as many pixels, however the values are spread.
+ *
  */
 public class MDisplay extends JPanel {
 
-    private static final int COLOUR_MODE_5 = 5;
-
-    private static final int COLOUR_MODE_4 = 4;
-
-    private static final int COLOUR_MODE_3 = 3;
+    private static final Logger LOGGER = Logger.getLogger(MDisplay.class.getName());
 
-    private static final int COLOUR_MODE_2 = 2;
-
-    private static final int COLOUR_MODE_1 = 1;
+    // the rows of each band coloured smoothly on its own thread
+    private static final int SMOOTH_BAND_ROWS = 32;
 
     // given mandelbrot array paints data
 
@@ -30,8 +48,20 @@ public class MDisplay extends JPanel {
     private int x2, y2, x1, y1;
 
     private boolean zooming = false;
+    // how far the image is drawn from its place while the user pans, until
+    // the panned frame arrives
+    private int panX, panY;
     private BufferedImage img;
-    private int[][] mData = {{0},{0}};
+    // whether img needs colouring again before it is painted
+    private boolean stale = true;
+    // row-major iteration values, mDataWidth values per row
+    private int[] mData = new int[0];
+    private int mDataWidth;
+    // continuous escape values laid out like mData, or null
+    private float[] smoothData;
+    // the number of pixels of mData with each value or less, or null
+    private long[] cumulative;
+    private boolean equalized = false;
 
     private int maxIts;
 
@@ -60,80 +90,190 @@ public class MDisplay extends JPanel {
      */
     public void drawZoom(int x1, int y1, int x2, int y2) {
 
+        this.repaintMarquee();
         this.x1 = x1;
         this.y1 = y1;
         this.x2 = x2;
         this.y2 = y2;
+        this.repaintMarquee();
+    }
+
+    /**
+     * Asks for the area the zoom marquee covers, including its outline, to
+     * be repainted.
+     */
+    private void repaintMarquee() {
+        int left = Math.min(this.x1, this.x2);
+        int top = Math.min(this.y1, this.y2);
+        this.repaint(left, top, Math.abs(this.x2 - this.x1) + 1, Math.abs(this.y2 - this.y1) + 1);
+    }
+
+    /**
+     * Draws the image moved by the given distance while the user drags it to
+     * pan, until the next set of mandelbrot data replaces it.
+     *
+     * @param dx
+     *            the number of pixels to draw the image right of its place
+     * @param dy
+     *            the number of pixels to draw the image below its place
+     */
+    public void drawPan(int dx, int dy) {
+        this.panX = dx;
+        this.panY = dy;
         this.repaint();
     }
 
     /**
-     * Returns the buffered image created by MDisplay's paint method.
+     * Returns the image of the mandelbrot data in the current colour mode.
      * 
      * @return a buffered image created by the display
      */
     public BufferedImage getImg() {
+        if (this.stale || this.img == null) {
+            this.colourImage();
+        }
         return this.img;
     }
 
     @Override
     public void paint(Graphics graphics) {
-
+        long start = System.nanoTime();
         super.paint(graphics);
-        // System.out.println(this.maxIts);
-        // System.out.println(this.MData.length);
-        // System.out.println(this.MData[0].length);
+        if (this.stale || this.img == null) {
+            this.colourImage();
+        }
+        graphics.drawImage(this.img, this.panX, this.panY, this);
 
-        this.img = new BufferedImage(Delegate.FRAME_SIZE, Delegate.FRAME_SIZE, BufferedImage.TYPE_INT_ARGB);
+        if (this.zooming) {
+            graphics.drawRect(this.x1, this.y1, this.x2 - this.x1, this.y2 - this.y1);
+        }
+        RenderMetrics.get().recordPhase(RenderPhase.PAINT, System.nanoTime() - start);
+    }
 
-        System.out.println("Painting display");
+    /**
+     * Colours img from the mandelbrot data, first making it again if the
+     * data has changed size.
+     */
+    private void colourImage() {
+        ColourEvent event = new ColourEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int width = this.mDataWidth == 0 ? Delegate.FRAME_SIZE : this.mDataWidth;
+        int height = this.mDataWidth == 0 ? Delegate.FRAME_SIZE : this.mData.length / this.mDataWidth;
+        if (this.img == null || this.img.getWidth() != width || this.img.getHeight() != height) {
+            this.img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        int[] pixels = ((DataBufferInt) this.img.getRaster().getDataBuffer()).getData();
+        int count = Math.min(this.mData.length, pixels.length);
+
+        long[] equalizing = this.getEqualizing();
+        int[] table = equalizing != null ? this.equalizedTable(equalizing)
+                : this.colours.getTable(this.colourMode, this.maxIts);
+        boolean smooth = this.smoothData != null && this.smoothData.length == this.mData.length
+                && this.colourMode != 0;
+        if (smooth) {
+            this.colourSmooth(pixels, count, width, equalizing);
+        } else if (table != null) {
+            for (int i = 0; i < count; i++) {
+                int n = this.mData[i];
+                pixels[i] = table[n < 0 ? 0 : n > this.maxIts ? this.maxIts : n];
+            }
+        } else {
+            Palette palette = this.colours.getPalette(this.colourMode);
+            for (int i = 0; i < count; i++) {
+                pixels[i] = palette.colourOf(this.mData[i], this.maxIts);
+            }
+        }
+        this.stale = false;
+        RenderMetrics.get().recordPhase(RenderPhase.COLOUR, System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.setFrame(null, this.maxIts, this.mData, this.cumulative);
+            event.colourMode = this.colourMode;
+            event.smooth = smooth;
+            event.equalized = equalizing != null;
+            event.commit();
+        }
+    }
 
-        // TODO for each element in mData,
-        // set relevant pixel in img appropriately
-        for (int i = 0; i < this.mData.length; i++) {
-            for (int j = 0; j < this.mData[0].length; j++) {
+    /**
+     * Returns the cumulative histogram to equalize the colours with, if
+     * equalized colouring is on and there is a histogram of the data with at
+     * least one pixel outside the set.
+     */
+    private long[] getEqualizing() {
+        if (!this.equalized || this.colourMode == 0 || this.cumulative == null || this.maxIts < 1
+                || this.cumulative.length != this.maxIts + 1 || this.cumulative[this.maxIts - 1] == 0) {
+            return null;
+        }
+        return this.cumulative;
+    }
 
-                int n = this.mData[i][j];
-                if (this.colourMode == 0) {
+    /**
+     * Works out the equalized colour of every iteration value from 0 to
+     * maxIts.
+     */
+    private int[] equalizedTable(long[] equalizing) {
+        Palette palette = this.colours.getPalette(this.colourMode);
+        double escaped = equalizing[this.maxIts - 1];
+        int[] table = new int[this.maxIts + 1];
+        for (int n = 0; n < this.maxIts; n++) {
+            table[n] = palette.colourOfFraction(equalizing[n] / escaped);
+        }
+        table[this.maxIts] = Palette.BLACK;
+        return table;
+    }
 
-                    if (n == this.maxIts) {
-                        this.img.setRGB(j, i, this.colours.get("black"));
-                    } else {
-                        this.img.setRGB(j, i, this.colours.get("white"));
-                    }
+    /**
+     * Returns the fraction of the pixels outside the set with a continuous
+     * value at or below the given one, interpolating between the cumulative
+     * counts of the integer values either side.
+     */
+    private static double equalizedFraction(long[] equalizing, float value, int maxIts) {
+        int n = (int) value;
+        int next = Math.min(n + 1, maxIts - 1);
+        double blend = value - n;
+        double below = equalizing[n] + (equalizing[next] - equalizing[n]) * blend;
+        return below / equalizing[maxIts - 1];
+    }
 
-                } else {
-
-                    // calculate where to index into the colour array by mapping
-                    // the mandelbrot data value to the range 0-254.
-                    // (colour arrays are 255 in length.)
-                    // casting to doubles for accuracy
-                    int nc = (int) (((double) n / (double) this.maxIts) * (double) Colours.getColMax() - 1);
-
-                    if (this.colourMode == COLOUR_MODE_1) {
-                        this.img.setRGB(j, i, this.colours.get(COLOUR_MODE_1, nc));
-                    } else if (this.colourMode == COLOUR_MODE_2) {
-                        this.img.setRGB(j, i, this.colours.get(COLOUR_MODE_2, nc));
-                    } else if (this.colourMode == COLOUR_MODE_3) {
-                        this.img.setRGB(j, i, this.colours.get(COLOUR_MODE_3, nc));
-                    } else if (this.colourMode == COLOUR_MODE_4) {
-                        this.img.setRGB(j, i, this.colours.get(COLOUR_MODE_4, nc));
-                    } else if (this.colourMode == COLOUR_MODE_5) {
-                        this.img.setRGB(j, i, this.colours.get(COLOUR_MODE_5, nc));
+    /**
+     * Colours the first count pixels from smoothData, in bands of rows
+     * coloured in parallel, equalized by the given cumulative histogram if it
+     * is not null.
+     */
+    private void colourSmooth(final int[] pixels, final int count, int width, final long[] equalizing) {
+        final Palette palette = this.colours.getPalette(this.colourMode);
+        final float[] values = this.smoothData;
+        final int its = this.maxIts;
+        List<RecursiveAction> bands = new ArrayList<RecursiveAction>();
+        for (int start = 0; start < count; start += SMOOTH_BAND_ROWS * width) {
+            final int from = start;
+            final int to = Math.min(count, start + SMOOTH_BAND_ROWS * width);
+            bands.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    if (equalizing == null) {
+                        for (int i = from; i < to; i++) {
+                            pixels[i] = palette.colourAt(values[i], its);
+                        }
+                        return;
                     }
-                    if (n == this.maxIts) {
-                        this.img.setRGB(j, i, this.colours.get("black"));
+                    for (int i = from; i < to; i++) {
+                        float value = values[i];
+                        pixels[i] = value >= its ? Palette.BLACK
+                                : palette.colourAtFraction(equalizedFraction(equalizing, Math.max(0, value), its));
                     }
                 }
-
-            }
-
-        }
-        graphics.drawImage(this.img, 0, 0, this);
-
-        if (this.zooming) {
-            graphics.drawRect(this.x1, this.y1, this.x2 - this.x1, this.y2 - this.y1);
+            });
         }
+        final List<RecursiveAction> all = bands;
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(all);
+            }
+        });
     }
 
     /**
@@ -145,9 +285,24 @@ public class MDisplay extends JPanel {
         } else {
             this.colourMode = 0;
         }
+        this.stale = true;
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Colour mode: " + this.colourMode);
+        }
+    }
 
-        System.out.println("Colour mode: " + this.colourMode);
-
+    /**
+     * Adds a palette loaded by the user and switches to it.
+     *
+     * @param palette
+     *            the palette to add
+     */
+    public void addPalette(Palette palette) {
+        this.colourMode = this.colours.addPalette(palette);
+        this.stale = true;
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Colour mode: " + this.colourMode + " (" + palette.getName() + ")");
+        }
     }
 
     /**
@@ -169,7 +324,10 @@ public class MDisplay extends JPanel {
      *            the number of iterations
      */
     public void setMaxIts(int m) {
-        this.maxIts = m;
+        if (m != this.maxIts) {
+            this.maxIts = m;
+            this.stale = true;
+        }
 
     }
 
@@ -177,12 +335,70 @@ public class MDisplay extends JPanel {
      * Sets the mandelbrot data to be painted.
      * 
      * @param m
-     *            2d array of values calculated by the MandelbrotCalculator
-     *            class.
+     *            row-major array of values calculated by the
+     *            MandelbrotCalculator class.
+     * @param width
+     *            the number of values in each row of m
      */
-    public void setMData(int[][] m) {
+    public void setMData(int[] m, int width) {
         this.mData = m;
+        this.mDataWidth = width;
+        this.smoothData = null;
+        this.cumulative = null;
+        this.stale = true;
+        this.panX = 0;
+        this.panY = 0;
+
+    }
+
+    /**
+     * Sets the continuous escape values of the mandelbrot data, to be
+     * coloured instead of its iteration values. Must be called after
+     * setMData, which clears them.
+     *
+     * @param smooth
+     *            values laid out like the data, or null to colour the
+     *            iteration values
+     */
+    public void setSmoothData(float[] smooth) {
+        this.smoothData = smooth;
+        this.stale = true;
+    }
 
+    /**
+     * Sets the cumulative histogram of the mandelbrot data, used by
+     * equalized colouring. Must be called after setMData, which clears it.
+     *
+     * @param cumulative
+     *            the number of pixels with each value or less, indexed by
+     *            value; or null if there is none
+     */
+    public void setCumulative(long[] cumulative) {
+        this.cumulative = cumulative;
+        this.stale = true;
+    }
+
+    /**
+     * Turns equalized colouring on or off.
+     *
+     * @param equalized
+     *            true to spread the palette over the pixels rather than over
+     *            the iteration values
+     */
+    public void setEqualized(boolean equalized) {
+        if (equalized != this.equalized) {
+            this.equalized = equalized;
+            this.stale = true;
+        }
+    }
+
+    /**
+     * Returns whether equalized colouring is on.
+     *
+     * @return true if the palette is spread over the pixels
+     */
+    public boolean isEqualized() {
+        return this.equalized;
     }
 
     /**
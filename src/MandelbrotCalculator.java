@@ -1,4 +1,12 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * The MandelbrotCalculator class contains methods which establish the
@@ -21,11 +29,22 @@ import java.io.Serializable;
  * MandelbrotCalculator.INITIAL_MAX_ITERATIONS,
  * MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
  *
+ * calcMandelbrotSetInto takes the same parameters but writes the values into
+ * a flat, row-major int[] supplied by the caller instead of allocating a new
+ * array per row. It splits the frame into tiles which are calculated on a
+ * work-stealing fork/join pool (see TileTask). The number of worker threads
+ * can be changed with setParallelism. calcMandelbrotSetSubdivided fills the
+ * same buffer, but skips calculating areas whose border pixels all have the
+ * same value (see SubdivisionTask).
+ *
  * @author jonl
  *
  */
 public class MandelbrotCalculator implements Serializable {
 
+    // keeps files saved before the parallel engine was added loadable
+    private static final long serialVersionUID = 2961014623832760558L;
+
     // Initial parameter values
     protected static final double INITIAL_MIN_REAL = -2.0;
     protected static final double INITIAL_MAX_REAL = 0.7;
@@ -36,6 +55,49 @@ public class MandelbrotCalculator implements Serializable {
     // Default parameter values
     protected static final double DEFAULT_RADIUS_SQUARED = 4.0;
 
+    // number of worker threads used by calcMandelbrotSetInto
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    // stored negated so that models saved before it existed load with the
+    // check switched on
+    private boolean bulbCheckDisabled;
+
+    private boolean periodicityCheck;
+
+    // stored negated so that loaded models use the vector kernel by default
+    private boolean simdDisabled;
+
+    // whether the jdk.incubator.vector module has been added to the JVM (with
+    // --add-modules) and this machine has vectors of more than one double
+    static final boolean SIMD_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && SimdKernel.isUseful();
+
+    // created on first use, and not saved with the model
+    private transient ForkJoinPool pool;
+
+    private transient KernelStats stats = new KernelStats();
+
+    // the precision tier of the last viewport calculated, and the number of
+    // frames calculated with each tier
+    private transient volatile PrecisionTier lastTier;
+    private transient AtomicLongArray tierFrames = new AtomicLongArray(PrecisionTier.values().length);
+
+    // counts the values of the frame being calculated, if not null
+    private transient volatile IterationHistogram histogram;
+
+    // how close Z must come to a previous value to count as a cycle
+    private static final double PERIODICITY_TOLERANCE = 1e-13;
+
+    // returned by calcMandelPeriodic when a cycle is found
+    private static final int CYCLE_FOUND = -1;
+
+    // returned by calcMandelFrom when Z has not escaped after maxIterations
+    static final int NOT_ESCAPED = -2;
+
+    // pixel step of the first pass of calcMandelbrotSetProgressive; a power
+    // of two, giving passes at 1/16, 1/4 and full resolution
+    static final int PROGRESSIVE_FIRST_STEP = 4;
+
     /**
      * Method which calculates the number of iterations over which Z_n+1 = Z_n^2
      * + C can be applied for Z starting at the origin and a specific constant C
@@ -62,7 +124,7 @@ public class MandelbrotCalculator implements Serializable {
      * @return the number iterations for the value of Z to grow outside of the
      *         bounding radius, or maxIterations if it never escaped.
      */
-    private int calcMandel(double cReal, double cImaginary, int maxIterations, double radiusSquared) {
+    static int calcMandel(double cReal, double cImaginary, int maxIterations, double radiusSquared) {
         // To work out Z_n+1 = Z_n^2 + C and establish whether C is in the
         // Mandelbrot set or not
         // we need to
@@ -93,6 +155,155 @@ public class MandelbrotCalculator implements Serializable {
         return iterations;
     }
 
+    /**
+     * Works like calcMandel, but also watches for the orbit of Z falling into a
+     * cycle, which means it will never escape. Following Brent's method, one
+     * value of Z is remembered and compared with each new value; the
+     * remembered value is replaced after 1, 2, 4, 8... iterations, so a cycle
+     * of any length is eventually caught while an escaping orbit only pays for
+     * one comparison per iteration. Z is treated as having come back to the
+     * remembered value if both components are within PERIODICITY_TOLERANCE of
+     * it.
+     *
+     * @param cReal
+     *            the real component of the constant C.
+     * @param cImaginary
+     *            the imaginary component of the constant C.
+     * @param maxIterations
+     *            the maximum number of iterations.
+     * @param radiusSquared
+     *            the squared escape radius.
+     * @return the number iterations for the value of Z to grow outside of the
+     *         bounding radius, maxIterations if it never escaped, or
+     *         CYCLE_FOUND if a cycle was found first.
+     */
+    private int calcMandelPeriodic(double cReal, double cImaginary, int maxIterations, double radiusSquared) {
+        int iterations = 0;
+        double zr = 0;
+        double zi = 0;
+        double savedZr = 0;
+        double savedZi = 0;
+        int window = 1;
+        int windowPos = 0;
+        while (iterations < maxIterations) {
+            double zr2 = zr * zr;
+            double zi2 = zi * zi;
+            double nzr = zr2 - zi2 + cReal;
+            double nzi = 2 * zr * zi + cImaginary;
+            if ((zr2 + zi2) > radiusSquared) {
+                return iterations + 1;
+            }
+            zr = nzr;
+            zi = nzi;
+            iterations++;
+
+            if (Math.abs(zr - savedZr) < PERIODICITY_TOLERANCE && Math.abs(zi - savedZi) < PERIODICITY_TOLERANCE) {
+                return CYCLE_FOUND;
+            }
+            if (++windowPos == window) {
+                windowPos = 0;
+                window <<= 1;
+                savedZr = zr;
+                savedZi = zi;
+            }
+        }
+        return iterations;
+    }
+
+    /**
+     * Works like calcMandel, or like calcMandelPeriodic if periodic is true,
+     * but starts from the given number of iterations with Z taken from z, and
+     * leaves the last value of Z in z if it has not escaped. As the
+     * arithmetic is the same, carrying a pixel on from where an earlier,
+     * lower maximum stopped it gives the same result as iterating it from
+     * the start. The periodicity check starts afresh from the given Z, which
+     * is on the same orbit, so it still finds the same cycles.
+     *
+     * @param cReal
+     *            the real component of the constant C.
+     * @param cImaginary
+     *            the imaginary component of the constant C.
+     * @param iterations
+     *            the number of iterations already done to reach z
+     * @param maxIterations
+     *            the maximum number of iterations.
+     * @param radiusSquared
+     *            the squared escape radius.
+     * @param periodic
+     *            true to watch for cycles as calcMandelPeriodic does
+     * @param z
+     *            holds the real and imaginary parts of Z, in and out
+     * @return the number iterations for the value of Z to grow outside of the
+     *         bounding radius, NOT_ESCAPED if it had not after maxIterations,
+     *         or CYCLE_FOUND if a cycle was found first.
+     */
+    static int calcMandelFrom(double cReal, double cImaginary, int iterations, int maxIterations,
+            double radiusSquared, boolean periodic, double[] z) {
+        double zr = z[0];
+        double zi = z[1];
+        double savedZr = zr;
+        double savedZi = zi;
+        int window = 1;
+        int windowPos = 0;
+        while (iterations < maxIterations) {
+            double zr2 = zr * zr;
+            double zi2 = zi * zi;
+            double nzr = zr2 - zi2 + cReal;
+            double nzi = 2 * zr * zi + cImaginary;
+            if ((zr2 + zi2) > radiusSquared) {
+                return iterations + 1;
+            }
+            zr = nzr;
+            zi = nzi;
+            iterations++;
+
+            if (periodic) {
+                if (Math.abs(zr - savedZr) < PERIODICITY_TOLERANCE
+                        && Math.abs(zi - savedZi) < PERIODICITY_TOLERANCE) {
+                    return CYCLE_FOUND;
+                }
+                if (++windowPos == window) {
+                    windowPos = 0;
+                    window <<= 1;
+                    savedZr = zr;
+                    savedZi = zi;
+                }
+            }
+        }
+        z[0] = zr;
+        z[1] = zi;
+        return NOT_ESCAPED;
+    }
+
+    /**
+     * Tests whether C lies inside the main cardioid or the period-2 bulb of the
+     * Mandelbrot set, both of which have closed-form boundaries. Z never
+     * escapes a radius of 2 for such a C, so calcMandel would iterate all the
+     * way to maxIterations. The other bulbs are not exact circles or
+     * cardioids, so they cannot be tested this cheaply without risking a
+     * different result.
+     *
+     * @param cReal
+     *            the real component of the constant C.
+     * @param cImaginary
+     *            the imaginary component of the constant C.
+     * @return true if C is inside the main cardioid or the period-2 bulb.
+     */
+    static boolean isInMainCardioidOrBulb(double cReal, double cImaginary) {
+        double ci2 = cImaginary * cImaginary;
+
+        // period-2 bulb: the disc of radius 1/4 around -1
+        double xp1 = cReal + 1;
+        if (xp1 * xp1 + ci2 < 0.0625) {
+            return true;
+        }
+
+        // main cardioid: q(q + (x - 1/4)) < y^2 / 4
+        double xq = cReal - 0.25;
+        double q = xq * xq + ci2;
+        return q * (q + xq) < 0.25 * ci2;
+    }
+
     /**
      * Method to calculate the Mandelbrot set for the given parameter settings.
      * 
@@ -126,20 +337,1157 @@ public class MandelbrotCalculator implements Serializable {
     public int[][] calcMandelbrotSet(int xResolution, int yResolution, double minReal, double maxReal,
             double minImaginary, double maxImaginary, int maxIterations, double radiusSquared) {
         int[][] mandelbrotData = new int[yResolution][xResolution];
-        @SuppressWarnings("unused")
-        double realRange = maxReal - minReal;
 
-        double realStep = (maxReal - minReal) / xResolution;
-        double imaginaryStep = (maxImaginary - minImaginary) / yResolution;
+        TileGrid grid = TileGrid.forBounds(xResolution, yResolution, minReal, maxReal, minImaginary,
+                maxImaginary);
 
+        double[] z = new double[2];
         for (int y = 0; y < yResolution; y++) {
-            double cImaginary = minImaginary + y * imaginaryStep;
+            this.calcRow(mandelbrotData[y], 0, 0, xResolution, 1, y, grid.imagAt(y), grid, maxIterations,
+                    radiusSquared, null, z);
+        }
+        return mandelbrotData;
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set for the given parameter settings
+     * into a buffer supplied by the caller, using several threads. The value
+     * for pixel (x, y) is written to buffer[offset + y * stride + x], so a
+     * frame may be written into part of a larger image. The frame is split into
+     * tiles by a TileTask and the tiles are shared out between the threads of
+     * a fork/join pool. The values written are identical to the ones returned
+     * by calcMandelbrotSet for the same parameters.
+     *
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows; at least xResolution
+     * @param xResolution
+     *            the number of pixels on the x-axis in your GUI display.
+     * @param yResolution
+     *            the number of pixels on the y-axis in your GUI display.
+     * @param minReal
+     *            the lower real bound for the complex constant C
+     * @param maxReal
+     *            the upper real bound for the complex constant C
+     * @param minImaginary
+     *            the lower imaginary bound for the complex constant C
+     * @param maxImaginary
+     *            the upper imaginary bound for the complex constant C
+     * @param maxIterations
+     *            the maximum number of iterations to iterate the complex
+     *            formula
+     * @param radiusSquared
+     *            the squared of the radius to use when determining whether Z
+     *            escaped the circle in the complex plain or remained bounded.
+     */
+    public void calcMandelbrotSetInto(int[] buffer, int offset, int stride, int xResolution, int yResolution,
+            double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations,
+            double radiusSquared) {
+        checkBuffer(buffer, offset, stride, xResolution, yResolution);
+        this.runTiles(this.doubleKernel(TileGrid.forBounds(xResolution, yResolution, minReal, maxReal,
+                minImaginary, maxImaginary), maxIterations, radiusSquared, null), buffer, offset, stride,
+                xResolution, yResolution);
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set for a viewport into a buffer
+     * supplied by the caller. The arithmetic used is picked from the depth of
+     * the viewport (see PrecisionTier). Shallow viewports are calculated in
+     * plain double arithmetic exactly as by the other calcMandelbrotSetInto.
+     * Deeper ones are calculated in double-double arithmetic (see
+     * DoubleDoubleKernel), and once that runs out, by perturbation: one
+     * ReferenceOrbit is iterated at high precision for the centre of the
+     * viewport, and every pixel is then worked out in doubles from its offset
+     * to that orbit (see PerturbationKernel). The tier used can be read back
+     * with getLastTier.
+     *
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows; at least xResolution
+     * @param xResolution
+     *            the number of pixels on the x-axis
+     * @param yResolution
+     *            the number of pixels on the y-axis
+     * @param viewport
+     *            the area of the complex plane to calculate
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param subdivided
+     *            true to use rectangle subdivision (see SubdivisionTask)
+     *            rather than calculating every pixel
+     */
+    public void calcMandelbrotSetInto(int[] buffer, int offset, int stride, int xResolution, int yResolution,
+            DeepViewport viewport, int maxIterations, double radiusSquared, boolean subdivided) {
+        this.calcMandelbrotSetInto(buffer, offset, stride, xResolution, yResolution, viewport, maxIterations,
+                radiusSquared, subdivided, CancellationToken.NONE);
+    }
+
+    /**
+     * Works like calcMandelbrotSetInto above, but stops early if the given
+     * token is cancelled. The buffer is then only partly filled, so the caller
+     * must check the token before using it.
+     *
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows; at least xResolution
+     * @param xResolution
+     *            the number of pixels on the x-axis
+     * @param yResolution
+     *            the number of pixels on the y-axis
+     * @param viewport
+     *            the area of the complex plane to calculate
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param subdivided
+     *            true to use rectangle subdivision rather than calculating
+     *            every pixel
+     * @param token
+     *            a token which stops the calculation when cancelled
+     */
+    public void calcMandelbrotSetInto(int[] buffer, int offset, int stride, int xResolution, int yResolution,
+            DeepViewport viewport, int maxIterations, double radiusSquared, boolean subdivided,
+            CancellationToken token) {
+        this.calcMandelbrotSetInto(buffer, offset, stride, xResolution, yResolution, viewport, maxIterations,
+                radiusSquared, subdivided, token, false);
+    }
+
+    /**
+     * Works like calcMandelbrotSetInto above, and if resumable is true also
+     * returns the state of the pixels which did not escape, so that the frame
+     * can later be carried on to a higher maximum number of iterations by
+     * calcMandelbrotSetResumed. The state is only kept for viewports
+     * calculated in plain double arithmetic.
+     *
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows; at least xResolution
+     * @param xResolution
+     *            the number of pixels on the x-axis
+     * @param yResolution
+     *            the number of pixels on the y-axis
+     * @param viewport
+     *            the area of the complex plane to calculate
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param subdivided
+     *            true to use rectangle subdivision rather than calculating
+     *            every pixel
+     * @param token
+     *            a token which stops the calculation when cancelled
+     * @param resumable
+     *            true to keep the state of the pixels which did not escape
+     * @return the frame's state, or null if resumable is false, the viewport
+     *         is too deep for double arithmetic or the token was cancelled
+     */
+    public ResumeState calcMandelbrotSetInto(int[] buffer, int offset, int stride, int xResolution,
+            int yResolution, DeepViewport viewport, int maxIterations, double radiusSquared, boolean subdivided,
+            CancellationToken token, boolean resumable) {
+        checkBuffer(buffer, offset, stride, xResolution, yResolution);
+
+        ResumeRecorder recorder = recorderFor(resumable, viewport, xResolution, yResolution);
+        TileKernel kernel = this.viewportKernel(xResolution, yResolution, viewport, maxIterations, radiusSquared,
+                token, recorder);
+        if (subdivided) {
+            this.runSubdivided(kernel, buffer, offset, stride, xResolution, yResolution);
+            // the filled rectangles were never calculated, so were not counted
+            this.recount(buffer, offset, stride, xResolution, yResolution);
+        } else {
+            this.runTiles(kernel, buffer, offset, stride, xResolution, yResolution);
+        }
+        if (recorder == null || token.isCancelled()) {
+            return null;
+        }
+        return recorder.finish(buffer, offset, stride, viewport, maxIterations, radiusSquared);
+    }
+
+    /**
+     * Raises the maximum number of iterations of a frame calculated with a
+     * ResumeState, by carrying on only the pixels which had not escaped from
+     * where they stopped. The buffer must still hold the frame's values; the
+     * pixels which escape are given their new values and the rest
+     * maxIterations. The result is the same as calculating the frame again
+     * with the new maximum, but costs only the extra iterations of the
+     * pixels inside the set.
+     *
+     * @param buffer
+     *            the row-major array holding the frame's iteration values
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows
+     * @param state
+     *            the state the frame was left in
+     * @param maxIterations
+     *            the new maximum number of iterations, higher than the state's
+     * @param token
+     *            a token which stops the calculation when cancelled
+     * @return the state of the frame at the new maximum, or null if the token
+     *         was cancelled, in which case the buffer is only partly updated
+     */
+    public ResumeState calcMandelbrotSetResumed(int[] buffer, int offset, int stride, ResumeState state,
+            int maxIterations, CancellationToken token) {
+        checkBuffer(buffer, offset, stride, state.getXResolution(), state.getYResolution());
+        if (maxIterations <= state.getMaxIterations()) {
+            throw new IllegalArgumentException("Cannot resume a frame at " + state.getMaxIterations()
+                    + " iterations to " + maxIterations);
+        }
+        double[] nextZr = new double[state.getPixelCount()];
+        double[] nextZi = new double[state.getPixelCount()];
+        Arrays.fill(nextZr, Double.NaN);
+        // the state's pixels are laid out as a single row of a frame so that
+        // runTiles can share them out between the threads
+        this.runTiles(token.wrap(this.resumeKernel(state, maxIterations, nextZr, nextZi)), buffer, offset, stride,
+                state.getPixelCount(), 1);
+        if (token.isCancelled()) {
+            return null;
+        }
+        // most pixels kept their values, which were never counted
+        this.recount(buffer, offset, stride, state.getXResolution(), state.getYResolution());
+        return state.next(maxIterations, nextZr, nextZi);
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set for a viewport in passes of
+     * increasing resolution, so that a rough image can be shown long before
+     * the full one is ready. The first pass calculates every
+     * PROGRESSIVE_FIRST_STEP-th pixel across and down, each following pass
+     * halves the step and calculates only the pixels the earlier passes have
+     * not, and the last pass completes the frame. After each pass but the
+     * last, every pixel not yet calculated is given the value of the
+     * calculated pixel at the top left of its block, and listener is told the
+     * pass is done. As each pixel is calculated just as calcMandelbrotSetInto
+     * would calculate it, the finished frame is identical to one calculated
+     * in a single pass.
+     *
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows; at least xResolution
+     * @param xResolution
+     *            the number of pixels on the x-axis
+     * @param yResolution
+     *            the number of pixels on the y-axis
+     * @param viewport
+     *            the area of the complex plane to calculate
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param token
+     *            a token which stops the calculation when cancelled
+     * @param listener
+     *            told when each pass has finished, on the calculating thread
+     * @param resumable
+     *            true to keep the state of the pixels which did not escape,
+     *            as calcMandelbrotSetInto does
+     * @return the frame's state, or null if resumable is false, the viewport
+     *         is too deep for double arithmetic or the token was cancelled
+     */
+    public ResumeState calcMandelbrotSetProgressive(int[] buffer, int offset, int stride, int xResolution,
+            int yResolution, DeepViewport viewport, int maxIterations, double radiusSquared, CancellationToken token,
+            PassListener listener, boolean resumable) {
+        checkBuffer(buffer, offset, stride, xResolution, yResolution);
+        ResumeRecorder recorder = recorderFor(resumable, viewport, xResolution, yResolution);
+        TileKernel kernel = this.viewportKernel(xResolution, yResolution, viewport, maxIterations, radiusSquared,
+                token, recorder);
+
+        for (int step = PROGRESSIVE_FIRST_STEP; step >= 1; step /= 2) {
+            this.runTiles(new ProgressivePassKernel(kernel, step, step == PROGRESSIVE_FIRST_STEP), buffer, offset,
+                    stride, xResolution, yResolution);
+            if (token.isCancelled()) {
+                return null;
+            }
+            if (step > 1) {
+                fillBlocks(buffer, offset, stride, xResolution, yResolution, step);
+                listener.passFinished(buffer, step);
+            }
+        }
+        if (recorder == null) {
+            return null;
+        }
+        return recorder.finish(buffer, offset, stride, viewport, maxIterations, radiusSquared);
+    }
+
+    /**
+     * Gives every pixel whose x and y are not both multiples of step the value
+     * of the pixel at the top left of its step x step block.
+     */
+    private static void fillBlocks(int[] buffer, int offset, int stride, int xResolution, int yResolution,
+            int step) {
+        for (int y = 0; y < yResolution; y++) {
+            int row = offset + y * stride;
+            int sourceRow = offset + (y - y % step) * stride;
             for (int x = 0; x < xResolution; x++) {
-                double cReal = minReal + x * realStep;
-                mandelbrotData[y][x] = calcMandel(cReal, cImaginary, maxIterations, radiusSquared);
-                cReal = cReal + realStep;
+                if (x % step != 0 || y % step != 0) {
+                    buffer[row + x] = buffer[sourceRow + x - x % step];
+                }
             }
         }
-        return mandelbrotData;
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set for a viewport which is a
+     * previously calculated frame moved by whole pixels (see
+     * DeepViewport.pan). The pixels the two frames share are copied from the
+     * previous frame, and only the strips of newly exposed pixels are
+     * calculated, so the work done is in proportion to the area exposed
+     * rather than to the whole frame. The two frames lie on the same
+     * TileGrid, so the copied pixels are exactly those a fresh calculation
+     * would give. If the frames share no pixels, or the viewport is too deep
+     * for double arithmetic, whose tiers work out C from the frame's centre,
+     * the whole frame is calculated.
+     *
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows; at least xResolution
+     * @param xResolution
+     *            the number of pixels on the x-axis
+     * @param yResolution
+     *            the number of pixels on the y-axis
+     * @param previous
+     *            the previous frame, laid out like buffer; not changed
+     * @param dx
+     *            how many pixels right the viewport has moved, so that pixel
+     *            (x, y) is pixel (x + dx, y + dy) of the previous frame
+     * @param dy
+     *            how many pixels down the viewport has moved
+     * @param viewport
+     *            the area of the complex plane to calculate
+     * @param maxIterations
+     *            the maximum number of iterations, which the previous frame
+     *            must have been calculated with
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param token
+     *            a token which stops the calculation when cancelled
+     * @param resumable
+     *            true to keep the state of the pixels which did not escape,
+     *            as calcMandelbrotSetInto does; copied pixels have no state,
+     *            so are calculated again if the frame is resumed
+     * @return the frame's state, or null if resumable is false, the viewport
+     *         is too deep for double arithmetic or the token was cancelled
+     */
+    public ResumeState calcMandelbrotSetPanned(int[] buffer, int offset, int stride, int xResolution,
+            int yResolution, int[] previous, int dx, int dy, DeepViewport viewport, int maxIterations,
+            double radiusSquared, CancellationToken token, boolean resumable) {
+        checkBuffer(buffer, offset, stride, xResolution, yResolution);
+        checkBuffer(previous, offset, stride, xResolution, yResolution);
+
+        // the pixels shared with the previous frame, in this frame's
+        // coordinates
+        int sharedX0 = Math.max(0, -dx);
+        int sharedX1 = Math.min(xResolution, xResolution - dx);
+        int sharedY0 = Math.max(0, -dy);
+        int sharedY1 = Math.min(yResolution, yResolution - dy);
+        if (sharedX0 >= sharedX1 || sharedY0 >= sharedY1 || TileGrid.of(viewport, xResolution, yResolution) == null) {
+            return this.calcMandelbrotSetInto(buffer, offset, stride, xResolution, yResolution, viewport,
+                    maxIterations, radiusSquared, false, token, resumable);
+        }
+
+        for (int y = sharedY0; y < sharedY1; y++) {
+            System.arraycopy(previous, offset + (y + dy) * stride + sharedX0 + dx, buffer,
+                    offset + y * stride + sharedX0, sharedX1 - sharedX0);
+        }
+        IterationHistogram counted = this.histogram;
+        if (counted != null) {
+            counted.count(buffer, offset, stride, sharedX0, sharedY0, sharedX1, sharedY1);
+        }
+
+        ResumeRecorder recorder = recorderFor(resumable, viewport, xResolution, yResolution);
+        TileKernel kernel = this.viewportKernel(xResolution, yResolution, viewport, maxIterations, radiusSquared,
+                token, recorder);
+        // whole rows above and below the shared pixels, then the columns
+        // beside them
+        this.runTiles(kernel, buffer, offset, stride, 0, 0, xResolution, sharedY0);
+        this.runTiles(kernel, buffer, offset, stride, 0, sharedY1, xResolution, yResolution);
+        this.runTiles(kernel, buffer, offset, stride, 0, sharedY0, sharedX0, sharedY1);
+        this.runTiles(kernel, buffer, offset, stride, sharedX1, sharedY0, xResolution, sharedY1);
+        if (recorder == null || token.isCancelled()) {
+            return null;
+        }
+        return recorder.finish(buffer, offset, stride, viewport, maxIterations, radiusSquared);
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set for a viewport through a
+     * TileCache. The frame is split along the cache's tile grid; tiles found
+     * in the cache are copied into the buffer, and the rest are calculated
+     * together on the fork/join pool and then added to the cache. Tiles cut
+     * by the edge of the frame are always calculated. Pixels are given the
+     * same C however the frame is split (see TileGrid), so the frame is
+     * identical to one calculated by calcMandelbrotSetInto. A viewport too
+     * deep to be cached is calculated as by calcMandelbrotSetInto.
+     *
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows; at least xResolution
+     * @param xResolution
+     *            the number of pixels on the x-axis
+     * @param yResolution
+     *            the number of pixels on the y-axis
+     * @param viewport
+     *            the area of the complex plane to calculate
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param cache
+     *            the cache to take tiles from and add them to
+     * @param token
+     *            a token which stops the calculation when cancelled
+     * @param resumable
+     *            true to keep the state of the pixels which did not escape,
+     *            as calcMandelbrotSetInto does; pixels copied from the cache
+     *            have no state, so are calculated again if the frame is
+     *            resumed
+     * @return the frame's state, or null if resumable is false, the viewport
+     *         is too deep for double arithmetic or the token was cancelled
+     */
+    public ResumeState calcMandelbrotSetCached(int[] buffer, int offset, int stride, int xResolution,
+            int yResolution, DeepViewport viewport, int maxIterations, double radiusSquared, TileCache cache,
+            CancellationToken token, boolean resumable) {
+        checkBuffer(buffer, offset, stride, xResolution, yResolution);
+        TileGrid grid = TileGrid.of(viewport, xResolution, yResolution);
+        if (grid == null) {
+            return this.calcMandelbrotSetInto(buffer, offset, stride, xResolution, yResolution, viewport,
+                    maxIterations, radiusSquared, false, token, resumable);
+        }
+
+        ResumeRecorder recorder = recorderFor(resumable, viewport, xResolution, yResolution);
+        TileKernel kernel = this.viewportKernel(xResolution, yResolution, viewport, maxIterations, radiusSquared,
+                token, recorder);
+        boolean periodic = this.periodicityCheck;
+        int size = TileCache.TILE_SIZE;
+        IterationHistogram counted = this.histogram;
+        final List<TileTask> missing = new ArrayList<TileTask>();
+        List<TileKey> missingKeys = new ArrayList<TileKey>();
+        List<int[]> missingCorners = new ArrayList<int[]>();
+        long lastX = Math.floorDiv(grid.getOriginX() + xResolution - 1, size);
+        long lastY = Math.floorDiv(grid.getOriginY() + yResolution - 1, size);
+        for (long tileY = Math.floorDiv(grid.getOriginY(), size); tileY <= lastY; tileY++) {
+            for (long tileX = Math.floorDiv(grid.getOriginX(), size); tileX <= lastX; tileX++) {
+                // the tile's place in the frame, cut to the frame's edges
+                int x0 = (int) (tileX * size - grid.getOriginX());
+                int y0 = (int) (tileY * size - grid.getOriginY());
+                int x1 = Math.min(x0 + size, xResolution);
+                int y1 = Math.min(y0 + size, yResolution);
+                boolean whole = x0 >= 0 && y0 >= 0 && x1 - x0 == size && y1 - y0 == size;
+                x0 = Math.max(x0, 0);
+                y0 = Math.max(y0, 0);
+
+                TileKey key = whole ? new TileKey(grid, tileX, tileY, maxIterations, radiusSquared, periodic) : null;
+                int[] tile = whole ? cache.get(key) : null;
+                if (tile != null) {
+                    TileCache.pasteTile(tile, buffer, offset, stride, x0, y0);
+                    if (counted != null) {
+                        counted.count(tile, 0, size, 0, 0, size, size);
+                    }
+                    continue;
+                }
+                missing.add(new TileTask(kernel, buffer, offset, stride, x0, y0, x1, y1));
+                if (whole) {
+                    missingKeys.add(key);
+                    missingCorners.add(new int[] {x0, y0});
+                }
+            }
+        }
+
+        this.getPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(missing);
+            }
+        });
+        if (token.isCancelled()) {
+            return null;
+        }
+        for (int i = 0; i < missingKeys.size(); i++) {
+            int[] corner = missingCorners.get(i);
+            cache.put(missingKeys.get(i), TileCache.copyTile(buffer, offset, stride, corner[0], corner[1]));
+        }
+        if (recorder == null) {
+            return null;
+        }
+        return recorder.finish(buffer, offset, stride, viewport, maxIterations, radiusSquared);
+    }
+
+    /**
+     * Returns a recorder for the state of a frame if one was asked for and the
+     * frame will be calculated in double arithmetic, or null.
+     */
+    private static ResumeRecorder recorderFor(boolean resumable, DeepViewport viewport, int xResolution,
+            int yResolution) {
+        if (resumable && PrecisionTier.forViewport(viewport, xResolution, yResolution) == PrecisionTier.DOUBLE) {
+            return new ResumeRecorder(xResolution, yResolution);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the kernel for the viewport's precision tier (see PrecisionTier)
+     * and records which tier was used. The recorder, if not null, is only
+     * used by the double tier.
+     */
+    private TileKernel viewportKernel(int xResolution, int yResolution, DeepViewport viewport, int maxIterations,
+            double radiusSquared, CancellationToken token, ResumeRecorder recorder) {
+        PrecisionTier tier = PrecisionTier.forViewport(viewport, xResolution, yResolution);
+        TileKernel kernel;
+        if (tier == PrecisionTier.PERTURBATION) {
+            ReferenceOrbit orbit = new ReferenceOrbit(viewport.getCentreReal(), viewport.getCentreImag(),
+                    maxIterations, radiusSquared, viewport.getMathContext(xResolution, yResolution), token);
+            kernel = new PerturbationKernel(orbit, viewport, xResolution, yResolution, maxIterations,
+                    radiusSquared, this.stats);
+        } else if (tier == PrecisionTier.DOUBLE_DOUBLE) {
+            kernel = new DoubleDoubleKernel(viewport, xResolution, yResolution, maxIterations, radiusSquared,
+                    this.stats);
+        } else {
+            kernel = this.doubleKernel(TileGrid.forFrame(viewport, xResolution, yResolution), maxIterations,
+                    radiusSquared, recorder);
+        }
+        if (TileEventKernel.isRecording()) {
+            kernel = new TileEventKernel(kernel, viewport, maxIterations, tier);
+        }
+        IterationHistogram counted = this.histogram;
+        if (counted != null) {
+            kernel = new HistogramKernel(kernel, counted);
+        }
+        this.lastTier = tier;
+        this.tierFrames.incrementAndGet(tier.ordinal());
+        return token.wrap(kernel);
+    }
+
+    /**
+     * Counts the values of a whole frame afresh into the histogram, if there
+     * is one, for frames some of whose pixels were given values without
+     * being calculated.
+     */
+    private void recount(int[] buffer, int offset, int stride, int xResolution, int yResolution) {
+        IterationHistogram counted = this.histogram;
+        if (counted != null) {
+            counted.clear();
+            this.runTiles(new HistogramKernel(null, counted), buffer, offset, stride, xResolution, yResolution);
+        }
+    }
+
+    /**
+     * Counts how many pixels of a calculated frame have each iteration
+     * value, sharing the pixels out between the threads of the pool.
+     *
+     * @param buffer
+     *            the row-major array holding the frame's iteration values
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows
+     * @param xResolution
+     *            the number of pixels on the x-axis
+     * @param yResolution
+     *            the number of pixels on the y-axis
+     * @param maxIterations
+     *            the maximum number of iterations the frame was calculated
+     *            with
+     * @return the number of pixels with each value or less, indexed by
+     *         value; or null if maxIterations is too large for a histogram
+     */
+    public long[] calcHistogram(int[] buffer, int offset, int stride, int xResolution, int yResolution,
+            int maxIterations) {
+        checkBuffer(buffer, offset, stride, xResolution, yResolution);
+        if (!IterationHistogram.supports(maxIterations)) {
+            return null;
+        }
+        IterationHistogram counted = new IterationHistogram(maxIterations);
+        this.runTiles(new HistogramKernel(null, counted), buffer, offset, stride, xResolution, yResolution);
+        return counted.finish();
+    }
+
+    /**
+     * Works out the continuous escape value of every pixel of a calculated
+     * frame (see SmoothKernel), sharing the pixels out between the threads
+     * of the pool. Frames too deep for double arithmetic cannot be iterated
+     * again, so their values are their iteration values unchanged.
+     *
+     * @param buffer
+     *            the row-major array holding the frame's iteration values
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows
+     * @param xResolution
+     *            the number of pixels on the x-axis
+     * @param yResolution
+     *            the number of pixels on the y-axis
+     * @param viewport
+     *            the area of the complex plane the frame shows
+     * @param maxIterations
+     *            the maximum number of iterations the frame was calculated
+     *            with
+     * @param token
+     *            a token which stops the work when cancelled
+     * @return an array as long as buffer holding the continuous values at
+     *         the same indices, which is incomplete if the token was
+     *         cancelled
+     */
+    public float[] calcSmooth(int[] buffer, int offset, int stride, int xResolution, int yResolution,
+            DeepViewport viewport, int maxIterations, CancellationToken token) {
+        checkBuffer(buffer, offset, stride, xResolution, yResolution);
+        float[] smooth = new float[buffer.length];
+        if (PrecisionTier.forViewport(viewport, xResolution, yResolution) != PrecisionTier.DOUBLE) {
+            for (int i = 0; i < buffer.length; i++) {
+                smooth[i] = buffer[i];
+            }
+            return smooth;
+        }
+        TileKernel kernel = new SmoothKernel(TileGrid.forFrame(viewport, xResolution, yResolution), maxIterations,
+                smooth);
+        this.runTiles(token.wrap(kernel), buffer, offset, stride, xResolution, yResolution);
+        return smooth;
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set into a buffer supplied by the
+     * caller using Mariani-Silver rectangle subdivision (see SubdivisionTask).
+     * Only the borders of rectangles are calculated; a rectangle whose border
+     * has a single iteration value is filled with it. The parameters are the
+     * same as for calcMandelbrotSetInto, and the result is the same except
+     * where a detail of the set lies wholly inside a filled rectangle.
+     *
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows; at least xResolution
+     * @param xResolution
+     *            the number of pixels on the x-axis
+     * @param yResolution
+     *            the number of pixels on the y-axis
+     * @param minReal
+     *            the lower real bound for the complex constant C
+     * @param maxReal
+     *            the upper real bound for the complex constant C
+     * @param minImaginary
+     *            the lower imaginary bound for the complex constant C
+     * @param maxImaginary
+     *            the upper imaginary bound for the complex constant C
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     */
+    public void calcMandelbrotSetSubdivided(int[] buffer, int offset, int stride, int xResolution,
+            int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary,
+            int maxIterations, double radiusSquared) {
+        checkBuffer(buffer, offset, stride, xResolution, yResolution);
+        this.runSubdivided(this.doubleKernel(TileGrid.forBounds(xResolution, yResolution, minReal, maxReal,
+                minImaginary, maxImaginary), maxIterations, radiusSquared, null), buffer, offset, stride,
+                xResolution, yResolution);
+    }
+
+    /**
+     * Returns a kernel which calculates pixels of the frame on the given grid
+     * in double precision. When the Vector API is available and the
+     * periodicity check is off, this is a SimdKernel; otherwise it is the
+     * scalar kernel. If recorder is not null, the kernel records in it the
+     * state of the pixels which do not escape.
+     */
+    TileKernel doubleKernel(TileGrid grid, int maxIterations, double radiusSquared, ResumeRecorder recorder) {
+        if (this.isSimdActive()) {
+            return new SimdKernel(grid, maxIterations, radiusSquared, this.isBulbCheckUsable(radiusSquared),
+                    this.stats, recorder);
+        }
+        return this.scalarKernel(grid, maxIterations, radiusSquared, recorder);
+    }
+
+    /**
+     * Returns a kernel which calculates pixels of the frame on the given grid
+     * one at a time with calcTile.
+     */
+    TileKernel scalarKernel(final TileGrid grid, final int maxIterations, final double radiusSquared,
+            final ResumeRecorder recorder) {
+        return new TileKernel() {
+            @Override
+            public void calcTile(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+                MandelbrotCalculator.this.calcTile(buffer, offset, stride, x0, y0, x1, y1, 1, 1, grid,
+                        maxIterations, radiusSquared, recorder);
+            }
+
+            @Override
+            public void calcSpaced(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1,
+                    int xStep, int yStep) {
+                MandelbrotCalculator.this.calcTile(buffer, offset, stride, x0, y0, x1, y1, xStep, yStep, grid,
+                        maxIterations, radiusSquared, recorder);
+            }
+        };
+    }
+
+    /**
+     * Calculates a whole frame with the given kernel, split into tiles which
+     * are shared out between the threads of the pool (see TileTask).
+     */
+    void runTiles(TileKernel kernel, int[] buffer, int offset, int stride, int xResolution, int yResolution) {
+        this.runTiles(kernel, buffer, offset, stride, 0, 0, xResolution, yResolution);
+    }
+
+    /**
+     * Calculates the rectangle of pixels from (x0, y0) inclusive to (x1, y1)
+     * exclusive with the given kernel on the fork/join pool. Does nothing if
+     * the rectangle is empty.
+     */
+    void runTiles(TileKernel kernel, int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        this.getPool().invoke(new TileTask(kernel, buffer, offset, stride, x0, y0, x1, y1));
+    }
+
+    /**
+     * Calculates a whole frame with the given kernel by rectangle subdivision
+     * (see SubdivisionTask).
+     */
+    void runSubdivided(TileKernel kernel, int[] buffer, int offset, int stride, int xResolution,
+            int yResolution) {
+        if (xResolution == 0 || yResolution == 0) {
+            return;
+        }
+        SubdivisionTask task = new SubdivisionTask(kernel, buffer, offset, stride, 0, 0, xResolution,
+                yResolution);
+        task.calcBorder();
+        this.getPool().invoke(task);
+    }
+
+    /**
+     * Checks that a frame of the given size fits in buffer when written at
+     * offset with the given stride.
+     */
+    static void checkBuffer(int[] buffer, int offset, int stride, int xResolution, int yResolution) {
+        if (stride < xResolution || offset < 0) {
+            throw new IllegalArgumentException("Invalid offset " + offset + " or stride " + stride
+                    + " for a row of " + xResolution + " pixels");
+        }
+        if (yResolution > 0 && offset + (long) (yResolution - 1) * stride + xResolution > buffer.length) {
+            throw new IllegalArgumentException("Buffer of length " + buffer.length + " is too small for a "
+                    + xResolution + "x" + yResolution + " frame at offset " + offset + " with stride " + stride);
+        }
+    }
+
+    /**
+     * Calculates the iteration values for the pixels from (x0, y0) up to but
+     * not including x1 and y1 which are a whole number of xStep pixels right
+     * of x0 and yStep pixels down from y0, so the whole rectangle if both
+     * steps are 1, and stores them in buffer. Each pixel's
+     * constant C is worked out from its own place on the grid, so the result
+     * does not depend on how the frame has been split up.
+     *
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between two neighbouring rows
+     * @param x0
+     *            the left edge of the tile
+     * @param y0
+     *            the top edge of the tile
+     * @param x1
+     *            the right edge of the tile (exclusive)
+     * @param y1
+     *            the bottom edge of the tile (exclusive)
+     * @param xStep
+     *            the distance between two neighbouring pixels of a row
+     * @param yStep
+     *            the distance between two neighbouring rows of pixels
+     * @param grid
+     *            the grid the frame's pixels lie on
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param recorder
+     *            records the state of the pixels which do not escape; may be
+     *            null
+     */
+    void calcTile(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1, int xStep, int yStep,
+            TileGrid grid, int maxIterations, double radiusSquared, ResumeRecorder recorder) {
+        double[] z = new double[2];
+        for (int y = y0; y < y1; y += yStep) {
+            this.calcRow(buffer, offset + y * stride, x0, x1, xStep, y, grid.imagAt(y), grid, maxIterations,
+                    radiusSquared, recorder, z);
+        }
+    }
+
+    /**
+     * Calculates the iteration values for the pixels of row y from x0 up to
+     * but not including x1 that are a whole number of xStep pixels right of
+     * x0, writing each to buffer[row + x], and recording the state of those
+     * which do not escape if recorder is not null.
+     */
+    private void calcRow(int[] buffer, int row, int x0, int x1, int xStep, int y, double cImaginary,
+            TileGrid grid, int maxIterations, double radiusSquared, ResumeRecorder recorder, double[] z) {
+        boolean bulbCheck = this.isBulbCheckUsable(radiusSquared);
+        boolean periodic = this.periodicityCheck;
+        int pixels = 0;
+        int skipped = 0;
+        int cycles = 0;
+        for (int x = x0; x < x1; x += xStep) {
+            int index = row + x;
+            pixels++;
+            double cReal = grid.realAt(x);
+            if (bulbCheck && isInMainCardioidOrBulb(cReal, cImaginary)) {
+                buffer[index] = maxIterations;
+                skipped++;
+                if (recorder != null) {
+                    recorder.recordInterior(x, y);
+                }
+            } else if (recorder != null) {
+                z[0] = 0;
+                z[1] = 0;
+                int iterations = calcMandelFrom(cReal, cImaginary, 0, maxIterations, radiusSquared, periodic, z);
+                if (iterations == CYCLE_FOUND) {
+                    iterations = maxIterations;
+                    cycles++;
+                    recorder.recordInterior(x, y);
+                } else if (iterations == NOT_ESCAPED) {
+                    iterations = maxIterations;
+                    recorder.record(x, y, z[0], z[1]);
+                }
+                buffer[index] = iterations;
+            } else if (periodic) {
+                int iterations = this.calcMandelPeriodic(cReal, cImaginary, maxIterations, radiusSquared);
+                if (iterations == CYCLE_FOUND) {
+                    iterations = maxIterations;
+                    cycles++;
+                }
+                buffer[index] = iterations;
+            } else {
+                buffer[index] = calcMandel(cReal, cImaginary, maxIterations, radiusSquared);
+            }
+        }
+        this.stats.addRow(pixels, skipped, cycles);
+    }
+
+    /**
+     * Returns a kernel which carries on the pixels of a ResumeState to
+     * maxIterations. The kernel's frame is a single row with one pixel per
+     * entry of the state, and it writes each entry's value to the entry's own
+     * pixel of the buffer and its new Z, unless it escaped, to nextZr and
+     * nextZi.
+     */
+    private TileKernel resumeKernel(final ResumeState state, final int maxIterations, final double[] nextZr,
+            final double[] nextZi) {
+        return new TileKernel() {
+            @Override
+            public void calcTile(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+                MandelbrotCalculator.this.resumePixels(buffer, offset, stride, state, x0, x1, maxIterations,
+                        nextZr, nextZi);
+            }
+        };
+    }
+
+    /**
+     * Carries entries from (inclusive) to to (exclusive) of a ResumeState on
+     * to maxIterations. Entries known to be inside the set are only given the
+     * new maximum. Entries whose state was never recorded are calculated from
+     * the start, as calcRow would. The rest are gathered up and carried on
+     * together, by the SimdKernel when it is active.
+     */
+    private void resumePixels(int[] buffer, int offset, int stride, ResumeState state, int from, int to,
+            int maxIterations, double[] nextZr, double[] nextZi) {
+        DeepViewport viewport = state.getViewport();
+        int xResolution = state.getXResolution();
+        TileGrid grid = TileGrid.forFrame(viewport, xResolution, state.getYResolution());
+        double radiusSquared = state.getRadiusSquared();
+        boolean bulbCheck = this.isBulbCheckUsable(radiusSquared);
+        boolean periodic = this.periodicityCheck;
+        int[] pixels = state.getPixels();
+        double[] zr = state.getZr();
+        double[] zi = state.getZi();
+
+        // the entries carried on, with their C and Z
+        int[] entries = new int[to - from];
+        double[] crs = new double[to - from];
+        double[] cis = new double[to - from];
+        double[] zrs = new double[to - from];
+        double[] zis = new double[to - from];
+        int gathered = 0;
+        double[] z = new double[2];
+        int skipped = 0;
+        int cycles = 0;
+        for (int i = from; i < to; i++) {
+            int x = pixels[i] % xResolution;
+            int y = pixels[i] / xResolution;
+            int index = offset + y * stride + x;
+            double cReal = grid.realAt(x);
+            double cImaginary = grid.imagAt(y);
+            int iterations;
+            if (zr[i] == ResumeState.INTERIOR) {
+                iterations = CYCLE_FOUND;
+            } else if (!Double.isNaN(zr[i])) {
+                entries[gathered] = i;
+                crs[gathered] = cReal;
+                cis[gathered] = cImaginary;
+                zrs[gathered] = zr[i];
+                zis[gathered] = zi[i];
+                gathered++;
+                continue;
+            } else if (bulbCheck && isInMainCardioidOrBulb(cReal, cImaginary)) {
+                iterations = CYCLE_FOUND;
+                skipped++;
+            } else {
+                z[0] = 0;
+                z[1] = 0;
+                iterations = calcMandelFrom(cReal, cImaginary, 0, maxIterations, radiusSquared, periodic, z);
+                if (iterations == CYCLE_FOUND) {
+                    cycles++;
+                }
+            }
+            storeResumed(buffer, index, i, iterations, maxIterations, z, nextZr, nextZi);
+        }
+
+        int[] results = new int[gathered];
+        if (this.isSimdActive()) {
+            SimdKernel.iterateFrom(crs, cis, zrs, zis, gathered, state.getMaxIterations(), maxIterations,
+                    radiusSquared, results);
+        } else {
+            for (int g = 0; g < gathered; g++) {
+                z[0] = zrs[g];
+                z[1] = zis[g];
+                results[g] = calcMandelFrom(crs[g], cis[g], state.getMaxIterations(), maxIterations,
+                        radiusSquared, periodic, z);
+                zrs[g] = z[0];
+                zis[g] = z[1];
+            }
+        }
+        for (int g = 0; g < gathered; g++) {
+            int i = entries[g];
+            int index = offset + pixels[i] / xResolution * stride + pixels[i] % xResolution;
+            if (results[g] == CYCLE_FOUND) {
+                cycles++;
+            }
+            z[0] = zrs[g];
+            z[1] = zis[g];
+            storeResumed(buffer, index, i, results[g], maxIterations, z, nextZr, nextZi);
+        }
+        this.stats.addRow(to - from, skipped, cycles);
+    }
+
+    /**
+     * Stores the result of carrying on one entry of a ResumeState: its value
+     * in the buffer and, if it has not escaped, its new state.
+     */
+    private static void storeResumed(int[] buffer, int index, int entry, int iterations, int maxIterations,
+            double[] z, double[] nextZr, double[] nextZi) {
+        if (iterations == CYCLE_FOUND) {
+            buffer[index] = maxIterations;
+            nextZr[entry] = ResumeState.INTERIOR;
+        } else if (iterations == NOT_ESCAPED) {
+            buffer[index] = maxIterations;
+            nextZr[entry] = z[0];
+            nextZi[entry] = z[1];
+        } else {
+            buffer[index] = iterations;
+        }
+    }
+
+    /**
+     * Returns whether the bulb check is switched on and safe to use with the
+     * given escape radius. It is only safe if the radius is at least 2, as
+     * points in the set may wander out as far as that.
+     */
+    private boolean isBulbCheckUsable(double radiusSquared) {
+        return !this.bulbCheckDisabled && radiusSquared >= DEFAULT_RADIUS_SQUARED;
+    }
+
+    /**
+     * Returns the counters of the work done by the kernel. They keep counting
+     * across frames until reset.
+     *
+     * @return the calculator's kernel statistics
+     */
+    public KernelStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * Sets the histogram the values of the frames calculated from now on are
+     * counted into as they are calculated. Only one frame should be
+     * calculated at a time while it is set.
+     *
+     * @param histogram
+     *            the histogram to count into, or null to stop counting
+     */
+    void setHistogram(IterationHistogram histogram) {
+        this.histogram = histogram;
+    }
+
+    /**
+     * Returns the precision tier the last viewport was calculated with.
+     *
+     * @return the tier of the last frame, or null if no viewport has been
+     *         calculated yet
+     */
+    public PrecisionTier getLastTier() {
+        return this.lastTier;
+    }
+
+    /**
+     * Returns how many viewports have been calculated with the given tier.
+     *
+     * @param tier
+     *            the precision tier
+     * @return the number of frames calculated with it since the calculator
+     *         was created or loaded
+     */
+    public long getTierFrames(PrecisionTier tier) {
+        return this.tierFrames.get(tier.ordinal());
+    }
+
+    /**
+     * Returns whether points inside the main cardioid and the period-2 bulb
+     * are given maxIterations without iterating.
+     *
+     * @return true if the cardioid and bulb check is switched on
+     */
+    public boolean isBulbCheck() {
+        return !this.bulbCheckDisabled;
+    }
+
+    /**
+     * Switches the cardioid and bulb check on or off. The values calculated
+     * are the same either way; only the time taken differs.
+     *
+     * @param bulbCheck
+     *            true to skip iterating points inside the main cardioid and
+     *            the period-2 bulb
+     */
+    public void setBulbCheck(boolean bulbCheck) {
+        this.bulbCheckDisabled = !bulbCheck;
+    }
+
+    /**
+     * Returns whether the kernel watches for orbits that fall into a cycle.
+     *
+     * @return true if the periodicity check is switched on
+     */
+    public boolean isPeriodicityCheck() {
+        return this.periodicityCheck;
+    }
+
+    /**
+     * Switches the periodicity check on or off. With it on, points whose
+     * orbit is found to repeat are given maxIterations straight away instead
+     * of iterating all the way there. This saves most of the time spent on
+     * points inside the set at high maxIterations, at the cost of one
+     * comparison per iteration for points outside it. It is off by default
+     * so that the exact loop can be compared against it.
+     *
+     * @param periodicityCheck
+     *            true to stop iterating when the orbit repeats
+     */
+    public void setPeriodicityCheck(boolean periodicityCheck) {
+        this.periodicityCheck = periodicityCheck;
+    }
+
+    /**
+     * Returns whether frames calculated in double precision will use the
+     * vector kernel. This needs the Vector API, the SIMD setting switched on
+     * and the periodicity check switched off.
+     *
+     * @return true if the vector kernel is in use
+     */
+    public boolean isSimdActive() {
+        return SIMD_AVAILABLE && !this.simdDisabled && !this.periodicityCheck;
+    }
+
+    /**
+     * Switches the vector kernel on or off. It is only used if the Vector
+     * API is available (see SIMD_AVAILABLE).
+     *
+     * @param simd
+     *            true to use the vector kernel where possible
+     */
+    public void setSimd(boolean simd) {
+        this.simdDisabled = !simd;
+    }
+
+    /**
+     * Returns the number of threads used by calcMandelbrotSetInto.
+     *
+     * @return the parallelism level of the calculator
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * Sets the number of threads used by calcMandelbrotSetInto. The
+     * current pool is shut down and a new one is created on the next
+     * calculation.
+     *
+     * @param parallelism
+     *            an integer greater than 0.
+     */
+    public synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        if (parallelism != this.parallelism && this.pool != null) {
+            this.pool.shutdown();
+            this.pool = null;
+        }
+        this.parallelism = parallelism;
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (this.pool == null) {
+            // models saved before parallelism existed load it as 0
+            if (this.parallelism < 1) {
+                this.parallelism = Runtime.getRuntime().availableProcessors();
+            }
+            this.pool = new ForkJoinPool(this.parallelism);
+        }
+        return this.pool;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.stats = new KernelStats();
+        this.tierFrames = new AtomicLongArray(PrecisionTier.values().length);
     }
 }
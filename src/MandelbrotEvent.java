@@ -0,0 +1,177 @@
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The fields shared by the program's Java Flight Recorder events: the frame
+ * the work was done on and how many iterations its pixels took, so that a
+ * recording shows which fractal work lined up with a GC pause or a run of CPU
+ * samples.
+ *
+ * Every event is disabled unless a recording's settings turn it on, for
+ * example with a .jfc file setting mandelbrot.Tile#enabled to true. While an
+ * event is off, begin, end and shouldCommit cost next to nothing, and the
+ * frame is only looked at once shouldCommit has said the event is wanted:
+ *
+ * <pre>
+ * TileEvent event = new TileEvent();
+ * event.begin();
+ * ...
+ * event.end();
+ * if (event.shouldCommit()) {
+ *     event.setFrame(...);
+ *     event.commit();
+ * }
+ * </pre>
+ *
+ */
+@Category("Mandelbrot")
+@Enabled(false)
+@StackTrace(false)
+public abstract class MandelbrotEvent extends Event {
+
+    @Label("Viewport")
+    String viewport;
+
+    @Label("Maximum Iterations")
+    int maxIts;
+
+    @Label("Pixels")
+    long pixels;
+
+    @Label("Iterations")
+    long iterations;
+
+    /**
+     * Sets the frame of the event from a rectangle of its values, adding up
+     * the iterations of its pixels; pixels inside the set count as maxIts.
+     *
+     * @param viewport
+     *            the area of the complex plane of the frame; may be null
+     * @param maxIts
+     *            the maximum iterations of the frame
+     * @param buffer
+     *            the row-major array holding the frame's values; may be null
+     *            if they are not to hand
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between two neighbouring rows
+     * @param x0
+     *            the left edge of the rectangle
+     * @param y0
+     *            the top edge of the rectangle
+     * @param x1
+     *            the right edge of the rectangle (exclusive)
+     * @param y1
+     *            the bottom edge of the rectangle (exclusive)
+     */
+    void setFrame(DeepViewport viewport, int maxIts, int[] buffer, int offset, int stride, int x0, int y0, int x1,
+            int y1) {
+        this.setFrame(viewport, maxIts, buffer, offset, stride, x0, y0, x1, y1, 1, 1);
+    }
+
+    /**
+     * Sets the frame of the event from the pixels from (x0, y0) up to but not
+     * including x1 and y1 which are a whole number of xStep pixels right of
+     * x0 and yStep pixels down from y0, as calculated by
+     * TileKernel.calcSpaced.
+     *
+     * @param viewport
+     *            the area of the complex plane of the frame; may be null
+     * @param maxIts
+     *            the maximum iterations of the frame
+     * @param buffer
+     *            the row-major array holding the frame's values; may be null
+     *            if they are not to hand
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between two neighbouring rows
+     * @param x0
+     *            the left edge of the pixels
+     * @param y0
+     *            the top edge of the pixels
+     * @param x1
+     *            the right edge of the pixels (exclusive)
+     * @param y1
+     *            the bottom edge of the pixels (exclusive)
+     * @param xStep
+     *            the distance between two neighbouring pixels of a row
+     * @param yStep
+     *            the distance between two neighbouring rows of pixels
+     */
+    void setFrame(DeepViewport viewport, int maxIts, int[] buffer, int offset, int stride, int x0, int y0, int x1,
+            int y1, int xStep, int yStep) {
+        this.viewport = viewport == null ? null : viewport.toString();
+        this.maxIts = maxIts;
+        this.pixels = (long) spaced(x0, x1, xStep) * spaced(y0, y1, yStep);
+        if (buffer == null) {
+            return;
+        }
+        long total = 0;
+        for (int y = y0; y < y1; y += yStep) {
+            int index = offset + y * stride;
+            for (int x = x0; x < x1; x += xStep) {
+                int n = buffer[index + x];
+                total += n < 0 ? 0 : n > maxIts ? maxIts : n;
+            }
+        }
+        this.iterations = total;
+    }
+
+    /**
+     * Returns how many of the positions from start up to but not including
+     * end are a whole number of steps from start.
+     */
+    private static int spaced(int start, int end, int step) {
+        return start < end ? (end - start + step - 1) / step : 0;
+    }
+
+    /**
+     * Sets the frame of the event from the whole of a frame's values.
+     *
+     * @param viewport
+     *            the area of the complex plane of the frame; may be null
+     * @param maxIts
+     *            the maximum iterations of the frame
+     * @param data
+     *            the frame's values; may be null if they are not to hand
+     */
+    void setFrame(DeepViewport viewport, int maxIts, int[] data) {
+        int length = data == null ? 0 : data.length;
+        this.setFrame(viewport, maxIts, data, 0, length, 0, 0, length, length == 0 ? 0 : 1);
+    }
+
+    /**
+     * Sets the frame of the event from its cumulative histogram, which is far
+     * quicker than adding up its values, falling back on the values if the
+     * histogram is null or of a different maxIts.
+     *
+     * @param viewport
+     *            the area of the complex plane of the frame; may be null
+     * @param maxIts
+     *            the maximum iterations of the frame
+     * @param data
+     *            the frame's values
+     * @param cumulative
+     *            how many pixels of the frame have each value or less, as
+     *            from IterationHistogram; may be null
+     */
+    void setFrame(DeepViewport viewport, int maxIts, int[] data, long[] cumulative) {
+        if (cumulative == null || cumulative.length != maxIts + 1) {
+            this.setFrame(viewport, maxIts, data);
+            return;
+        }
+        this.viewport = viewport == null ? null : viewport.toString();
+        this.maxIts = maxIts;
+        this.pixels = cumulative[maxIts];
+        long total = 0;
+        for (int n = 1; n <= maxIts; n++) {
+            total += n * (cumulative[n] - cumulative[n - 1]);
+        }
+        this.iterations = total;
+    }
+}
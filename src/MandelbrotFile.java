@@ -0,0 +1,298 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Reads and writes models as .mandelbrot files. Files are read by mapping
+ * them into memory, unpacking only the current frame; the other frames of the
+ * history stay packed in the mapped file until undo or redo asks for them.
+ *
+ * All numbers are big-endian. A file is laid out as:
+ *
+ * <pre>
+ * int     MAGIC, the bytes "MBRT"
+ * int     VERSION
+ * int     flags: 1 subdivision, 2 progressive, 4 periodicity check, 8 smooth
+ *         colouring
+ * int     frame size, the width and height of every frame in pixels
+ * int     maximum iterations
+ * viewport
+ * int     number of history entries, n
+ * int     history position
+ * long    history memory budget in bytes
+ * int     index of the current frame; n if it is not one of the history's
+ * int     number of frames, n or n + 1
+ * n times:
+ *   int   maximum iterations of the entry
+ *   viewport of the entry
+ * for each frame, the frame index:
+ *   int   number of values in the frame
+ *   long  offset of its packed values from the end of the frame index
+ *   int   length of its packed values; -1 if the frame was dropped
+ * the packed values of the frames
+ * </pre>
+ *
+ * A viewport is written as its centre's real and imaginary parts, each an
+ * int length followed by that many bytes of the BigDecimal's string in
+ * UTF-8, then the double real and imaginary spans. Frame values are packed
+ * as by HistoryFrame, as runs of equal values.
+ *
+ * Files saved before this format, which are serialized Models, are still
+ * read; saving one again writes it in this format.
+ *
+ */
+public class MandelbrotFile {
+
+    private static final Logger LOGGER = Logger.getLogger(MandelbrotFile.class.getName());
+
+    static final int MAGIC = 0x4D425254;
+    static final int VERSION = 1;
+
+    private static final int SUBDIVISION = 1;
+    private static final int PROGRESSIVE = 2;
+    private static final int PERIODICITY_CHECK = 4;
+    private static final int SMOOTH = 8;
+
+    private MandelbrotFile() {
+    }
+
+    /**
+     * Writes a model to file. The file is written alongside and then moved
+     * into place, so that a file the model was read from, and whose frames
+     * may still be mapped, is never changed under it.
+     *
+     * @param model
+     *            the model to write
+     * @param file
+     *            the file to write
+     * @throws IOException
+     *             if the file could not be written
+     */
+    public static void write(Model model, File file) throws IOException {
+        FileEvent event = new FileEvent();
+        event.begin();
+        History history = model.getHistory();
+        int entries = history.size();
+        int[] current = model.getMData();
+        int currentFrame = entries;
+        if (current == null || current == history.getFrame(history.getPosition()).getData()) {
+            currentFrame = history.getPosition();
+        }
+        ArrayList<ByteBuffer> planes = new ArrayList<ByteBuffer>();
+        ArrayList<Integer> lengths = new ArrayList<Integer>();
+        for (int i = 0; i < entries; i++) {
+            planes.add(history.getFrame(i).getPacked());
+            lengths.add(history.getFrame(i).getLength());
+        }
+        if (currentFrame == entries) {
+            planes.add(new HistoryFrame(current).getPacked());
+            lengths.add(current.length);
+        }
+
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            int flags = (model.isSubdivision() ? SUBDIVISION : 0) | (model.isProgressive() ? PROGRESSIVE : 0)
+                    | (model.isPeriodicityCheck() ? PERIODICITY_CHECK : 0) | (model.isSmooth() ? SMOOTH : 0);
+            out.writeInt(flags);
+            out.writeInt(model.getFrameSize());
+            out.writeInt(model.getMaxIts());
+            writeViewport(out, model.getViewport());
+            out.writeInt(entries);
+            out.writeInt(history.getPosition());
+            out.writeLong(history.getBudgetBytes());
+            out.writeInt(currentFrame);
+            out.writeInt(planes.size());
+            for (int i = 0; i < entries; i++) {
+                out.writeInt(history.getIts(i));
+                writeViewport(out, history.getViewport(i));
+            }
+            long offset = 0;
+            for (int i = 0; i < planes.size(); i++) {
+                ByteBuffer plane = planes.get(i);
+                out.writeInt(lengths.get(i));
+                out.writeLong(offset);
+                out.writeInt(plane == null ? -1 : plane.remaining());
+                offset += plane == null ? 0 : plane.remaining();
+            }
+            for (ByteBuffer plane : planes) {
+                if (plane != null) {
+                    byte[] bytes = new byte[plane.remaining()];
+                    plane.duplicate().get(bytes);
+                    out.write(bytes);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        commit(event, "save", file, model);
+    }
+
+    /**
+     * Reads a model from file, whether it is in this format or is a model
+     * serialized before it.
+     *
+     * @param file
+     *            the file to read
+     * @return the model read
+     * @throws IOException
+     *             if the file could not be read or is not a model
+     * @throws ClassNotFoundException
+     *             if an older file holds a class that no longer exists
+     */
+    public static Model read(File file) throws IOException, ClassNotFoundException {
+        FileEvent event = new FileEvent();
+        event.begin();
+        Model model = readModel(file);
+        commit(event, "load", file, model);
+        return model;
+    }
+
+    /**
+     * Ends a file event about a model, and records it if a recording wants
+     * it.
+     */
+    private static void commit(FileEvent event, String action, File file, Model model) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.setFrame(model.getViewport(), model.getMaxIts(), model.getMData());
+            event.action = action;
+            event.path = file.getPath();
+            event.bytes = file.length();
+            event.frames = model.getHistory().size();
+            event.commit();
+        }
+    }
+
+    private static Model readModel(File file) throws IOException, ClassNotFoundException {
+        MappedByteBuffer in;
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            // the mapping stays valid once the channel is closed
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            channel.close();
+        }
+        if (in.remaining() < 8 || in.getInt(0) != MAGIC) {
+            return readSerialized(file);
+        }
+        in.getInt();
+        int version = in.getInt();
+        if (version > VERSION) {
+            throw new IOException("Unsupported .mandelbrot version " + version);
+        }
+        int flags = in.getInt();
+        int frameSize = in.getInt();
+        int maxIts = in.getInt();
+        DeepViewport viewport = readViewport(in);
+        int entries = in.getInt();
+        int position = in.getInt();
+        long budgetBytes = in.getLong();
+        int currentFrame = in.getInt();
+        int frameCount = in.getInt();
+        if (entries < 1 || position < 0 || position >= entries || currentFrame < 0 || currentFrame >= frameCount
+                || frameCount < entries || frameCount > entries + 1) {
+            throw new IOException("Corrupt .mandelbrot header");
+        }
+        ArrayList<Integer> its = new ArrayList<Integer>(entries);
+        ArrayList<DeepViewport> viewports = new ArrayList<DeepViewport>(entries);
+        for (int i = 0; i < entries; i++) {
+            its.add(in.getInt());
+            viewports.add(readViewport(in));
+        }
+        int[] lengths = new int[frameCount];
+        long[] offsets = new long[frameCount];
+        int[] packedLengths = new int[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            lengths[i] = in.getInt();
+            offsets[i] = in.getLong();
+            packedLengths[i] = in.getInt();
+        }
+        int start = in.position();
+        ArrayList<HistoryFrame> frames = new ArrayList<HistoryFrame>(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            ByteBuffer plane = null;
+            if (packedLengths[i] >= 0) {
+                if (offsets[i] < 0 || start + offsets[i] + packedLengths[i] > in.limit()) {
+                    throw new IOException("Corrupt .mandelbrot frame index");
+                }
+                plane = in.duplicate();
+                plane.position((int) (start + offsets[i]));
+                plane.limit(plane.position() + packedLengths[i]);
+            }
+            frames.add(new HistoryFrame(lengths[i], plane));
+        }
+
+        int[] data = frames.get(currentFrame).getData();
+        if (currentFrame < entries) {
+            // held unpacked, as it is on display
+            frames.get(currentFrame).restore(data);
+        }
+        while (frames.size() > entries) {
+            frames.remove(frames.size() - 1);
+        }
+        Model model = new Model();
+        model.setSubdivision((flags & SUBDIVISION) != 0);
+        model.setProgressive((flags & PROGRESSIVE) != 0);
+        model.setPeriodicityCheck((flags & PERIODICITY_CHECK) != 0);
+        model.setSmooth((flags & SMOOTH) != 0);
+        model.load(viewport, maxIts, frameSize, data, new History(frames, its, viewports, position, budgetBytes));
+        return model;
+    }
+
+    private static Model readSerialized(File file) throws IOException, ClassNotFoundException {
+        LOGGER.fine("Reading serialized model");
+        ObjectInputStream objectInput = new ObjectInputStream(new FileInputStream(file));
+        try {
+            return (Model) objectInput.readObject();
+        } finally {
+            objectInput.close();
+        }
+    }
+
+    private static void writeViewport(DataOutputStream out, DeepViewport viewport) throws IOException {
+        writeString(out, viewport.getCentreReal().toString());
+        writeString(out, viewport.getCentreImag().toString());
+        out.writeDouble(viewport.getRealSpan());
+        out.writeDouble(viewport.getImagSpan());
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static DeepViewport readViewport(ByteBuffer in) throws IOException {
+        BigDecimal centreReal = new BigDecimal(readString(in));
+        BigDecimal centreImag = new BigDecimal(readString(in));
+        return new DeepViewport(centreReal, centreImag, in.getDouble(), in.getDouble());
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Corrupt .mandelbrot string");
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,11 +1,12 @@
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Observable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Model is observed by Delegate. It is responsible for keeping track of all the
@@ -18,20 +19,57 @@ import java.util.Observable;
  */
 public class Model extends Observable implements Serializable {
 
-    private static final int MAX_REAL_INDEX = 1;
-    private static final int MIN_REAL_INDEX = 0;
-    private static final int MIN_IMAG_INDEX = 2;
-    private static final int MAX_IMAG_INDEX = 3;
     private static final long serialVersionUID = 1L;
-    private int[][] mData;
+    private static final Logger LOGGER = Logger.getLogger(Model.class.getName());
+    // row-major frameSize x frameSize iteration values. Named differently
+    // from the int[][] mData field of older saved models so that those files
+    // can still be read (see readObject).
+    private int[] mFlatData;
     private MandelbrotCalculator mCalc;
     private int maxIts;
     private double minReal;
     private double maxReal;
     private double minImag;
     private double maxImag;
+    // the exact area being viewed; the four doubles above are its bounds
+    // rounded to double precision
+    private DeepViewport viewport;
+    // the area shown by mFlatData, which lags behind viewport while a frame
+    // is being calculated, and the maximum iterations it was calculated with
+    private DeepViewport frameViewport;
+    private int frameMaxIts;
+    // the viewport of a coarse pass of a later frame on display in place of
+    // mFlatData, which zooms and pans are mapped through; null if there is
+    // none
+    private transient DeepViewport previewViewport;
+    // how many pixels viewport has been panned by from frameViewport; only
+    // meaningful while viewport is frameViewport panned by this much
+    private int panX;
+    private int panY;
     private int frameSize;
     private History history;
+    // whether to calculate frames by rectangle subdivision
+    private boolean subdivision;
+    // whether to calculate frames in passes of increasing resolution; stored
+    // negated so that models saved before it existed load with it on
+    private boolean progressiveDisabled;
+    // whether to colour frames by their continuous escape values
+    private boolean smooth;
+    // whether frames are counted into a histogram as they are calculated,
+    // for the display's equalized colouring; a choice of the display's, so
+    // not saved
+    private transient boolean equalized;
+    // the continuous escape values of mFlatData if smooth is true, worked
+    // out by a colouring job if the frame did not come with them
+    private transient float[] smoothData;
+    // how many pixels of mFlatData have each value or less, worked out as
+    // it was calculated if equalized is true, or else by a colouring job
+    private transient long[] cumulative;
+    // the state of the pixels of mFlatData which had not escaped, for
+    // carrying them on when maxIts is raised; null if there is none
+    private transient ResumeState resumeState;
+    // tiles of recently calculated frames, kept for the session only
+    private transient TileCache tileCache = new TileCache();
 
     /**
      * Creates a new model instance and sets its values to default.
@@ -45,7 +83,7 @@ public class Model extends Observable implements Serializable {
      * it may be accessed in future.
      */
     void addToHistory() {
-        this.history.add(this.mData, this.maxIts, this.minReal, this.maxReal, this.minImag, this.maxImag);
+        this.history.add(this.mFlatData, this.maxIts, this.viewport);
     }
 
     /**
@@ -67,54 +105,355 @@ public class Model extends Observable implements Serializable {
         // width newX, height newY, start coords newStartX new rStartY;
         // send zoom info to model
 
-        System.out.println("min coords: " + x1 + "," + y1);
-        System.out.println("max coords: " + x2 + "," + y2);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Zooming from " + x1 + "," + y1 + " to " + x2 + "," + y2 + " of ranges "
+                    + this.viewport.getRealSpan() + " by " + this.viewport.getImagSpan());
+        }
 
-        double realRange = this.maxReal - this.minReal;
-        System.out.println("Real range:" + realRange);
+        // the marquee was drawn over the frame on display, which may not be
+        // the latest viewport if that is still being calculated
+        DeepViewport shown = this.getShownViewport();
+        this.viewport = shown.zoom(x1, y1, x2, y2, this.frameSize, this.frameSize);
+        this.panX = 0;
+        this.panY = 0;
+        this.setBoundsFromViewport();
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Zoomed to real " + this.minReal + " to " + this.maxReal + ", imaginary " + this.minImag
+                    + " to " + this.maxImag);
+        }
+        this.shout();
+    }
 
-        double imagRange = this.maxImag - this.minImag;
-        System.out.println("Imag range:" + imagRange);
+    /**
+     * Moves the viewport by whole pixels, as dragged by the user, so that the
+     * point at pixel (x + dx, y + dy) of the frame on display moves to pixel
+     * (x, y). Pans made before the frame on display is replaced add up, so
+     * the next frame only needs the pixels exposed by all of them.
+     *
+     * @param dx
+     *            the number of pixels to move the view right by
+     * @param dy
+     *            the number of pixels to move the view down by
+     */
+    public void pan(int dx, int dy) {
+        DeepViewport shown = this.getShownViewport();
+        if (this.previewViewport == null && this.frameViewport == null
+                || !this.viewport.equals(shown.pan(this.panX, this.panY, this.frameSize, this.frameSize))) {
+            // the viewport has been zoomed since the frame on display
+            this.panX = 0;
+            this.panY = 0;
+        }
+        this.panX += dx;
+        this.panY += dy;
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer("Panning by " + this.panX + "," + this.panY);
+        }
+        this.viewport = shown.pan(this.panX, this.panY, this.frameSize, this.frameSize);
+        this.setBoundsFromViewport();
+        this.shout();
+    }
 
-        double minR = this.minReal;
-        double minI = this.minImag;
+    /**
+     * Returns the viewport of what is on display, which the user's zooms and
+     * pans are made on: a preview of a frame being calculated if one is
+     * shown, or else the last finished frame.
+     */
+    private DeepViewport getShownViewport() {
+        if (this.previewViewport != null) {
+            return this.previewViewport;
+        }
+        return this.frameViewport != null ? this.frameViewport : this.viewport;
+    }
 
-        this.minReal = (x1 / this.frameSize) * realRange + minR;
-        System.out.println("minReal:" + this.minReal);
+    /**
+     * Records that a coarse pass of a job's frame is on display in place of
+     * the last finished frame, so that zooms and pans made on it are mapped
+     * through the job's viewport. The previewed frame is not stored, so a
+     * pan made on it calculates the whole of the next frame.
+     *
+     * @param job
+     *            the job whose preview is on display
+     */
+    void showPreview(RenderJob job) {
+        this.previewViewport = job.getViewport();
+    }
 
-        this.maxReal = (x2 / this.frameSize) * realRange + minR;
-        System.out.println("maxReal:" + this.maxReal);
+    /**
+     * Records that mFlatData is now the frame calculated for job.
+     */
+    private void setFrame(RenderJob job) {
+        this.previewViewport = null;
+        this.frameViewport = job.getViewport();
+        this.frameMaxIts = job.getMaxIts();
+        this.resumeState = job.getResultState();
+        this.smoothData = job.getSmoothData();
+        this.cumulative = job.getCumulative();
+        this.panX = 0;
+        this.panY = 0;
+    }
 
-        this.minImag = (y1 / this.frameSize) * imagRange + minI;
-        System.out.println("minImag:" + this.minImag);
-        this.maxImag = (y2 / this.frameSize) * imagRange + minI;
-        System.out.println("maxImag:" + this.maxImag);
-        this.shout();
+    /**
+     * Takes a snapshot of the model's current values, to be calculated by
+     * render, possibly on another thread.
+     *
+     * @return a job describing the frame to calculate
+     */
+    RenderJob createJob() {
+        boolean progressive = !this.progressiveDisabled;
+        if (this.resumeState != null && this.resumeState.canResume(this.viewport, this.frameSize, this.frameSize,
+                this.maxIts, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED)) {
+            return new RenderJob(this.viewport, this.maxIts, this.frameSize, this.subdivision, progressive,
+                    this.smooth, this.equalized, this.mFlatData, this.resumeState, 0, 0);
+        }
+        if (this.isPanOfFrame()) {
+            return new RenderJob(this.viewport, this.maxIts, this.frameSize, this.subdivision, progressive,
+                    this.smooth, this.equalized, this.mFlatData, null, this.panX, this.panY);
+        }
+        return new RenderJob(this.viewport, this.maxIts, this.frameSize, this.subdivision, progressive,
+                this.smooth, this.equalized, null, null, 0, 0);
     }
 
     /**
-     * Calculates an array of mandelbrot data given a range of values and stores
-     * it in the model.
+     * Returns whether the viewport is the frame on display panned by panX and
+     * panY, with nothing else changed, so that the frame's pixels can be
+     * reused.
      */
-    void calculate() {
-        System.out.println("Calculating mData");
-        this.mData = this.mCalc.calcMandelbrotSet(this.frameSize, this.frameSize, this.minReal, this.maxReal,
-                this.minImag, this.maxImag, this.maxIts, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+    private boolean isPanOfFrame() {
+        return (this.panX != 0 || this.panY != 0) && this.frameViewport != null && this.mFlatData != null
+                && this.mFlatData.length == this.frameSize * this.frameSize && this.frameMaxIts == this.maxIts
+                && this.viewport.equals(this.frameViewport.pan(this.panX, this.panY, this.frameSize,
+                        this.frameSize));
+    }
 
+    /**
+     * Calculates the mandelbrot data for a job without changing the model, so
+     * that it is safe to call from a background thread. Only one job should be
+     * rendered at a time, as they share the calculator's statistics.
+     *
+     * @param job
+     *            a snapshot of the frame to calculate
+     * @return a row-major array of mandelbrot data, which is incomplete if the
+     *         job was cancelled
+     */
+    int[] render(RenderJob job) {
+        return this.render(job, null);
+    }
+
+    /**
+     * Calculates the mandelbrot data for a job as render(RenderJob) does, and
+     * if the job is progressive tells listener as each coarse pass finishes.
+     *
+     * @param job
+     *            a snapshot of the frame to calculate
+     * @param listener
+     *            told of each coarse pass of a progressive job, on the
+     *            calculating thread; may be null
+     * @return a row-major array of mandelbrot data, which is incomplete if the
+     *         job was cancelled
+     */
+    int[] render(RenderJob job, PassListener listener) {
+        if (job.isColouring()) {
+            int[] data = job.getPreviousData();
+            this.smoothen(job, data);
+            if (job.isEqualized()) {
+                int size = job.getFrameSize();
+                job.setCumulative(this.mCalc.calcHistogram(data, 0, size, size, size, job.getMaxIts()));
+            }
+            return data;
+        }
+        IterationHistogram histogram = null;
+        if (job.isEqualized() && IterationHistogram.supports(job.getMaxIts())) {
+            histogram = new IterationHistogram(job.getMaxIts());
+        }
+        // the calculator counts the frame's values as it calculates them
+        this.mCalc.setHistogram(histogram);
+        RenderEvent event = new RenderEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int[] data;
+        try {
+            data = this.renderFrame(job, listener);
+        } finally {
+            this.mCalc.setHistogram(null);
+        }
+        if (!job.getToken().isCancelled()) {
+            if (histogram != null) {
+                job.setCumulative(histogram.finish());
+            }
+            RenderMetrics.get().recordFrame(System.nanoTime() - start, data, job.getCumulative(), job.getMaxIts());
+            event.end();
+            if (event.shouldCommit()) {
+                event.setFrame(job.getViewport(), job.getMaxIts(), data, job.getCumulative());
+                event.precision = String.valueOf(this.mCalc.getLastTier());
+                event.commit();
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Calculates the frame of a job for render, choosing how from the job.
+     */
+    private int[] renderFrame(RenderJob job, PassListener listener) {
+        LOGGER.finer("Calculating mData");
+        int size = job.getFrameSize();
+        this.mCalc.getStats().reset();
+        if (job.getResumeFrom() != null) {
+            return this.resume(job);
+        }
+        // a new buffer for every frame, as the previous one is kept in history
+        int[] data = new int[size * size];
+        ResumeState state;
+        double radiusSquared = MandelbrotCalculator.DEFAULT_RADIUS_SQUARED;
+        // frames with no tiles cached yet are calculated progressively, as
+        // the cache could not show anything sooner
+        boolean cached = !job.isPan() && !job.isSubdivision() && (!job.isProgressive() || listener == null
+                || this.tileCache.hasAnyTile(size, size, job.getViewport(), job.getMaxIts(), radiusSquared,
+                        this.mCalc.isPeriodicityCheck()));
+        if (job.isPan()) {
+            state = this.mCalc.calcMandelbrotSetPanned(data, 0, size, size, size, job.getPreviousData(),
+                    job.getPanX(), job.getPanY(), job.getViewport(), job.getMaxIts(),
+                    MandelbrotCalculator.DEFAULT_RADIUS_SQUARED, job.getToken(), true);
+        } else if (cached) {
+            long hits = this.tileCache.getHits();
+            long misses = this.tileCache.getMisses();
+            state = this.mCalc.calcMandelbrotSetCached(data, 0, size, size, size, job.getViewport(),
+                    job.getMaxIts(), radiusSquared, this.tileCache, job.getToken(), true);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Tile cache: " + (this.tileCache.getHits() - hits) + " hits, "
+                        + (this.tileCache.getMisses() - misses) + " misses, " + this.tileCache.getTileCount()
+                        + " tiles cached");
+            }
+        } else if (job.isProgressive() && listener != null) {
+            state = this.mCalc.calcMandelbrotSetProgressive(data, 0, size, size, size, job.getViewport(),
+                    job.getMaxIts(), MandelbrotCalculator.DEFAULT_RADIUS_SQUARED, job.getToken(), listener, true);
+        } else {
+            state = this.mCalc.calcMandelbrotSetInto(data, 0, size, size, size, job.getViewport(), job.getMaxIts(),
+                    MandelbrotCalculator.DEFAULT_RADIUS_SQUARED, job.isSubdivision(), job.getToken(), true);
+        }
+        if (job.getToken().isCancelled()) {
+            LOGGER.fine("Render cancelled");
+            return data;
+        }
+        job.setResultState(state);
+        if (!job.isSubdivision() && !cached) {
+            this.tileCache.store(data, 0, size, size, size, job.getViewport(), job.getMaxIts(), radiusSquared,
+                    this.mCalc.isPeriodicityCheck());
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Precision: " + this.mCalc.getLastTier() + " at " + job.getViewport());
+            LOGGER.fine(String.format("Cardioid/bulb check skipped %.1f%% of pixels",
+                    100 * this.mCalc.getStats().getBulbSkipRate()));
+            if (this.mCalc.isPeriodicityCheck()) {
+                LOGGER.fine("Periodicity check found cycles: " + this.mCalc.getStats().getCyclesFound());
+            }
+        }
+        this.smoothen(job, data);
+        return data;
+    }
+
+    /**
+     * Works out the continuous escape values of a finished frame and leaves
+     * them in its job, if the job is smooth.
+     */
+    private void smoothen(RenderJob job, int[] data) {
+        if (job.isSmooth()) {
+            int size = job.getFrameSize();
+            job.setSmoothData(this.mCalc.calcSmooth(data, 0, size, size, size, job.getViewport(),
+                    job.getMaxIts(), job.getToken()));
+        }
+    }
+
+    /**
+     * Carries the frame of a job which only raises the maximum iterations on
+     * from its ResumeState, iterating only the pixels which had not escaped.
+     */
+    private int[] resume(RenderJob job) {
+        ResumeState from = job.getResumeFrom();
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Resuming " + from.getPixelCount() + " pixels from " + from.getMaxIterations() + " to "
+                    + job.getMaxIts() + " iterations");
+        }
+        int size = job.getFrameSize();
+        // copied, as the frame being carried on is kept in history
+        int[] data = Arrays.copyOf(job.getPreviousData(), size * size);
+        ResumeState state = this.mCalc.calcMandelbrotSetResumed(data, 0, size, from, job.getMaxIts(),
+                job.getToken());
+        if (job.getToken().isCancelled()) {
+            LOGGER.fine("Render cancelled");
+            return data;
+        }
+        job.setResultState(state);
+        this.tileCache.store(data, 0, size, size, size, job.getViewport(), job.getMaxIts(),
+                from.getRadiusSquared(), this.mCalc.isPeriodicityCheck());
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(state.getPixelCount() + " pixels still inside the set");
+        }
+        this.smoothen(job, data);
+        return data;
+    }
+
+    /**
+     * Stores a finished frame as the model's current data and adds it to the
+     * history, recorded with the values it was calculated with.
+     *
+     * @param job
+     *            the job the frame was calculated for
+     * @param data
+     *            the frame's row-major mandelbrot data
+     */
+    void applyRender(RenderJob job, int[] data) {
+        if (job.isColouring()) {
+            // the frame is already stored, and only gains what it lacked
+            if (this.mFlatData == data && !job.getToken().isCancelled()) {
+                if (job.isSmooth()) {
+                    this.smoothData = job.getSmoothData();
+                }
+                if (job.isEqualized()) {
+                    this.cumulative = job.getCumulative();
+                }
+            }
+            return;
+        }
+        this.mFlatData = data;
+        this.setFrame(job);
+        long start = System.nanoTime();
+        if (this.history.isDropped() && job.getViewport().equals(this.history.getViewport())
+                && job.getMaxIts() == this.history.getIts()) {
+            // a dropped frame calculated again, not a new one
+            this.history.restore(data);
+        } else {
+            this.history.add(data, job.getMaxIts(), job.getViewport());
+        }
+        RenderMetrics metrics = RenderMetrics.get();
+        metrics.recordPhase(RenderPhase.HISTORY, System.nanoTime() - start);
+        metrics.recordMemory(this.tileCache.getUsedBytes(), this.history.getUsedBytes());
     }
 
     /**
      * Used to update the model's stored values from history when undo or redo
-     * is called.
+     * is called. If the history has dropped the frame, the frame on display
+     * is kept until it has been calculated again.
      */
     void getDataFromHistory() {
-        System.out.println("Getting data from history..");
-        this.minReal = this.history.getCoords(MIN_REAL_INDEX);
-        this.maxReal = this.history.getCoords(MAX_REAL_INDEX);
-        this.minImag = this.history.getCoords(MIN_IMAG_INDEX);
-        this.maxImag = this.history.getCoords(MAX_IMAG_INDEX);
+        LOGGER.finer("Getting data from history");
+        this.viewport = this.history.getViewport();
+        this.setBoundsFromViewport();
         this.maxIts = this.history.getIts();
-        this.mData = this.history.getMData();
+        this.frameMaxIts = this.maxIts;
+        this.previewViewport = null;
+        int[] data = this.history.getMData();
+        if (data != null) {
+            this.mFlatData = data;
+            this.frameViewport = this.viewport;
+        } else {
+            this.frameViewport = null;
+        }
+        this.resumeState = null;
+        this.smoothData = null;
+        this.cumulative = null;
+        this.panX = 0;
+        this.panY = 0;
     }
 
     /**
@@ -124,7 +463,6 @@ public class Model extends Observable implements Serializable {
      * @return an integer, the width and height of the mandelbrot data.
      */
     public int getFrameSize() {
-        System.out.println("getting frame size: " + this.frameSize);
         return this.frameSize;
     }
 
@@ -137,6 +475,35 @@ public class Model extends Observable implements Serializable {
         return this.history;
     }
 
+    /**
+     * Returns the cache of tiles from recently calculated frames.
+     *
+     * @return the model's tile cache
+     */
+    public TileCache getTileCache() {
+        return this.tileCache;
+    }
+
+    /**
+     * Returns whether the history has dropped the frame at its current
+     * position, so that it has to be calculated again before it can be
+     * shown.
+     *
+     * @return true if the frame has to be calculated again
+     */
+    public boolean isFrameDropped() {
+        return this.history.isDropped();
+    }
+
+    /**
+     * Returns the area of the complex plane the model is currently viewing.
+     *
+     * @return the current viewport
+     */
+    public DeepViewport getViewport() {
+        return this.viewport;
+    }
+
     /**
      * Returns the model's stored value of the maximum number of iterations.
      * 
@@ -149,11 +516,11 @@ public class Model extends Observable implements Serializable {
 
     /**
      * Returns the model's stored mandelbrot data array.
-     * @return a 2d int array of mandelbrot data.
+     * @return a row-major int array of mandelbrot data, frameSize values per
+     *         row.
      */
-    public int[][] getMData() {
-        System.out.println("getting mData");
-        return this.mData;
+    public int[] getMData() {
+        return this.mFlatData;
     }
 
     /**
@@ -167,16 +534,42 @@ public class Model extends Observable implements Serializable {
      *             when reading the file.
      */
     public Model loadFromFile(File fileName) throws Exception {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Loading " + fileName);
+        }
+        return MandelbrotFile.read(fileName);
+    }
 
-        FileInputStream fileInput = new FileInputStream(fileName);
-        ObjectInputStream objectInput = new ObjectInputStream(fileInput);
-
-        System.out.println("Loading:");
-        Model m = (Model) objectInput.readObject();
-        objectInput.close();
-
-        return m;
-
+    /**
+     * Sets the model's values to those read from a file.
+     *
+     * @param viewport
+     *            the area of the complex plane being viewed
+     * @param maxIts
+     *            the maximum number of iterations
+     * @param frameSize
+     *            the width and height of the frames
+     * @param data
+     *            the current frame's row-major mandelbrot data; null if it
+     *            was dropped from the history
+     * @param history
+     *            the history read from the file
+     */
+    void load(DeepViewport viewport, int maxIts, int frameSize, int[] data, History history) {
+        this.viewport = viewport;
+        this.setBoundsFromViewport();
+        this.maxIts = maxIts;
+        this.frameSize = frameSize;
+        this.mFlatData = data;
+        this.frameViewport = data != null ? viewport : null;
+        this.previewViewport = null;
+        this.frameMaxIts = maxIts;
+        this.resumeState = null;
+        this.smoothData = null;
+        this.cumulative = null;
+        this.panX = 0;
+        this.panY = 0;
+        this.history = history;
     }
 
     /**
@@ -187,7 +580,7 @@ public class Model extends Observable implements Serializable {
             this.history.redo();
             this.getDataFromHistory();
         } catch (Exception e) {
-            System.out.println("Cannot redo.");
+            LOGGER.info("Cannot redo");
         }
     }
 
@@ -196,16 +589,16 @@ public class Model extends Observable implements Serializable {
      */
     void reset() {
         try {
-            System.out.println("Resetting..");
+            LOGGER.fine("Resetting");
             this.history.clear();
             this.getDataFromHistory();
         } catch (Exception e) {
-            System.out.println("Cannot reset.");
+            LOGGER.info("Cannot reset");
         }
     }
 
     /**
-     * Saves the model to file.
+     * Saves the model to file, in the format described by MandelbrotFile.
      * 
      * @param fileName
      *            The desired filename of the file to output.
@@ -215,10 +608,7 @@ public class Model extends Observable implements Serializable {
      */
     public void saveToFile(String fileName) throws Exception {
 
-        FileOutputStream fileOutput = new FileOutputStream(fileName);
-        ObjectOutputStream objectOutput = new ObjectOutputStream(fileOutput);
-        objectOutput.writeObject(this);
-        objectOutput.close();
+        MandelbrotFile.write(this, new File(fileName));
 
     }
 
@@ -235,11 +625,174 @@ public class Model extends Observable implements Serializable {
         this.minImag = MandelbrotCalculator.INITIAL_MIN_IMAGINARY;
         this.maxImag = MandelbrotCalculator.INITIAL_MAX_IMAGINARY;
         this.frameSize = Delegate.FRAME_SIZE;
+        this.viewport = DeepViewport.fromBounds(this.minReal, this.maxReal, this.minImag, this.maxImag);
+        this.setBoundsFromViewport();
+        this.frameViewport = null;
+        this.previewViewport = null;
+        this.resumeState = null;
+        this.smoothData = null;
+        this.cumulative = null;
+        this.panX = 0;
+        this.panY = 0;
         this.history = new History();
         this.shout();
 
     }
 
+    /**
+     * Switches the calculator's periodicity check on or off.
+     *
+     * @param periodicityCheck
+     *            true to stop iterating points whose orbit repeats
+     */
+    public void setPeriodicityCheck(boolean periodicityCheck) {
+        this.mCalc.setPeriodicityCheck(periodicityCheck);
+    }
+
+    /**
+     * Returns whether the calculator's periodicity check is switched on.
+     *
+     * @return true if the periodicity check is on
+     */
+    public boolean isPeriodicityCheck() {
+        return this.mCalc.isPeriodicityCheck();
+    }
+
+    /**
+     * Chooses whether frames are calculated by rectangle subdivision, which
+     * skips areas of a single iteration value, or pixel by pixel.
+     *
+     * @param subdivision
+     *            true to use rectangle subdivision
+     */
+    public void setSubdivision(boolean subdivision) {
+        this.subdivision = subdivision;
+    }
+
+    /**
+     * Returns whether frames are calculated by rectangle subdivision.
+     *
+     * @return true if rectangle subdivision is used
+     */
+    public boolean isSubdivision() {
+        return this.subdivision;
+    }
+
+    /**
+     * Chooses whether frames are calculated in passes of increasing
+     * resolution, showing a rough preview after each, or in a single pass.
+     * Has no effect while rectangle subdivision is on.
+     *
+     * @param progressive
+     *            true to calculate frames progressively
+     */
+    public void setProgressive(boolean progressive) {
+        this.progressiveDisabled = !progressive;
+    }
+
+    /**
+     * Returns whether frames are calculated in passes of increasing
+     * resolution.
+     *
+     * @return true if frames are calculated progressively
+     */
+    public boolean isProgressive() {
+        return !this.progressiveDisabled;
+    }
+
+    /**
+     * Chooses whether frames are coloured by their continuous escape values,
+     * without bands, or by their iteration values.
+     *
+     * @param smooth
+     *            true to colour frames smoothly
+     */
+    public void setSmooth(boolean smooth) {
+        this.smooth = smooth;
+    }
+
+    /**
+     * Returns whether frames are coloured by their continuous escape values.
+     *
+     * @return true if frames are coloured smoothly
+     */
+    public boolean isSmooth() {
+        return this.smooth;
+    }
+
+    /**
+     * Chooses whether frames are counted into a cumulative histogram as they
+     * are calculated, as equalized colouring needs one for every frame.
+     * Otherwise a frame is only counted by a colouring job, as when
+     * equalized colouring is switched on.
+     *
+     * @param equalized
+     *            true if the display colours frames by equalized colours
+     */
+    public void setEqualized(boolean equalized) {
+        this.equalized = equalized;
+    }
+
+    /**
+     * Returns whether frames are counted into a histogram as they are
+     * calculated.
+     *
+     * @return true if the display colours frames by equalized colours
+     */
+    public boolean isEqualized() {
+        return this.equalized;
+    }
+
+    /**
+     * Returns the continuous escape values of the frame on display, if they
+     * have been worked out. Frames from history, or shown before smooth
+     * colouring was switched on, come without them; see createColouringJob.
+     *
+     * @return an array laid out like getMData, or null if frames are not
+     *         coloured smoothly or the values are not worked out yet
+     */
+    public float[] getSmoothData() {
+        if (!this.smooth) {
+            return null;
+        }
+        return this.smoothData;
+    }
+
+    /**
+     * Returns a job which works out, in the background, the continuous escape
+     * values and the histogram of the frame on display, whichever are wanted
+     * and it came without. Rendering and storing the job gives the model
+     * them, without changing its frame or history.
+     *
+     * @return the job, or null if there is nothing to work out
+     */
+    RenderJob createColouringJob() {
+        if (this.mFlatData == null || this.frameViewport == null
+                || this.mFlatData.length != this.frameSize * this.frameSize) {
+            return null;
+        }
+        boolean smoothing = this.smooth && this.smoothData == null;
+        boolean counting = this.equalized && this.cumulative == null && IterationHistogram.supports(this.frameMaxIts);
+        if (!smoothing && !counting) {
+            return null;
+        }
+        return new RenderJob(this.frameViewport, this.frameMaxIts, this.frameSize, false, false, smoothing,
+                counting, this.mFlatData, null, 0, 0);
+    }
+
+    /**
+     * Returns how many pixels of the frame on display have each iteration
+     * value or less, if they have been counted. Frames from history, or
+     * shown before equalized colouring was switched on, come without them;
+     * see createColouringJob.
+     *
+     * @return the cumulative counts indexed by value, or null if they are
+     *         not counted yet
+     */
+    public long[] getCumulative() {
+        return this.cumulative;
+    }
+
     /**
      * Sets the framesize () the square dimensions of the mandelbrot data array)
      * to use when calculating the data.
@@ -265,9 +818,11 @@ public class Model extends Observable implements Serializable {
                 this.maxIts = Integer.parseInt(input);
             }
         } catch (Exception e) {
-            System.out.println("Invalid max iteration input.");
+            LOGGER.info("Invalid max iteration input");
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Max iterations: " + this.maxIts);
         }
-        System.out.println("Max iterations: " + this.maxIts);
     }
 
     /**
@@ -275,11 +830,41 @@ public class Model extends Observable implements Serializable {
      * resetting.
      *
      * @param mData
-     *            a 2d array of mandelbrot image data
+     *            a row-major array of mandelbrot image data, frameSize values
+     *            per row
+     */
+    public void setMData(int[] mData) {
+        this.mFlatData = mData;
+        this.resumeState = null;
+        this.smoothData = null;
+        this.cumulative = null;
+    }
+
+    /**
+     * Reads a saved model. Models saved before the data was stored flat have
+     * no mFlatData, so the current frame is taken from their history instead,
+     * and models saved before deep zoom have their viewport made from their
+     * double bounds.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (this.mFlatData == null && this.history != null) {
+            this.mFlatData = this.history.getMData();
+        }
+        if (this.viewport == null) {
+            this.viewport = DeepViewport.fromBounds(this.minReal, this.maxReal, this.minImag, this.maxImag);
+        }
+        this.tileCache = new TileCache();
+    }
+
+    /**
+     * Sets the double bounds of the model to those of its viewport.
      */
-    public void setMData(int[][] mData) {
-        System.out.println("setting mData");
-        this.mData = mData;
+    private void setBoundsFromViewport() {
+        this.minReal = this.viewport.getMinReal();
+        this.maxReal = this.viewport.getMaxReal();
+        this.minImag = this.viewport.getMinImag();
+        this.maxImag = this.viewport.getMaxImag();
     }
 
     /**
@@ -300,7 +885,7 @@ public class Model extends Observable implements Serializable {
             this.history.undo();
             this.getDataFromHistory();
         } catch (Exception e) {
-            System.out.println("Cannot undo.");
+            LOGGER.info("Cannot undo");
         }
 
     }
@@ -0,0 +1,233 @@
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A list of colours of any length which the iteration values of a frame are
+ * spread across, from the first colour for values near zero to the last for
+ * values near the maximum iterations. Points inside the set, whose value is
+ * the maximum, are always black.
+ *
+ * Palettes can be loaded from text files with one colour to a line, written
+ * either as hexadecimal #RRGGBB or as three numbers from 0 to 255 separated
+ * by commas or spaces. Blank lines and lines starting with // are skipped.
+ *
+ */
+public class Palette {
+
+    // the colour of points inside the set
+    static final int BLACK = new Color(0, 0, 0).getRGB();
+    private static final int HEX_DIGITS = 6;
+    private static final int COMPONENT_MAX = 255;
+
+    private final String name;
+    private final int[] colours;
+
+    /**
+     * Creates a palette.
+     *
+     * @param name
+     *            the name to show for the palette
+     * @param colours
+     *            the palette's ARGB colours, at least one
+     */
+    public Palette(String name, int[] colours) {
+        if (colours.length == 0) {
+            throw new IllegalArgumentException("A palette needs at least one colour");
+        }
+        this.name = name;
+        this.colours = Arrays.copyOf(colours, colours.length);
+    }
+
+    /**
+     * Loads a palette from a text file, named after the file.
+     *
+     * @param file
+     *            the file to read
+     * @return the palette in the file
+     * @throws IOException
+     *             if the file could not be read, holds a line which is not a
+     *             colour, or holds no colours
+     */
+    public static Palette load(File file) throws IOException {
+        int[] colours = new int[16];
+        int count = 0;
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("//")) {
+                    continue;
+                }
+                if (count == colours.length) {
+                    colours = Arrays.copyOf(colours, count * 2);
+                }
+                try {
+                    colours[count++] = parseColour(line);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Line " + lineNumber + " of " + file.getName() + " is not a colour: "
+                            + line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (count == 0) {
+            throw new IOException(file.getName() + " holds no colours");
+        }
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return new Palette(dot > 0 ? name.substring(0, dot) : name, Arrays.copyOf(colours, count));
+    }
+
+    private static int parseColour(String text) {
+        if (text.startsWith("#")) {
+            if (text.length() != HEX_DIGITS + 1) {
+                throw new IllegalArgumentException(text);
+            }
+            return new Color(Integer.parseInt(text.substring(1), 16)).getRGB();
+        }
+        String[] parts = text.split("[,\\s]+");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException(text);
+        }
+        int[] rgb = new int[3];
+        for (int i = 0; i < 3; i++) {
+            rgb[i] = Integer.parseInt(parts[i]);
+            if (rgb[i] < 0 || rgb[i] > COMPONENT_MAX) {
+                throw new IllegalArgumentException(text);
+            }
+        }
+        return new Color(rgb[0], rgb[1], rgb[2]).getRGB();
+    }
+
+    /**
+     * Returns the colour of one iteration value. The value is mapped to the
+     * palette as (n / maxIts) * length - 1, as the original 255 colour
+     * gradients were.
+     *
+     * @param n
+     *            the iteration value of a pixel
+     * @param maxIts
+     *            the maximum number of iterations
+     * @return the ARGB colour of the value
+     */
+    public int colourOf(int n, int maxIts) {
+        if (n == maxIts) {
+            return BLACK;
+        }
+        return this.colourOfFraction((double) n / (double) maxIts);
+    }
+
+    /**
+     * Returns the colour a given fraction of the way along the palette, as
+     * fraction * length - 1, without blending.
+     *
+     * @param fraction
+     *            how far along the palette, from 0 to 1
+     * @return the ARGB colour at that point
+     */
+    public int colourOfFraction(double fraction) {
+        int index = (int) (fraction * (double) this.colours.length - 1);
+        return this.colours[Math.max(0, Math.min(this.colours.length - 1, index))];
+    }
+
+    /**
+     * Returns the colour of a continuous escape value, mixed from the two
+     * colours of the palette it falls between, so that the colours of a
+     * frame blend into each other rather than forming bands.
+     *
+     * @param value
+     *            the continuous escape value of a pixel
+     * @param maxIts
+     *            the maximum number of iterations
+     * @return the ARGB colour of the value
+     */
+    public int colourAt(float value, int maxIts) {
+        if (value >= maxIts) {
+            return BLACK;
+        }
+        return this.colourAtFraction((double) value / (double) maxIts);
+    }
+
+    /**
+     * Returns the colour a given fraction of the way along the palette,
+     * blended from the two colours the point falls between.
+     *
+     * @param fraction
+     *            how far along the palette, from 0 to 1
+     * @return the ARGB colour at that point
+     */
+    public int colourAtFraction(double fraction) {
+        double position = fraction * (double) this.colours.length - 1;
+        if (position <= 0) {
+            return this.colours[0];
+        }
+        int index = (int) position;
+        if (index >= this.colours.length - 1) {
+            return this.colours[this.colours.length - 1];
+        }
+        double blend = position - index;
+        int from = this.colours[index];
+        int to = this.colours[index + 1];
+        int colour = 0xFF000000;
+        for (int shift = 0; shift < 24; shift += 8) {
+            int a = (from >> shift) & 0xFF;
+            int b = (to >> shift) & 0xFF;
+            colour |= ((int) (a + (b - a) * blend + 0.5) & 0xFF) << shift;
+        }
+        return colour;
+    }
+
+    /**
+     * Works out the colour of every iteration value from 0 to maxIts, so
+     * that a frame can be coloured with one array lookup per pixel.
+     *
+     * @param maxIts
+     *            the maximum number of iterations
+     * @return an array of maxIts + 1 ARGB colours, indexed by iteration
+     *         value
+     */
+    public int[] table(int maxIts) {
+        int[] table = new int[maxIts + 1];
+        for (int n = 0; n <= maxIts; n++) {
+            table[n] = this.colourOf(n, maxIts);
+        }
+        return table;
+    }
+
+    /**
+     * Returns one of the palette's colours.
+     *
+     * @param i
+     *            the index of the colour
+     * @return the ARGB colour at index i
+     */
+    public int get(int i) {
+        return this.colours[i];
+    }
+
+    /**
+     * Returns the number of colours in the palette.
+     *
+     * @return the palette's length
+     */
+    public int getLength() {
+        return this.colours.length;
+    }
+
+    /**
+     * Returns the name to show for the palette.
+     *
+     * @return the palette's name
+     */
+    public String getName() {
+        return this.name;
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Told by MandelbrotCalculator.calcMandelbrotSetProgressive each time a
+ * coarse pass over the frame has finished.
+ *
+ */
+public interface PassListener {
+
+    /**
+     * Called on the calculating thread after each pass but the last. The
+     * buffer holds a complete image at the pass's resolution, and is about to
+     * be written to by the next pass, so it must be copied if it is to be
+     * used on another thread.
+     *
+     * @param buffer
+     *            the buffer being calculated into
+     * @param step
+     *            the pixel step of the finished pass; 4 means one pixel in
+     *            every 4 x 4 block has been calculated
+     */
+    void passFinished(int[] buffer, int step);
+}
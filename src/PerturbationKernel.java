@@ -0,0 +1,119 @@
+/**
+ * A TileKernel for views zoomed in beyond the precision of a double. Each
+ * pixel's C is written as the frame's reference point plus a small offset dc,
+ * and its orbit as the reference orbit Z_n plus a small offset dz_n. As
+ * Z_n+1 + dz_n+1 = (Z_n + dz_n)^2 + C + dc, the offset can be iterated on its
+ * own in double precision:
+ *
+ * dz_n+1 = 2 * Z_n * dz_n + dz_n^2 + dc
+ *
+ * dc and dz are tiny but well within the range of a double, so every pixel
+ * costs about as much as it would at a shallow zoom.
+ *
+ * The offset stops being accurate (a "glitch") when the pixel's orbit passes
+ * closer to zero than it is to the reference orbit, or when the reference
+ * orbit escapes before the pixel's does. In either case the pixel is rebased:
+ * its full value Z_n + dz_n becomes the new offset from the start of the
+ * reference orbit, Z_0 = 0, and iteration carries on from there.
+ *
+ */
+public class PerturbationKernel implements TileKernel {
+
+    private final double[] refReal;
+    private final double[] refImag;
+    private final int refLast;
+    private final double realStep;
+    private final double imaginaryStep;
+    private final double xCentre;
+    private final double yCentre;
+    private final int maxIterations;
+    private final double radiusSquared;
+    private final KernelStats stats;
+
+    /**
+     * Creates a kernel for a frame whose reference point is its centre.
+     *
+     * @param orbit
+     *            the orbit of the centre of the viewport
+     * @param viewport
+     *            the area of the complex plane to draw
+     * @param xResolution
+     *            the width of the frame in pixels
+     * @param yResolution
+     *            the height of the frame in pixels
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param stats
+     *            the counters to record the work done in
+     */
+    PerturbationKernel(ReferenceOrbit orbit, DeepViewport viewport, int xResolution, int yResolution,
+            int maxIterations, double radiusSquared, KernelStats stats) {
+        this.refReal = orbit.getReal();
+        this.refImag = orbit.getImag();
+        this.refLast = orbit.getLength() - 1;
+        this.realStep = viewport.getRealSpan() / xResolution;
+        this.imaginaryStep = viewport.getImagSpan() / yResolution;
+        // pixel (x, y) is at minReal + x * realStep, so the centre of the
+        // viewport is at pixel (xResolution / 2, yResolution / 2)
+        this.xCentre = xResolution / 2.0;
+        this.yCentre = yResolution / 2.0;
+        this.maxIterations = maxIterations;
+        this.radiusSquared = radiusSquared;
+        this.stats = stats;
+    }
+
+    @Override
+    public void calcTile(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+        int[] rebases = new int[1];
+        for (int y = y0; y < y1; y++) {
+            double dci = (y - this.yCentre) * this.imaginaryStep;
+            int index = offset + y * stride + x0;
+            rebases[0] = 0;
+            for (int x = x0; x < x1; x++) {
+                double dcr = (x - this.xCentre) * this.realStep;
+                buffer[index++] = this.calcPixel(dcr, dci, rebases);
+            }
+            this.stats.addRow(x1 - x0, 0, 0);
+            this.stats.addRebases(rebases[0]);
+        }
+    }
+
+    /**
+     * Iterates the offset of one pixel from the reference orbit. The number of
+     * iterations is counted the same way as MandelbrotCalculator.calcMandel
+     * counts them.
+     */
+    private int calcPixel(double dcr, double dci, int[] rebases) {
+        double[] zr = this.refReal;
+        double[] zi = this.refImag;
+        double dzr = 0;
+        double dzi = 0;
+        int m = 0;
+        for (int iterations = 0; iterations < this.maxIterations; iterations++) {
+            double refR = zr[m];
+            double refI = zi[m];
+            double r = refR + dzr;
+            double i = refI + dzi;
+            double mag = r * r + i * i;
+            if (mag > this.radiusSquared) {
+                return iterations + 1;
+            }
+            if (mag < dzr * dzr + dzi * dzi || m == this.refLast) {
+                dzr = r;
+                dzi = i;
+                m = 0;
+                refR = 0;
+                refI = 0;
+                rebases[0]++;
+            }
+            double ndzr = 2 * (refR * dzr - refI * dzi) + dzr * dzr - dzi * dzi + dcr;
+            double ndzi = 2 * (refR * dzi + refI * dzr) + 2 * dzr * dzi + dci;
+            dzr = ndzr;
+            dzi = ndzi;
+            m++;
+        }
+        return this.maxIterations;
+    }
+}
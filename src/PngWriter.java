@@ -0,0 +1,277 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+/**
+ * Writes an image as a PNG a few rows at a time, so that an image of any size
+ * can be written while only the rows being written are held in memory.
+ *
+ * Images are written as 8 bit RGB without transparency, and without
+ * filtering the rows: the colours of a mandelbrot image all come from one
+ * palette, and the repeated pixels of its bands compress better as they are
+ * than as differences from their neighbours.
+ *
+ * The filtered rows are compressed in blocks of BLOCK_BYTES, each on a thread
+ * of the common fork/join pool (see DeflateBlock), while the caller carries
+ * on filtering the rows after them. The blocks' compressed data is written
+ * in order as one zlib stream, in IDAT chunks of CHUNK_BYTES, as soon as it
+ * is ready, so only a few blocks are ever held at once. Because each block is
+ * primed with the end of the one before, the image is compressed almost as
+ * well as by a single Deflater.
+ *
+ */
+public class PngWriter {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // the most compressed bytes written to one IDAT chunk
+    private static final int CHUNK_BYTES = 1 << 16;
+    private static final int BYTES_PER_PIXEL = 3;
+    private static final int DEFAULT_LEVEL = 6;
+    private static final int BIT_DEPTH = 8;
+    private static final int COLOUR_TYPE_RGB = 2;
+    private static final int FILTER_NONE = 0;
+    // the filtered bytes compressed by each task
+    private static final int BLOCK_BYTES = 128 * 1024;
+    // the most blocks compressing or waiting to be written at once
+    private static final int MAX_PENDING = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+    // a zlib stream header for a 32K window, with no preset dictionary
+    private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9C};
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final int level;
+    // one row, led by its filter type
+    private final byte[] row;
+    // the block being filled, and the full block before it
+    private byte[] block = new byte[BLOCK_BYTES];
+    private int blockSize;
+    private byte[] previousBlock;
+    // blocks handed to the pool, in order, and the checksum of the blocks
+    // before them
+    private final ArrayDeque<DeflateBlock> pending = new ArrayDeque<DeflateBlock>();
+    private int adler = 1;
+    private final byte[] chunk = new byte[CHUNK_BYTES];
+    private int chunkSize;
+    private int rowsWritten;
+    private boolean finished;
+
+    /**
+     * Starts writing a PNG, writing its header straight away.
+     *
+     * @param out
+     *            the stream to write to, which close closes
+     * @param width
+     *            the width of the image in pixels
+     * @param height
+     *            the height of the image in pixels
+     * @param level
+     *            the Deflater compression level, from 0 to 9
+     * @throws IOException
+     *             if the header could not be written
+     */
+    public PngWriter(OutputStream out, int width, int height, int level) throws IOException {
+        if (width < 1 || height < 1 || width > (Integer.MAX_VALUE - 1) / BYTES_PER_PIXEL) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.level = level;
+        this.row = new byte[1 + width * BYTES_PER_PIXEL];
+        this.row[0] = FILTER_NONE;
+
+        this.out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = BIT_DEPTH;
+        header[9] = COLOUR_TYPE_RGB;
+        // compression, filter and interlace methods are all 0
+        this.writeChunk("IHDR", header, header.length);
+        this.writeData(ZLIB_HEADER, ZLIB_HEADER.length);
+    }
+
+    /**
+     * Writes a whole image to a PNG file at the default compression level.
+     *
+     * @param pixels
+     *            the row-major array of the image's ARGB colours; alpha is
+     *            ignored
+     * @param width
+     *            the width of the image in pixels
+     * @param height
+     *            the height of the image in pixels
+     * @param file
+     *            the file to write
+     * @throws IOException
+     *             if the file could not be written
+     */
+    public static void write(int[] pixels, int width, int height, File file) throws IOException {
+        FileEvent event = new FileEvent();
+        event.begin();
+        PngWriter png = new PngWriter(new BufferedOutputStream(new FileOutputStream(file)), width, height,
+                DEFAULT_LEVEL);
+        try {
+            png.writeRows(pixels, 0, width, height);
+        } finally {
+            png.close();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            // the pixels are colours, so there is no frame to describe
+            event.pixels = (long) width * height;
+            event.action = "save image";
+            event.path = file.getPath();
+            event.bytes = file.length();
+            event.commit();
+        }
+    }
+
+    /**
+     * Writes the next rows of the image.
+     *
+     * @param pixels
+     *            the row-major array holding the rows' ARGB colours; alpha is
+     *            ignored
+     * @param offset
+     *            the index in pixels of the first pixel of the first row
+     * @param stride
+     *            the distance in pixels between the start of two neighbouring
+     *            rows
+     * @param rows
+     *            the number of rows to write
+     * @throws IOException
+     *             if the rows could not be written
+     */
+    public void writeRows(int[] pixels, int offset, int stride, int rows) throws IOException {
+        if (this.rowsWritten + rows > this.height) {
+            throw new IllegalStateException("Only " + (this.height - this.rowsWritten) + " rows are left to write");
+        }
+        for (int y = 0; y < rows; y++) {
+            int index = offset + y * stride;
+            for (int x = 0, i = 1; x < this.width; x++) {
+                int colour = pixels[index + x];
+                this.row[i++] = (byte) (colour >> 16);
+                this.row[i++] = (byte) (colour >> 8);
+                this.row[i++] = (byte) colour;
+            }
+            int copied = 0;
+            while (copied < this.row.length) {
+                int size = Math.min(this.row.length - copied, BLOCK_BYTES - this.blockSize);
+                System.arraycopy(this.row, copied, this.block, this.blockSize, size);
+                this.blockSize += size;
+                copied += size;
+                if (this.blockSize == BLOCK_BYTES) {
+                    this.submit(false);
+                }
+            }
+        }
+        this.rowsWritten += rows;
+    }
+
+    /**
+     * Finishes the image once every row has been written, and closes the
+     * stream. If the image is not finished the stream is closed leaving an
+     * incomplete PNG.
+     *
+     * @throws IOException
+     *             if the end of the image could not be written
+     */
+    public void close() throws IOException {
+        try {
+            if (!this.finished && this.rowsWritten == this.height) {
+                this.submit(true);
+                while (!this.pending.isEmpty()) {
+                    this.writeBlock(this.pending.poll());
+                }
+                byte[] trailer = new byte[4];
+                writeInt(trailer, 0, this.adler);
+                this.writeData(trailer, trailer.length);
+                if (this.chunkSize > 0) {
+                    this.writeChunk("IDAT", this.chunk, this.chunkSize);
+                }
+                this.writeChunk("IEND", this.chunk, 0);
+                this.finished = true;
+            }
+        } finally {
+            this.out.close();
+        }
+    }
+
+    /**
+     * Returns whether every row has been written and the image finished.
+     *
+     * @return true once close has written a complete PNG
+     */
+    public boolean isFinished() {
+        return this.finished;
+    }
+
+    /**
+     * Hands the block being filled to the pool to compress, and writes out
+     * the oldest blocks while too many are pending.
+     */
+    private void submit(boolean last) throws IOException {
+        DeflateBlock task = new DeflateBlock(this.level, this.previousBlock, this.block, this.blockSize, last);
+        ForkJoinPool.commonPool().execute(task);
+        this.pending.add(task);
+        this.previousBlock = this.block;
+        this.block = new byte[BLOCK_BYTES];
+        this.blockSize = 0;
+        while (this.pending.size() > MAX_PENDING) {
+            this.writeBlock(this.pending.poll());
+        }
+    }
+
+    /**
+     * Waits for a block to be compressed and writes out its data.
+     */
+    private void writeBlock(DeflateBlock task) throws IOException {
+        task.join();
+        this.adler = task.combineAdler(this.adler);
+        this.writeData(task.getCompressed(), task.getCompressedLength());
+    }
+
+    /**
+     * Adds data to the current IDAT chunk, writing chunks out as they fill.
+     */
+    private void writeData(byte[] data, int length) throws IOException {
+        int written = 0;
+        while (written < length) {
+            int size = Math.min(length - written, CHUNK_BYTES - this.chunkSize);
+            System.arraycopy(data, written, this.chunk, this.chunkSize, size);
+            this.chunkSize += size;
+            written += size;
+            if (this.chunkSize == CHUNK_BYTES) {
+                this.writeChunk("IDAT", this.chunk, CHUNK_BYTES);
+                this.chunkSize = 0;
+            }
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        this.out.writeInt(length);
+        this.out.write(typeBytes);
+        this.out.write(data, 0, length);
+        this.out.writeInt((int) crc.getValue());
+    }
+
+    private static void writeInt(byte[] bytes, int index, int value) {
+        bytes[index] = (byte) (value >>> 24);
+        bytes[index + 1] = (byte) (value >>> 16);
+        bytes[index + 2] = (byte) (value >>> 8);
+        bytes[index + 3] = (byte) value;
+    }
+}
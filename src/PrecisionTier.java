@@ -0,0 +1,45 @@
+/**
+ * The kinds of arithmetic MandelbrotCalculator can calculate a frame with,
+ * from fastest to most precise. The calculator picks the first tier that can
+ * still tell neighbouring pixels apart at the viewport's coordinates.
+ *
+ */
+public enum PrecisionTier {
+
+    /** Plain double arithmetic, good down to a pixel step of a few hundred ULPs. */
+    DOUBLE,
+
+    /**
+     * Double-double arithmetic (about 106 bits), good to a pixel step about
+     * 2^53 times smaller than DOUBLE.
+     */
+    DOUBLE_DOUBLE,
+
+    /** Perturbation around a BigDecimal reference orbit, for any depth. */
+    PERTURBATION;
+
+    // a double-double carries 53 more bits than a double
+    private static final double DOUBLE_DOUBLE_ULPS = DeepViewport.DEEP_ZOOM_ULPS * Math.pow(2, -53);
+
+    /**
+     * Returns the fastest tier which can calculate the viewport at the given
+     * resolution without the image breaking up.
+     *
+     * @param viewport
+     *            the area of the complex plane to calculate
+     * @param xResolution
+     *            the width of the frame in pixels
+     * @param yResolution
+     *            the height of the frame in pixels
+     * @return the tier to calculate the frame with
+     */
+    public static PrecisionTier forViewport(DeepViewport viewport, int xResolution, int yResolution) {
+        double ulps = viewport.getPixelStepInUlps(xResolution, yResolution);
+        if (ulps >= DeepViewport.DEEP_ZOOM_ULPS) {
+            return DOUBLE;
+        } else if (ulps >= DOUBLE_DOUBLE_ULPS) {
+            return DOUBLE_DOUBLE;
+        }
+        return PERTURBATION;
+    }
+}
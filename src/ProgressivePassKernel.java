@@ -0,0 +1,59 @@
+/**
+ * A TileKernel which calculates only the pixels belonging to one pass of a
+ * progressive render, passing them to the kernel of the frame. A pass with a
+ * given step calculates the pixels whose x and y are both multiples of step,
+ * leaving out those already calculated by the previous pass (multiples of
+ * twice the step) unless it is the first pass. The pixels of a pass lie on
+ * at most two evenly spaced grids, so each tile of a pass is passed to the
+ * kernel's calcSpaced as one or two calls rather than pixel by pixel; in the
+ * last pass, the rows the previous pass did not touch are whole rows.
+ *
+ */
+public class ProgressivePassKernel implements TileKernel {
+
+    private final TileKernel kernel;
+    private final int step;
+    private final boolean first;
+
+    /**
+     * Creates a kernel for one pass.
+     *
+     * @param kernel
+     *            the kernel which calculates the frame's pixels
+     * @param step
+     *            the pixel step of the pass, a power of two
+     * @param first
+     *            true if this is the first pass, so no pixels have been
+     *            calculated yet
+     */
+    ProgressivePassKernel(TileKernel kernel, int step, boolean first) {
+        this.kernel = kernel;
+        this.step = step;
+        this.first = first;
+    }
+
+    @Override
+    public void calcTile(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+        int step = this.step;
+        if (this.first) {
+            this.kernel.calcSpaced(buffer, offset, stride, firstMultiple(x0, step), firstMultiple(y0, step), x1,
+                    y1, step, step);
+            return;
+        }
+        int done = step * 2;
+        // in rows the previous pass did not touch, every step-th pixel is
+        // new; in rows it did, only those between its pixels are
+        int oddRow = firstMultiple(y0 - step, done) + step;
+        int evenRow = firstMultiple(y0, done);
+        this.kernel.calcSpaced(buffer, offset, stride, firstMultiple(x0, step), oddRow, x1, y1, step, done);
+        this.kernel.calcSpaced(buffer, offset, stride, firstMultiple(x0 - step, done) + step, evenRow, x1, y1, done,
+                done);
+    }
+
+    /**
+     * Returns the smallest multiple of step that is at least n, for n >= -step.
+     */
+    private static int firstMultiple(int n, int step) {
+        return Math.floorDiv(n + step - 1, step) * step;
+    }
+}
@@ -0,0 +1,92 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * The orbit of Z under Z_n+1 = Z_n^2 + C for one reference point C, iterated
+ * with BigDecimal arithmetic at whatever precision the zoom depth needs, then
+ * rounded to doubles. A PerturbationKernel works out every other pixel of the
+ * frame from its small difference to this orbit, so only this one point has to
+ * be iterated at high precision.
+ *
+ */
+public class ReferenceOrbit {
+
+    private final double[] zr;
+    private final double[] zi;
+    private final int length;
+
+    /**
+     * Iterates the reference point until Z escapes the radius or
+     * maxIterations is reached.
+     *
+     * @param cReal
+     *            the real component of the reference point C
+     * @param cImaginary
+     *            the imaginary component of the reference point C
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param mc
+     *            the precision to iterate at
+     * @param token
+     *            a token which stops the iteration early when cancelled, in
+     *            which case the orbit is incomplete and should not be used
+     */
+    public ReferenceOrbit(BigDecimal cReal, BigDecimal cImaginary, int maxIterations, double radiusSquared,
+            MathContext mc, CancellationToken token) {
+        this.zr = new double[maxIterations + 1];
+        this.zi = new double[maxIterations + 1];
+
+        BigDecimal zReal = BigDecimal.ZERO;
+        BigDecimal zImag = BigDecimal.ZERO;
+        BigDecimal two = BigDecimal.valueOf(2);
+        int n = 0;
+        while (true) {
+            double r = zReal.doubleValue();
+            double i = zImag.doubleValue();
+            this.zr[n] = r;
+            this.zi[n] = i;
+            if (n == maxIterations || r * r + i * i > radiusSquared || token.isCancelled()) {
+                break;
+            }
+            BigDecimal zr2 = zReal.multiply(zReal, mc);
+            BigDecimal zi2 = zImag.multiply(zImag, mc);
+            BigDecimal nzi = two.multiply(zReal).multiply(zImag, mc).add(cImaginary, mc);
+            zReal = zr2.subtract(zi2, mc).add(cReal, mc);
+            zImag = nzi;
+            n++;
+        }
+        this.length = n + 1;
+    }
+
+    /**
+     * Returns the real components of the orbit. Only the first getLength()
+     * values are part of it.
+     *
+     * @return the real component of Z_n at index n
+     */
+    double[] getReal() {
+        return this.zr;
+    }
+
+    /**
+     * Returns the imaginary components of the orbit. Only the first
+     * getLength() values are part of it.
+     *
+     * @return the imaginary component of Z_n at index n
+     */
+    double[] getImag() {
+        return this.zi;
+    }
+
+    /**
+     * Returns the number of values in the orbit, Z_0 included. This is
+     * maxIterations + 1 unless the reference point escaped first.
+     *
+     * @return the length of the orbit
+     */
+    public int getLength() {
+        return this.length;
+    }
+}
@@ -0,0 +1,18 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for the calculation of one frame by
+ * Model.render, from the job being started to its values being ready.
+ * Cancelled frames are not recorded.
+ *
+ */
+@Name("mandelbrot.Render")
+@Label("Render Frame")
+@Description("Calculation of a whole frame")
+public class RenderEvent extends MandelbrotEvent {
+
+    @Label("Precision")
+    String precision;
+}
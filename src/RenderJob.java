@@ -0,0 +1,279 @@
+/**
+ * A snapshot of everything the model needs to calculate one frame, taken when
+ * the frame is asked for. The model may change while the frame is being
+ * calculated in the background, but the job does not, so the frame always
+ * matches the settings it was asked for. Each job carries its own
+ * CancellationToken, which the Renderer cancels when a newer job replaces it.
+ *
+ * A job which only raises the maximum iterations of the model's current frame
+ * carries that frame and its ResumeState, so that the frame can be carried on
+ * rather than calculated again. A job which only pans the current frame by
+ * whole pixels carries that frame and the distance panned, so that only the
+ * newly exposed pixels are calculated. A job which carries a frame but
+ * neither resumes nor pans it only works out the continuous escape values
+ * or the histogram of that frame, for a frame which came without them. The
+ * state of the frame the job calculates is left in the job by Model.render.
+ *
+ */
+public class RenderJob {
+
+    private final DeepViewport viewport;
+    private final int maxIts;
+    private final int frameSize;
+    private final boolean subdivision;
+    private final boolean progressive;
+    private final boolean smooth;
+    private final boolean equalized;
+    private final int[] previousData;
+    private final ResumeState resumeFrom;
+    private final int panX;
+    private final int panY;
+    private final CancellationToken token = new CancellationToken();
+
+    // set by the rendering thread, read on the event thread
+    private volatile ResumeState resultState;
+    private volatile float[] smoothData;
+    private volatile long[] cumulative;
+
+    /**
+     * Creates a job for one frame.
+     *
+     * @param viewport
+     *            the area of the complex plane to calculate
+     * @param maxIts
+     *            the maximum number of iterations
+     * @param frameSize
+     *            the width and height of the frame in pixels
+     * @param subdivision
+     *            true to calculate the frame by rectangle subdivision
+     * @param progressive
+     *            true to calculate the frame in passes of increasing
+     *            resolution; ignored if subdivision is true
+     * @param smooth
+     *            true to also work out the frame's continuous escape values
+     * @param equalized
+     *            true to also count the frame's values into a cumulative
+     *            histogram, for equalized colouring
+     * @param previousData
+     *            the model's current frame, which is resumed or panned from
+     *            and not changed; null to calculate the frame from the start
+     * @param resumeFrom
+     *            the state of previousData to carry on to maxIts, or null
+     * @param panX
+     *            how many pixels right viewport is of previousData's viewport
+     * @param panY
+     *            how many pixels down viewport is of previousData's viewport
+     */
+    public RenderJob(DeepViewport viewport, int maxIts, int frameSize, boolean subdivision, boolean progressive,
+            boolean smooth, boolean equalized, int[] previousData, ResumeState resumeFrom, int panX, int panY) {
+        this.viewport = viewport;
+        this.maxIts = maxIts;
+        this.frameSize = frameSize;
+        this.subdivision = subdivision;
+        this.progressive = progressive;
+        this.smooth = smooth;
+        this.equalized = equalized;
+        this.previousData = previousData;
+        this.resumeFrom = resumeFrom;
+        this.panX = panX;
+        this.panY = panY;
+    }
+
+    /**
+     * Returns the area of the complex plane to calculate.
+     *
+     * @return the job's viewport
+     */
+    public DeepViewport getViewport() {
+        return this.viewport;
+    }
+
+    /**
+     * Returns the maximum number of iterations.
+     *
+     * @return the job's maximum iterations
+     */
+    public int getMaxIts() {
+        return this.maxIts;
+    }
+
+    /**
+     * Returns the width and height of the frame in pixels.
+     *
+     * @return the job's frame size
+     */
+    public int getFrameSize() {
+        return this.frameSize;
+    }
+
+    /**
+     * Returns whether the frame is calculated by rectangle subdivision.
+     *
+     * @return true if rectangle subdivision is used
+     */
+    public boolean isSubdivision() {
+        return this.subdivision;
+    }
+
+    /**
+     * Returns whether the frame is calculated in passes of increasing
+     * resolution. Never true for a job using rectangle subdivision, which
+     * calculates a frame in its own order.
+     *
+     * @return true if the frame is calculated progressively
+     */
+    public boolean isProgressive() {
+        return this.progressive && !this.subdivision;
+    }
+
+    /**
+     * Returns whether the frame's continuous escape values are worked out
+     * once it is calculated.
+     *
+     * @return true if the frame is to be coloured smoothly
+     */
+    public boolean isSmooth() {
+        return this.smooth;
+    }
+
+    /**
+     * Returns whether the frame's cumulative histogram is counted as it is
+     * calculated.
+     *
+     * @return true if the frame is to be coloured by equalized colours
+     */
+    public boolean isEqualized() {
+        return this.equalized;
+    }
+
+    /**
+     * Returns the frame this job resumes or pans from.
+     *
+     * @return the frame's mandelbrot data, or null if the job calculates its
+     *         frame from the start
+     */
+    public int[] getPreviousData() {
+        return this.previousData;
+    }
+
+    /**
+     * Returns the state of the frame this job carries on, if it is one which
+     * only raises the maximum iterations.
+     *
+     * @return the state to resume from, or null
+     */
+    public ResumeState getResumeFrom() {
+        return this.resumeFrom;
+    }
+
+    /**
+     * Returns whether this job only pans the previous frame.
+     *
+     * @return true if the previous frame is panned by getPanX, getPanY
+     */
+    public boolean isPan() {
+        return this.previousData != null && this.resumeFrom == null && (this.panX != 0 || this.panY != 0);
+    }
+
+    /**
+     * Returns whether this job only works out what colouring the previous
+     * frame needs, its continuous escape values if the job is smooth and its
+     * histogram if it is equalized, without calculating its iteration values
+     * again.
+     *
+     * @return true if only the previous frame's colouring is wanted
+     */
+    public boolean isColouring() {
+        return this.previousData != null && this.resumeFrom == null && this.panX == 0 && this.panY == 0;
+    }
+
+    /**
+     * Returns how many pixels right the job's viewport is of the previous
+     * frame's.
+     *
+     * @return the horizontal distance panned
+     */
+    public int getPanX() {
+        return this.panX;
+    }
+
+    /**
+     * Returns how many pixels down the job's viewport is of the previous
+     * frame's.
+     *
+     * @return the vertical distance panned
+     */
+    public int getPanY() {
+        return this.panY;
+    }
+
+    /**
+     * Returns the state of the frame calculated for this job.
+     *
+     * @return the state, or null if the frame could not be resumed from
+     */
+    public ResumeState getResultState() {
+        return this.resultState;
+    }
+
+    /**
+     * Stores the state of the frame calculated for this job.
+     *
+     * @param resultState
+     *            the frame's state, or null
+     */
+    void setResultState(ResumeState resultState) {
+        this.resultState = resultState;
+    }
+
+    /**
+     * Returns the continuous escape values of the frame calculated for this
+     * job.
+     *
+     * @return the values, or null if the job is not smooth
+     */
+    public float[] getSmoothData() {
+        return this.smoothData;
+    }
+
+    /**
+     * Stores the continuous escape values of the frame calculated for this
+     * job.
+     *
+     * @param smoothData
+     *            the frame's continuous values
+     */
+    void setSmoothData(float[] smoothData) {
+        this.smoothData = smoothData;
+    }
+
+    /**
+     * Returns how many pixels of the frame calculated for this job have each
+     * iteration value or less, counted as it was calculated.
+     *
+     * @return the cumulative counts indexed by value, or null if they were
+     *         not counted
+     */
+    public long[] getCumulative() {
+        return this.cumulative;
+    }
+
+    /**
+     * Stores the cumulative counts of the frame calculated for this job.
+     *
+     * @param cumulative
+     *            the number of pixels with each value or less
+     */
+    void setCumulative(long[] cumulative) {
+        this.cumulative = cumulative;
+    }
+
+    /**
+     * Returns the token which is cancelled when the job is no longer wanted.
+     *
+     * @return the job's cancellation token
+     */
+    public CancellationToken getToken() {
+        return this.token;
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Receives the frames calculated by a Renderer. Its methods are always called
+ * on the Swing event thread.
+ *
+ */
+public interface RenderListener {
+
+    /**
+     * Called when a job has been calculated and no newer job has been
+     * submitted since.
+     *
+     * @param job
+     *            the job that was calculated
+     * @param mData
+     *            the row-major iteration values of the frame
+     */
+    void renderFinished(RenderJob job, int[] mData);
+
+    /**
+     * Called when a coarse pass of a progressive job has been calculated and
+     * no newer job has been submitted since. The frame is only a preview, and
+     * is followed by further passes and finally by renderFinished.
+     *
+     * @param job
+     *            the job being calculated
+     * @param mData
+     *            the row-major iteration values of the preview, at full frame
+     *            size
+     */
+    void renderProgress(RenderJob job, int[] mData);
+}
@@ -0,0 +1,256 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Measures how long each phase of rendering takes and what the frames
+ * rendered were like, so that the program can be watched while it runs
+ * without printing anything. The measurements are kept for the last WINDOW
+ * frames, and can be read through JMX under OBJECT_NAME, or as the one line
+ * summary of their means logged at FINE after every frame.
+ *
+ * There is one set of metrics for the whole program, registered with the
+ * platform MBean server when first asked for. All methods may be called from
+ * any thread.
+ *
+ */
+public class RenderMetrics implements RenderMetricsMBean {
+
+    // the number of most recent values means are taken over
+    static final int WINDOW = 32;
+    static final String OBJECT_NAME = "Mandelbrot:type=RenderMetrics";
+
+    private static final Logger LOGGER = Logger.getLogger(RenderMetrics.class.getName());
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private static RenderMetrics instance;
+
+    private final EnumMap<RenderPhase, RollingStatistic> phases =
+            new EnumMap<RenderPhase, RollingStatistic>(RenderPhase.class);
+    private final RollingStatistic pixelsPerSecond = new RollingStatistic(WINDOW);
+    private final RollingStatistic meanIterations = new RollingStatistic(WINDOW);
+    private final RollingStatistic escapeRatio = new RollingStatistic(WINDOW);
+    private volatile long renderCount;
+    private volatile long totalIterations;
+    private volatile long cacheBytes;
+    private volatile long historyBytes;
+
+    /**
+     * Creates metrics with nothing recorded, which are not registered with
+     * JMX; the program's own metrics come from get.
+     */
+    RenderMetrics() {
+        for (RenderPhase phase : RenderPhase.values()) {
+            this.phases.put(phase, new RollingStatistic(WINDOW));
+        }
+    }
+
+    /**
+     * Returns the program's metrics, registering them with the platform MBean
+     * server the first time. If they cannot be registered they are still
+     * recorded, and a warning is logged.
+     *
+     * @return the metrics every render is recorded in
+     */
+    public static synchronized RenderMetrics get() {
+        if (instance == null) {
+            instance = new RenderMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                LOGGER.log(Level.WARNING, "Could not register render metrics", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Records how long one phase of rendering took.
+     *
+     * @param phase
+     *            the phase timed
+     * @param nanos
+     *            the wall time it took, from System.nanoTime
+     */
+    public void recordPhase(RenderPhase phase, long nanos) {
+        this.phases.get(phase).add(nanos / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Records a calculated frame: the time it took, and its iterations, from
+     * its cumulative histogram if it has one or else from its values. The
+     * summary is logged at FINE.
+     *
+     * @param nanos
+     *            the wall time the frame took to calculate
+     * @param data
+     *            the frame's iteration values
+     * @param cumulative
+     *            how many pixels of the frame have each value or less, as
+     *            from IterationHistogram; may be null
+     * @param maxIts
+     *            the maximum iterations the frame was calculated with
+     */
+    public void recordFrame(long nanos, int[] data, long[] cumulative, int maxIts) {
+        long total = 0;
+        long escaped = 0;
+        if (cumulative != null && cumulative.length == maxIts + 1) {
+            for (int n = 1; n <= maxIts; n++) {
+                total += n * (cumulative[n] - cumulative[n - 1]);
+            }
+            escaped = maxIts > 0 ? cumulative[maxIts - 1] : 0;
+        } else {
+            for (int i = 0; i < data.length; i++) {
+                int n = Math.min(data[i], maxIts);
+                total += Math.max(n, 0);
+                if (n < maxIts) {
+                    escaped++;
+                }
+            }
+        }
+        int pixels = Math.max(1, data.length);
+        this.recordPhase(RenderPhase.CALCULATE, nanos);
+        this.pixelsPerSecond.add(nanos > 0 ? data.length * NANOS_PER_SECOND / nanos : 0);
+        this.meanIterations.add((double) total / pixels);
+        this.escapeRatio.add((double) escaped / pixels);
+        this.totalIterations = total;
+        this.renderCount++;
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(this.getSummary());
+        }
+    }
+
+    /**
+     * Records the memory taken up by the frames kept for later.
+     *
+     * @param cacheBytes
+     *            the memory taken up by the tile cache
+     * @param historyBytes
+     *            the memory taken up by the history
+     */
+    public void recordMemory(long cacheBytes, long historyBytes) {
+        this.cacheBytes = cacheBytes;
+        this.historyBytes = historyBytes;
+    }
+
+    @Override
+    public long getRenderCount() {
+        return this.renderCount;
+    }
+
+    @Override
+    public double getLastCalculateMillis() {
+        return this.phases.get(RenderPhase.CALCULATE).getLast();
+    }
+
+    @Override
+    public double getMeanCalculateMillis() {
+        return this.phases.get(RenderPhase.CALCULATE).getMean();
+    }
+
+    @Override
+    public double getLastColourMillis() {
+        return this.phases.get(RenderPhase.COLOUR).getLast();
+    }
+
+    @Override
+    public double getMeanColourMillis() {
+        return this.phases.get(RenderPhase.COLOUR).getMean();
+    }
+
+    @Override
+    public double getLastPaintMillis() {
+        return this.phases.get(RenderPhase.PAINT).getLast();
+    }
+
+    @Override
+    public double getMeanPaintMillis() {
+        return this.phases.get(RenderPhase.PAINT).getMean();
+    }
+
+    @Override
+    public double getLastHistoryMillis() {
+        return this.phases.get(RenderPhase.HISTORY).getLast();
+    }
+
+    @Override
+    public double getMeanHistoryMillis() {
+        return this.phases.get(RenderPhase.HISTORY).getMean();
+    }
+
+    @Override
+    public double getLastPixelsPerSecond() {
+        return this.pixelsPerSecond.getLast();
+    }
+
+    @Override
+    public double getMeanPixelsPerSecond() {
+        return this.pixelsPerSecond.getMean();
+    }
+
+    @Override
+    public long getLastTotalIterations() {
+        return this.totalIterations;
+    }
+
+    @Override
+    public double getLastMeanIterations() {
+        return this.meanIterations.getLast();
+    }
+
+    @Override
+    public double getLastEscapeRatio() {
+        return this.escapeRatio.getLast();
+    }
+
+    @Override
+    public long getCacheBytes() {
+        return this.cacheBytes;
+    }
+
+    @Override
+    public long getHistoryBytes() {
+        return this.historyBytes;
+    }
+
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(this.renderCount).append(" frames;");
+        // phases which have not happened yet, such as painting when there is
+        // no display, are left out
+        for (RenderPhase phase : RenderPhase.values()) {
+            RollingStatistic times = this.phases.get(phase);
+            if (times.getSize() > 0) {
+                summary.append(String.format(Locale.ROOT, " %s %.1fms (max %.1fms),",
+                        phase.name().toLowerCase(Locale.ROOT), times.getMean(), times.getMax()));
+            }
+        }
+        if (this.pixelsPerSecond.getSize() > 0) {
+            summary.append(String.format(Locale.ROOT, " %.0f pixels/s, %.1f iterations/pixel, %.1f%% escaped;",
+                    this.pixelsPerSecond.getMean(), this.meanIterations.getMean(),
+                    100 * this.escapeRatio.getMean()));
+        }
+        summary.append(" cache ").append(this.cacheBytes >> 10).append("KB, history ")
+                .append(this.historyBytes >> 10).append("KB");
+        return summary.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (RollingStatistic times : this.phases.values()) {
+            times.clear();
+        }
+        this.pixelsPerSecond.clear();
+        this.meanIterations.clear();
+        this.escapeRatio.clear();
+        this.renderCount = 0;
+        this.totalIterations = 0;
+    }
+}
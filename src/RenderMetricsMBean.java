@@ -0,0 +1,133 @@
+/**
+ * The management interface of RenderMetrics, as shown by JConsole or any
+ * other JMX client under the name RenderMetrics.OBJECT_NAME. Times are in
+ * milliseconds; means are over the last RenderMetrics.WINDOW values.
+ *
+ */
+public interface RenderMetricsMBean {
+
+    /**
+     * Returns the number of frames recorded since the metrics were created
+     * or reset.
+     *
+     * @return the number of frames rendered
+     */
+    long getRenderCount();
+
+    /**
+     * Returns the time the last frame took to calculate.
+     *
+     * @return the time the last frame took to calculate
+     */
+    double getLastCalculateMillis();
+
+    /**
+     * Returns the mean time frames took to calculate.
+     *
+     * @return the mean time frames took to calculate
+     */
+    double getMeanCalculateMillis();
+
+    /**
+     * Returns the time the last colouring of the display took.
+     *
+     * @return the time the last colouring of the display took
+     */
+    double getLastColourMillis();
+
+    /**
+     * Returns the mean time colouring the display took.
+     *
+     * @return the mean time colouring the display took
+     */
+    double getMeanColourMillis();
+
+    /**
+     * Returns the time the last paint of the display took.
+     *
+     * @return the time the last paint of the display took
+     */
+    double getLastPaintMillis();
+
+    /**
+     * Returns the mean time painting the display took.
+     *
+     * @return the mean time painting the display took
+     */
+    double getMeanPaintMillis();
+
+    /**
+     * Returns the time the last frame took to store in the history.
+     *
+     * @return the time the last frame took to store in the history
+     */
+    double getLastHistoryMillis();
+
+    /**
+     * Returns the mean time frames took to store in the history.
+     *
+     * @return the mean time frames took to store in the history
+     */
+    double getMeanHistoryMillis();
+
+    /**
+     * Returns the pixels per second the last frame was calculated at.
+     *
+     * @return the pixels per second the last frame was calculated at
+     */
+    double getLastPixelsPerSecond();
+
+    /**
+     * Returns the mean pixels per second frames were calculated at.
+     *
+     * @return the mean pixels per second frames were calculated at
+     */
+    double getMeanPixelsPerSecond();
+
+    /**
+     * Returns the iterations of every pixel of the last frame, added up.
+     *
+     * @return the iterations of every pixel of the last frame, added up
+     */
+    long getLastTotalIterations();
+
+    /**
+     * Returns the mean iterations per pixel of the last frame.
+     *
+     * @return the mean iterations per pixel of the last frame
+     */
+    double getLastMeanIterations();
+
+    /**
+     * Returns the fraction of the last frame's pixels which escaped.
+     *
+     * @return the fraction of the last frame's pixels which escaped
+     */
+    double getLastEscapeRatio();
+
+    /**
+     * Returns the memory taken up by the tile cache after the last frame.
+     *
+     * @return the memory taken up by the tile cache after the last frame
+     */
+    long getCacheBytes();
+
+    /**
+     * Returns the memory taken up by the history after the last frame.
+     *
+     * @return the memory taken up by the history after the last frame
+     */
+    long getHistoryBytes();
+
+    /**
+     * Returns the rolling summary of every measurement, on one line.
+     *
+     * @return the rolling summary of every measurement, on one line
+     */
+    String getSummary();
+
+    /**
+     * Forgets every measurement.
+     */
+    void reset();
+}
@@ -0,0 +1,19 @@
+/**
+ * The stages a frame passes through on its way to the screen, each of which
+ * RenderMetrics times separately.
+ *
+ */
+public enum RenderPhase {
+
+    /** Calculating the frame's iteration values, on the render thread. */
+    CALCULATE,
+
+    /** Colouring the iteration values into the display's image. */
+    COLOUR,
+
+    /** Painting the display, including colouring it if it is stale. */
+    PAINT,
+
+    /** Storing the finished frame in the history. */
+    HISTORY
+}
@@ -0,0 +1,129 @@
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Calculates frames on a background thread so that the Swing event thread is
+ * never blocked by a render. Only the most recently submitted job matters:
+ * submitting a job cancels the one before it, and a finished frame is only
+ * handed to the listener, on the event thread, if its job is still the latest
+ * and has not been cancelled by then. A stale frame can therefore never
+ * replace a newer one. Progressive jobs also hand each coarse pass to the
+ * listener as a preview, under the same rule.
+ *
+ */
+public class Renderer {
+
+    private static final Logger LOGGER = Logger.getLogger(Renderer.class.getName());
+
+    private final ExecutorService executor;
+    private final RenderListener listener;
+
+    // the latest job; only read and written on the event thread
+    private RenderJob current;
+
+    /**
+     * Creates a renderer which passes its finished frames to listener.
+     *
+     * @param listener
+     *            the listener to receive finished frames
+     */
+    public Renderer(RenderListener listener) {
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Mandelbrot renderer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Cancels any job in progress and starts calculating the given one with
+     * the model. Must be called on the event thread.
+     *
+     * @param model
+     *            the model whose calculator will calculate the frame
+     * @param job
+     *            a snapshot of the frame to calculate
+     */
+    public void submit(final Model model, final RenderJob job) {
+        this.cancel();
+        this.current = job;
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (job.getToken().isCancelled()) {
+                    return;
+                }
+                final int[] mData;
+                try {
+                    mData = model.render(job, new PassListener() {
+                        @Override
+                        public void passFinished(int[] buffer, int step) {
+                            // the next pass writes into buffer while the
+                            // preview is being shown
+                            final int[] preview = Arrays.copyOf(buffer, buffer.length);
+                            SwingUtilities.invokeLater(new Runnable() {
+                                @Override
+                                public void run() {
+                                    Renderer.this.preview(job, preview);
+                                }
+                            });
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Render failed", e);
+                    return;
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        Renderer.this.deliver(job, mData);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns whether a job is being calculated or waiting to be delivered.
+     * Must be called on the event thread.
+     *
+     * @return true if a frame is on its way
+     */
+    public boolean isBusy() {
+        return this.current != null;
+    }
+
+    /**
+     * Cancels the job in progress, if any, so that its frame is never
+     * delivered. Must be called on the event thread.
+     */
+    public void cancel() {
+        if (this.current != null) {
+            this.current.getToken().cancel();
+            this.current = null;
+        }
+    }
+
+    private void preview(RenderJob job, int[] mData) {
+        if (job == this.current && !job.getToken().isCancelled()) {
+            this.listener.renderProgress(job, mData);
+        }
+    }
+
+    private void deliver(RenderJob job, int[] mData) {
+        if (job == this.current && !job.getToken().isCancelled()) {
+            this.current = null;
+            this.listener.renderFinished(job, mData);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.Arrays;
+
+/**
+ * Collects the last value of Z of each pixel of a frame which has not escaped
+ * while the frame is being calculated, from which its ResumeState is built
+ * once it is done. Kernels record into arrays covering the whole frame, so
+ * pixels may be recorded in any order and from several threads at once, as
+ * long as each pixel is only recorded by one of them.
+ *
+ */
+public class ResumeRecorder {
+
+    private final int xResolution;
+    private final int yResolution;
+    private final double[] zr;
+    private final double[] zi;
+
+    /**
+     * Creates a recorder for a frame of the given size, with no pixel
+     * recorded.
+     *
+     * @param xResolution
+     *            the number of pixels on the x-axis
+     * @param yResolution
+     *            the number of pixels on the y-axis
+     */
+    ResumeRecorder(int xResolution, int yResolution) {
+        this.xResolution = xResolution;
+        this.yResolution = yResolution;
+        this.zr = new double[xResolution * yResolution];
+        this.zi = new double[xResolution * yResolution];
+        Arrays.fill(this.zr, Double.NaN);
+    }
+
+    /**
+     * Records the last Z of a pixel which had not escaped after the maximum
+     * number of iterations.
+     *
+     * @param x
+     *            the pixel's x position
+     * @param y
+     *            the pixel's y position
+     * @param zr
+     *            the real part of Z
+     * @param zi
+     *            the imaginary part of Z
+     */
+    void record(int x, int y, double zr, double zi) {
+        int pixel = y * this.xResolution + x;
+        this.zr[pixel] = zr;
+        this.zi[pixel] = zi;
+    }
+
+    /**
+     * Records that a pixel is known to be inside the set, so it never needs
+     * iterating again.
+     *
+     * @param x
+     *            the pixel's x position
+     * @param y
+     *            the pixel's y position
+     */
+    void recordInterior(int x, int y) {
+        this.zr[y * this.xResolution + x] = ResumeState.INTERIOR;
+    }
+
+    /**
+     * Builds the state of the finished frame, keeping every pixel whose value
+     * is maxIterations.
+     *
+     * @param buffer
+     *            the row-major array holding the frame's iteration values
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows
+     * @param viewport
+     *            the area of the complex plane the frame shows
+     * @param maxIterations
+     *            the maximum number of iterations the frame was calculated
+     *            with
+     * @param radiusSquared
+     *            the squared escape radius
+     * @return the frame's state
+     */
+    ResumeState finish(int[] buffer, int offset, int stride, DeepViewport viewport, int maxIterations,
+            double radiusSquared) {
+        int count = 0;
+        for (int y = 0; y < this.yResolution; y++) {
+            int row = offset + y * stride;
+            for (int x = 0; x < this.xResolution; x++) {
+                if (buffer[row + x] == maxIterations) {
+                    count++;
+                }
+            }
+        }
+        int[] pixels = new int[count];
+        double[] keptZr = new double[count];
+        double[] keptZi = new double[count];
+        int kept = 0;
+        for (int y = 0; y < this.yResolution; y++) {
+            int row = offset + y * stride;
+            for (int x = 0; x < this.xResolution; x++) {
+                if (buffer[row + x] == maxIterations) {
+                    int pixel = y * this.xResolution + x;
+                    pixels[kept] = pixel;
+                    keptZr[kept] = this.zr[pixel];
+                    keptZi[kept] = this.zi[pixel];
+                    kept++;
+                }
+            }
+        }
+        return new ResumeState(viewport, this.xResolution, this.yResolution, maxIterations, radiusSquared, pixels,
+                keptZr, keptZi);
+    }
+}
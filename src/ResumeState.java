@@ -0,0 +1,192 @@
+/**
+ * The pixels of a calculated frame which had not escaped by its maximum
+ * number of iterations, each with the last value of Z it reached. When the
+ * maximum is raised, MandelbrotCalculator.calcMandelbrotSetResumed carries on
+ * iterating just these pixels from where they stopped, instead of calculating
+ * the whole frame again from Z = 0; every other pixel's value is already
+ * final. Only pixels with the frame's maximum value are kept, so the state
+ * takes up room in proportion to the inside of the set rather than the frame.
+ *
+ * A pixel's Z is NaN if it was never recorded, which happens to pixels filled
+ * in by rectangle subdivision and to pixels that escaped on the very last
+ * iteration; such pixels are calculated again from the start. It is INTERIOR
+ * for pixels known to be inside the set, which only need their value raised.
+ *
+ */
+public class ResumeState {
+
+    // the Z of a pixel found to be inside the set by the cardioid/bulb check
+    // or the periodicity check
+    static final double INTERIOR = Double.POSITIVE_INFINITY;
+
+    private final DeepViewport viewport;
+    private final int xResolution;
+    private final int yResolution;
+    private final int maxIterations;
+    private final double radiusSquared;
+    // y * xResolution + x of each pixel, with the real and imaginary parts of
+    // its Z at the same index
+    private final int[] pixels;
+    private final double[] zr;
+    private final double[] zi;
+
+    /**
+     * Creates the state of a frame.
+     *
+     * @param viewport
+     *            the area of the complex plane the frame shows
+     * @param xResolution
+     *            the number of pixels on the x-axis
+     * @param yResolution
+     *            the number of pixels on the y-axis
+     * @param maxIterations
+     *            the maximum number of iterations the frame was calculated
+     *            with
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param pixels
+     *            the index of each pixel kept
+     * @param zr
+     *            the real part of each pixel's Z
+     * @param zi
+     *            the imaginary part of each pixel's Z
+     */
+    ResumeState(DeepViewport viewport, int xResolution, int yResolution, int maxIterations, double radiusSquared,
+            int[] pixels, double[] zr, double[] zi) {
+        this.viewport = viewport;
+        this.xResolution = xResolution;
+        this.yResolution = yResolution;
+        this.maxIterations = maxIterations;
+        this.radiusSquared = radiusSquared;
+        this.pixels = pixels;
+        this.zr = zr;
+        this.zi = zi;
+    }
+
+    /**
+     * Returns whether a frame with the given values can be calculated by
+     * resuming from this state: it must show the same area at the same size
+     * and escape radius, with a higher maximum number of iterations.
+     *
+     * @param viewport
+     *            the area of the complex plane to calculate
+     * @param xResolution
+     *            the number of pixels on the x-axis
+     * @param yResolution
+     *            the number of pixels on the y-axis
+     * @param maxIterations
+     *            the new maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @return true if calcMandelbrotSetResumed may be used
+     */
+    public boolean canResume(DeepViewport viewport, int xResolution, int yResolution, int maxIterations,
+            double radiusSquared) {
+        return this.viewport.equals(viewport) && this.xResolution == xResolution
+                && this.yResolution == yResolution && this.radiusSquared == radiusSquared
+                && maxIterations > this.maxIterations;
+    }
+
+    /**
+     * Returns the state left after resuming this one up to maxIterations,
+     * keeping the pixels which still have not escaped.
+     *
+     * @param maxIterations
+     *            the maximum number of iterations resumed to
+     * @param nextZr
+     *            the real part of each of this state's pixels' new Z, or NaN
+     *            if it has escaped
+     * @param nextZi
+     *            the imaginary part of each new Z
+     * @return the new state
+     */
+    ResumeState next(int maxIterations, double[] nextZr, double[] nextZi) {
+        int count = 0;
+        for (int i = 0; i < this.pixels.length; i++) {
+            if (!Double.isNaN(nextZr[i])) {
+                count++;
+            }
+        }
+        int[] nextPixels = new int[count];
+        double[] keptZr = new double[count];
+        double[] keptZi = new double[count];
+        int kept = 0;
+        for (int i = 0; i < this.pixels.length; i++) {
+            if (!Double.isNaN(nextZr[i])) {
+                nextPixels[kept] = this.pixels[i];
+                keptZr[kept] = nextZr[i];
+                keptZi[kept] = nextZi[i];
+                kept++;
+            }
+        }
+        return new ResumeState(this.viewport, this.xResolution, this.yResolution, maxIterations,
+                this.radiusSquared, nextPixels, keptZr, keptZi);
+    }
+
+    /**
+     * Returns the area of the complex plane the frame shows.
+     *
+     * @return the frame's viewport
+     */
+    public DeepViewport getViewport() {
+        return this.viewport;
+    }
+
+    /**
+     * Returns the number of pixels on the x-axis.
+     *
+     * @return the frame's width
+     */
+    public int getXResolution() {
+        return this.xResolution;
+    }
+
+    /**
+     * Returns the number of pixels on the y-axis.
+     *
+     * @return the frame's height
+     */
+    public int getYResolution() {
+        return this.yResolution;
+    }
+
+    /**
+     * Returns the maximum number of iterations the pixels have reached.
+     *
+     * @return the frame's maximum iterations
+     */
+    public int getMaxIterations() {
+        return this.maxIterations;
+    }
+
+    /**
+     * Returns the squared escape radius.
+     *
+     * @return the frame's squared escape radius
+     */
+    public double getRadiusSquared() {
+        return this.radiusSquared;
+    }
+
+    /**
+     * Returns the number of pixels kept, which is the number a resume will
+     * iterate.
+     *
+     * @return the number of pixels which had not escaped
+     */
+    public int getPixelCount() {
+        return this.pixels.length;
+    }
+
+    int[] getPixels() {
+        return this.pixels;
+    }
+
+    double[] getZr() {
+        return this.zr;
+    }
+
+    double[] getZi() {
+        return this.zi;
+    }
+}
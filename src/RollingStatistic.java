@@ -0,0 +1,100 @@
+/**
+ * Keeps the most recent values of a measurement in a ring, so that their
+ * mean and extremes can be reported without keeping every value ever
+ * recorded. All methods may be called from any thread.
+ *
+ */
+public class RollingStatistic {
+
+    private final double[] values;
+    // the index the next value is stored at, and the number of values
+    // stored, at most values.length
+    private int next;
+    private int size;
+
+    /**
+     * Creates an empty statistic.
+     *
+     * @param window
+     *            the number of most recent values to keep
+     */
+    public RollingStatistic(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Invalid window " + window);
+        }
+        this.values = new double[window];
+    }
+
+    /**
+     * Records a value, dropping the oldest if the window is full.
+     *
+     * @param value
+     *            the value to record
+     */
+    public synchronized void add(double value) {
+        this.values[this.next] = value;
+        this.next = (this.next + 1) % this.values.length;
+        this.size = Math.min(this.size + 1, this.values.length);
+    }
+
+    /**
+     * Returns the most recently recorded value.
+     *
+     * @return the last value, or NaN if there is none
+     */
+    public synchronized double getLast() {
+        if (this.size == 0) {
+            return Double.NaN;
+        }
+        return this.values[(this.next + this.values.length - 1) % this.values.length];
+    }
+
+    /**
+     * Returns the mean of the values in the window.
+     *
+     * @return the mean, or NaN if there are no values
+     */
+    public synchronized double getMean() {
+        if (this.size == 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (int i = 0; i < this.size; i++) {
+            sum += this.values[i];
+        }
+        return sum / this.size;
+    }
+
+    /**
+     * Returns the largest value in the window.
+     *
+     * @return the largest value, or NaN if there are no values
+     */
+    public synchronized double getMax() {
+        if (this.size == 0) {
+            return Double.NaN;
+        }
+        double max = this.values[0];
+        for (int i = 1; i < this.size; i++) {
+            max = Math.max(max, this.values[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the number of values in the window.
+     *
+     * @return how many values the mean and maximum are over
+     */
+    public synchronized int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Forgets every value.
+     */
+    public synchronized void clear() {
+        this.next = 0;
+        this.size = 0;
+    }
+}
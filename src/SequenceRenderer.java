@@ -0,0 +1,403 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Deflater;
+
+/**
+ * Renders the frames of a zoom from one viewport to another as numbered PNG
+ * files from the command line, without a display, for making into a video.
+ *
+ * <pre>
+ * java SequenceRenderer [options] output-directory
+ *   --start RE,IM,SPAN    centre and real span of the first frame (the
+ *                         initial view)
+ *   --end RE,IM,SPAN      centre and real span of the last frame
+ *   --frames N            number of frames (100)
+ *   --size WxH            size of the frames in pixels (900x900)
+ *   --its N               maximum iterations (50)
+ *   --colours N           built in colour mode, 0 to 5 (1)
+ *   --palette FILE        palette file to colour with instead
+ *   --smooth              colour by continuous escape values
+ *   --keyframe-scale K    resolution of keyframes over that of the frames;
+ *                         1 calculates every frame (2)
+ *   --level N             compression level, 0 to 9 (6)
+ * </pre>
+ *
+ * The span shrinks or grows by the same factor from each frame to the next,
+ * and the centre moves so that the end centre stays still on screen, as it
+ * would zooming straight into it. The imaginary span is the real span scaled
+ * by the height over the width.
+ *
+ * Consecutive frames of a zoom show nearly the same area, so frames are not
+ * calculated one by one. Instead a keyframe K times the resolution of a frame
+ * is calculated for the widest frame not yet written, and every frame which
+ * lies inside it at no more than its resolution, up to K times narrower, is
+ * resampled from it, each pixel taking the value of the keyframe pixel at its
+ * place. A zoom by a factor Z then costs about K * K * log(Z) / log(K) frames
+ * of calculation, however many frames it has.
+ *
+ * The work is pipelined: while the calculator's pool calculates the next
+ * keyframe, the frames of the last are resampled, coloured and written on
+ * threads of their own, and each frame's PNG is compressed on the common
+ * fork/join pool, so that every core stays busy.
+ *
+ */
+public class SequenceRenderer {
+
+    private static final int DEFAULT_SIZE = 900;
+    private static final int DEFAULT_FRAMES = 100;
+    private static final int DEFAULT_COLOUR_MODE = 1;
+    private static final int DEFAULT_KEYFRAME_SCALE = 2;
+    private static final int DEFAULT_LEVEL = 6;
+    // the keyframes whose frames may be being written at once; one is
+    // written while the next is calculated
+    private static final int KEYFRAMES_IN_FLIGHT = 2;
+    // how far a frame's pixels may be past the keyframe's resolution, to
+    // allow for rounding
+    private static final double RESOLUTION_TOLERANCE = 1e-9;
+    private static final String USAGE = "Usage: java SequenceRenderer [--start RE,IM,SPAN] [--end RE,IM,SPAN] "
+            + "[--frames N] [--size WxH] [--its N] [--colours N] [--palette FILE] [--smooth] "
+            + "[--keyframe-scale K] [--level N] output-directory";
+
+    private int width = DEFAULT_SIZE;
+    private int height = DEFAULT_SIZE;
+    private DeepViewport start;
+    private DeepViewport end;
+    private int frames = DEFAULT_FRAMES;
+    private int maxIts = MandelbrotCalculator.INITIAL_MAX_ITERATIONS;
+    private int colourMode = DEFAULT_COLOUR_MODE;
+    private Palette palette;
+    private boolean smooth;
+    private int keyframeScale = DEFAULT_KEYFRAME_SCALE;
+    private int level = DEFAULT_LEVEL;
+    private File directory;
+
+    private Palette colouring;
+    private int[] table;
+
+    /**
+     * Renders the sequence described by the arguments.
+     *
+     * @param args
+     *            the options and output directory, as above
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        SequenceRenderer renderer = new SequenceRenderer();
+        try {
+            renderer.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        try {
+            renderer.render();
+        } catch (IOException e) {
+            System.err.println("Could not write the sequence: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    private void parse(String[] args) throws IOException {
+        String startText = null;
+        String endText = null;
+        int i = 0;
+        try {
+            for (; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--smooth")) {
+                    this.smooth = true;
+                } else if (!arg.startsWith("--")) {
+                    if (this.directory != null) {
+                        throw new IllegalArgumentException("More than one output directory given");
+                    }
+                    this.directory = new File(arg);
+                } else if (i + 1 == args.length) {
+                    throw new IllegalArgumentException(arg + " needs a value");
+                } else if (arg.equals("--start")) {
+                    startText = args[++i];
+                } else if (arg.equals("--end")) {
+                    endText = args[++i];
+                } else if (arg.equals("--frames")) {
+                    this.frames = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--size")) {
+                    String[] size = args[++i].split("x");
+                    if (size.length != 2) {
+                        throw new IllegalArgumentException("Size must be WxH: " + args[i]);
+                    }
+                    this.width = Integer.parseInt(size[0]);
+                    this.height = Integer.parseInt(size[1]);
+                } else if (arg.equals("--its")) {
+                    this.maxIts = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--colours")) {
+                    this.colourMode = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--palette")) {
+                    this.palette = Palette.load(new File(args[++i]));
+                } else if (arg.equals("--keyframe-scale")) {
+                    this.keyframeScale = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--level")) {
+                    this.level = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + args[i]);
+        }
+
+        if (this.directory == null) {
+            throw new IllegalArgumentException("No output directory given");
+        }
+        if (this.width < 1 || this.height < 1) {
+            throw new IllegalArgumentException("Invalid size " + this.width + "x" + this.height);
+        }
+        if (this.frames < 1) {
+            throw new IllegalArgumentException("Invalid number of frames " + this.frames);
+        }
+        if (this.maxIts < 1) {
+            throw new IllegalArgumentException("Invalid maximum iterations " + this.maxIts);
+        }
+        if (this.colourMode < 0 || this.colourMode > new Colours().getNumOfColours()) {
+            throw new IllegalArgumentException("Invalid colour mode " + this.colourMode);
+        }
+        if (this.keyframeScale < 1) {
+            throw new IllegalArgumentException("Invalid keyframe scale " + this.keyframeScale);
+        }
+        if (this.level < Deflater.NO_COMPRESSION || this.level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + this.level);
+        }
+        double initialSpan = MandelbrotCalculator.INITIAL_MAX_REAL - MandelbrotCalculator.INITIAL_MIN_REAL;
+        this.start = startText != null ? this.parseViewport(startText)
+                : new DeepViewport(BigDecimal.valueOf(
+                        (MandelbrotCalculator.INITIAL_MIN_REAL + MandelbrotCalculator.INITIAL_MAX_REAL) / 2),
+                        BigDecimal.ZERO, initialSpan, initialSpan * this.height / this.width);
+        this.end = endText != null ? this.parseViewport(endText) : this.start;
+    }
+
+    private DeepViewport parseViewport(String text) {
+        String[] parts = text.split(",");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("A view must be RE,IM,SPAN: " + text);
+        }
+        double span = Double.parseDouble(parts[2].trim());
+        if (!(span > 0) || Double.isInfinite(span)) {
+            throw new IllegalArgumentException("Invalid span " + parts[2]);
+        }
+        return new DeepViewport(new BigDecimal(parts[0].trim()), new BigDecimal(parts[1].trim()), span,
+                span * this.height / this.width);
+    }
+
+    /**
+     * Returns the viewport of one frame of the sequence. The span of frame i
+     * is start * (end / start)^t for t = i / (frames - 1), and its centre is
+     * end - (end - start) * g, where g = (span / start - end / start) / (1 -
+     * end / start) falls from 1 to 0 as the span shrinks, keeping the end
+     * centre still on screen. Working out the centre back from the end keeps
+     * it exact enough however deep the end is.
+     */
+    private DeepViewport frame(int i) {
+        if (this.frames == 1) {
+            return this.start;
+        }
+        double t = (double) i / (this.frames - 1);
+        double ratio = this.end.getRealSpan() / this.start.getRealSpan();
+        double scale = Math.pow(ratio, t);
+        // a pan without a zoom moves the centre evenly
+        double g = Math.abs(1 - ratio) < RESOLUTION_TOLERANCE ? 1 - t : (scale - ratio) / (1 - ratio);
+        DeepViewport deeper = ratio < 1 ? this.end : this.start;
+        MathContext mc = deeper.getMathContext(this.width, this.height);
+        BigDecimal fraction = new BigDecimal(g);
+        BigDecimal centreReal = this.end.getCentreReal()
+                .subtract(this.end.getCentreReal().subtract(this.start.getCentreReal()).multiply(fraction, mc), mc);
+        BigDecimal centreImag = this.end.getCentreImag()
+                .subtract(this.end.getCentreImag().subtract(this.start.getCentreImag()).multiply(fraction, mc), mc);
+        double realSpan = this.start.getRealSpan() * scale;
+        return new DeepViewport(centreReal, centreImag, realSpan, realSpan * this.height / this.width);
+    }
+
+    /**
+     * Calculates the keyframes and writes out the frames in order of
+     * decreasing span, so that each keyframe serves as many frames as it can.
+     */
+    private void render() throws IOException {
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("Could not create " + this.directory);
+        }
+        Colours modes = new Colours();
+        int mode = this.palette != null ? modes.addPalette(this.palette) : this.colourMode;
+        this.colouring = modes.getPalette(mode);
+        // shared by every frame, so worked out before any are written
+        this.table = modes.getTable(mode, this.maxIts);
+
+        ArrayList<Integer> order = new ArrayList<Integer>();
+        boolean zoomingOut = this.end.getRealSpan() > this.start.getRealSpan();
+        for (int i = 0; i < this.frames; i++) {
+            order.add(zoomingOut ? this.frames - 1 - i : i);
+        }
+
+        MandelbrotCalculator calculator = new MandelbrotCalculator();
+        int keyWidth = this.width * this.keyframeScale;
+        int keyHeight = this.height * this.keyframeScale;
+        ExecutorService writers = Executors.newFixedThreadPool(Math.max(1, calculator.getParallelism()),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Sequence writer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // the frames being written of each keyframe in flight, oldest first
+        ArrayDeque<ArrayList<Future<Void>>> inFlight = new ArrayDeque<ArrayList<Future<Void>>>();
+        System.out.println("Rendering " + this.frames + " frames of " + this.width + "x" + this.height + " from "
+                + this.start + " to " + this.end);
+        long startTime = System.nanoTime();
+        int keyframes = 0;
+        try {
+            int next = 0;
+            while (next < order.size()) {
+                // the frames of old keyframes are finished before another is
+                // calculated, so that only a few are held at once
+                while (inFlight.size() >= KEYFRAMES_IN_FLIGHT) {
+                    waitFor(inFlight.poll());
+                }
+                final DeepViewport key = this.frame(order.get(next));
+                final int[] values = new int[keyWidth * keyHeight];
+                calculator.calcMandelbrotSetInto(values, 0, keyWidth, keyWidth, keyHeight, key, this.maxIts,
+                        MandelbrotCalculator.DEFAULT_RADIUS_SQUARED, false);
+                final float[] smoothValues = this.smooth ? calculator.calcSmooth(values, 0, keyWidth, keyWidth,
+                        keyHeight, key, this.maxIts, CancellationToken.NONE) : null;
+                keyframes++;
+
+                ArrayList<Future<Void>> written = new ArrayList<Future<Void>>();
+                do {
+                    final int index = order.get(next);
+                    final DeepViewport view = this.frame(index);
+                    if (written.size() > 0 && !this.fits(view, key, keyWidth, keyHeight)) {
+                        break;
+                    }
+                    written.add(writers.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            SequenceRenderer.this.writeFrame(index, view, key, values, smoothValues);
+                            return null;
+                        }
+                    }));
+                    next++;
+                } while (next < order.size());
+                inFlight.add(written);
+            }
+            while (!inFlight.isEmpty()) {
+                waitFor(inFlight.poll());
+            }
+        } finally {
+            writers.shutdownNow();
+        }
+        System.out.println("Wrote " + this.frames + " frames from " + keyframes + " keyframes in "
+                + (System.nanoTime() - startTime) / 1000000 + "ms");
+    }
+
+    private static void waitFor(ArrayList<Future<Void>> written) throws IOException {
+        try {
+            for (Future<Void> frame : written) {
+                frame.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the position of a frame's left and top edges in keyframe
+     * pixels, worked out from the difference of their centres so that it is
+     * exact enough at any depth.
+     */
+    private double[] origin(DeepViewport view, DeepViewport key, int keyWidth, int keyHeight) {
+        double realStep = key.getRealSpan() / keyWidth;
+        double imagStep = key.getImagSpan() / keyHeight;
+        double centreReal = view.getCentreReal().subtract(key.getCentreReal()).doubleValue();
+        double centreImag = view.getCentreImag().subtract(key.getCentreImag()).doubleValue();
+        return new double[] {(centreReal - view.getRealSpan() / 2 + key.getRealSpan() / 2) / realStep,
+                (centreImag - view.getImagSpan() / 2 + key.getImagSpan() / 2) / imagStep};
+    }
+
+    /**
+     * Returns whether a frame can be resampled from a keyframe: whether it
+     * lies wholly inside it, with no more pixels to the unit than it has.
+     */
+    private boolean fits(DeepViewport view, DeepViewport key, int keyWidth, int keyHeight) {
+        double xScale = view.getRealSpan() / this.width / (key.getRealSpan() / keyWidth);
+        double yScale = view.getImagSpan() / this.height / (key.getImagSpan() / keyHeight);
+        if (xScale < 1 - RESOLUTION_TOLERANCE || yScale < 1 - RESOLUTION_TOLERANCE) {
+            return false;
+        }
+        double[] origin = this.origin(view, key, keyWidth, keyHeight);
+        return Math.round(origin[0]) >= 0 && Math.round(origin[1]) >= 0
+                && Math.round(origin[0] + (this.width - 1) * xScale) < keyWidth
+                && Math.round(origin[1] + (this.height - 1) * yScale) < keyHeight;
+    }
+
+    /**
+     * Resamples one frame from its keyframe, colours it and writes it out.
+     */
+    private void writeFrame(int index, DeepViewport view, DeepViewport key, int[] values, float[] smoothValues)
+            throws IOException {
+        int keyWidth = this.width * this.keyframeScale;
+        int keyHeight = this.height * this.keyframeScale;
+        double xScale = view.getRealSpan() / this.width / (key.getRealSpan() / keyWidth);
+        double yScale = view.getImagSpan() / this.height / (key.getImagSpan() / keyHeight);
+        double[] origin = this.origin(view, key, keyWidth, keyHeight);
+        // the keyframe column of each of the frame's columns
+        int[] columns = new int[this.width];
+        for (int x = 0; x < this.width; x++) {
+            columns[x] = (int) Math.max(0, Math.min(keyWidth - 1, Math.round(origin[0] + x * xScale)));
+        }
+        int[] pixels = new int[this.width * this.height];
+        for (int y = 0; y < this.height; y++) {
+            int row = (int) Math.max(0, Math.min(keyHeight - 1, Math.round(origin[1] + y * yScale)));
+            int from = row * keyWidth;
+            int to = y * this.width;
+            for (int x = 0; x < this.width; x++) {
+                int k = from + columns[x];
+                if (smoothValues != null) {
+                    pixels[to + x] = this.colouring.colourAt(smoothValues[k], this.maxIts);
+                } else if (this.table != null) {
+                    int n = values[k];
+                    pixels[to + x] = this.table[n < 0 ? 0 : n > this.maxIts ? this.maxIts : n];
+                } else {
+                    pixels[to + x] = this.colouring.colourOf(values[k], this.maxIts);
+                }
+            }
+        }
+        File file = new File(this.directory, String.format("frame%05d.png", index));
+        PngWriter png = new PngWriter(new BufferedOutputStream(new FileOutputStream(file)), this.width, this.height,
+                this.level);
+        try {
+            png.writeRows(pixels, 0, this.width, this.height);
+        } finally {
+            png.close();
+        }
+        System.out.println("Frame " + index + " written");
+    }
+}
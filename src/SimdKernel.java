@@ -0,0 +1,281 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A TileKernel which uses the Java Vector API to iterate a whole vector's
+ * width of the pixels of a row at once. Each lane stops counting
+ * once its pixel has escaped, and the loop only ends when every lane has
+ * escaped or maxIterations is reached. The pixels of a vector need not be
+ * neighbours, so the spread out pixels of a progressive pass (see
+ * calcSpaced) are calculated as quickly as whole rows. Pixels left over at
+ * the end of a row are calculated one at a time by
+ * MandelbrotCalculator.calcMandel.
+ *
+ * The kernel does exactly the same arithmetic as calcMandel in the same
+ * order, so its results are identical (SimdKernelTest checks this).
+ *
+ * Given a ResumeRecorder, the kernel records the last Z of each lane still
+ * active when maxIterations is reached, which is then exactly the Z
+ * calcMandel would have reached.
+ *
+ * This class needs the jdk.incubator.vector module, so it must only be used
+ * when MandelbrotCalculator.SIMD_AVAILABLE is true.
+ *
+ */
+public class SimdKernel implements TileKernel {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    // lane numbers 0, 1, 2... used to work out each lane's x position
+    private static final double[] LANE_OFFSETS = new double[DOUBLES.length()];
+
+    static {
+        for (int i = 0; i < LANE_OFFSETS.length; i++) {
+            LANE_OFFSETS[i] = i;
+        }
+    }
+
+    private final TileGrid grid;
+    // the frame's left edge in grid pixels, which a double holds exactly
+    private final double originX;
+    private final double realStep;
+    private final int maxIterations;
+    private final double radiusSquared;
+    private final boolean bulbCheck;
+    private final KernelStats stats;
+    private final ResumeRecorder recorder;
+
+    /**
+     * Creates a kernel for the given frame.
+     *
+     * @param grid
+     *            the grid the frame's pixels lie on
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param bulbCheck
+     *            true to give points inside the main cardioid and period-2
+     *            bulb maxIterations without iterating them
+     * @param stats
+     *            the counters to record the work done in
+     * @param recorder
+     *            records the state of the pixels which do not escape; may be
+     *            null
+     */
+    SimdKernel(TileGrid grid, int maxIterations, double radiusSquared, boolean bulbCheck, KernelStats stats,
+            ResumeRecorder recorder) {
+        this.grid = grid;
+        this.originX = grid.getOriginX();
+        this.realStep = grid.getRealStep();
+        this.maxIterations = maxIterations;
+        this.radiusSquared = radiusSquared;
+        this.bulbCheck = bulbCheck;
+        this.stats = stats;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Returns whether this machine's vectors hold more than one double, so
+     * that using this kernel is worthwhile.
+     *
+     * @return true if the preferred double vector has at least two lanes
+     */
+    static boolean isUseful() {
+        return DOUBLES.length() >= 2;
+    }
+
+    @Override
+    public void calcTile(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+        this.calcSpaced(buffer, offset, stride, x0, y0, x1, y1, 1, 1);
+    }
+
+    @Override
+    public void calcSpaced(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1, int xStep,
+            int yStep) {
+        // the x of each lane relative to the first, and room for the lanes'
+        // values, shared by every row
+        DoubleVector laneXs = DoubleVector.fromArray(DOUBLES, LANE_OFFSETS, 0).mul(xStep);
+        double[] counts = new double[DOUBLES.length()];
+        double[] zrs = this.recorder == null ? null : new double[DOUBLES.length()];
+        double[] zis = this.recorder == null ? null : new double[DOUBLES.length()];
+        double[] z = new double[2];
+        int rowPixels = x0 < x1 ? (x1 - x0 + xStep - 1) / xStep : 0;
+        for (int y = y0; y < y1; y += yStep) {
+            double cImaginary = this.grid.imagAt(y);
+            int skipped = this.calcRow(buffer, offset + y * stride, x0, x1, xStep, y, cImaginary, laneXs, counts,
+                    zrs, zis, z);
+            this.stats.addRow(rowPixels, skipped, 0);
+        }
+    }
+
+    /**
+     * Calculates the pixels of row y from x0 up to but not including x1 that
+     * are a whole number of xStep pixels right of x0, writing each to
+     * buffer[row + x], and returns how many of them were skipped by the bulb
+     * check.
+     */
+    private int calcRow(int[] buffer, int row, int x0, int x1, int xStep, int y, double cImaginary,
+            DoubleVector laneXs, double[] counts, double[] zrs, double[] zis, double[] z) {
+        int lanes = DOUBLES.length();
+        DoubleVector ci = DoubleVector.broadcast(DOUBLES, cImaginary);
+        int span = lanes * xStep;
+        int skipped = 0;
+
+        int x = x0;
+        for (; x + span - xStep < x1; x += span) {
+            // (originX + x) * realStep, as in the scalar loop; the sum is
+            // a whole number, so is exact
+            DoubleVector cr = laneXs.add(this.originX + x).mul(this.realStep);
+            VectorMask<Double> active = DOUBLES.maskAll(true);
+            VectorMask<Double> inBulb = DOUBLES.maskAll(false);
+            if (this.bulbCheck) {
+                inBulb = inMainCardioidOrBulb(cr, ci);
+                active = active.andNot(inBulb);
+                skipped += inBulb.trueCount();
+            }
+
+            DoubleVector zr = DoubleVector.zero(DOUBLES);
+            DoubleVector zi = DoubleVector.zero(DOUBLES);
+            DoubleVector count = DoubleVector.zero(DOUBLES);
+            for (int i = 0; i < this.maxIterations && active.anyTrue(); i++) {
+                DoubleVector zr2 = zr.mul(zr);
+                DoubleVector zi2 = zi.mul(zi);
+                count = count.add(1, active);
+                active = active.andNot(zr2.add(zi2).compare(VectorOperators.GT, this.radiusSquared));
+                zi = zr.mul(2).mul(zi).add(ci);
+                zr = zr2.sub(zi2).add(cr);
+            }
+            count.blend(this.maxIterations, inBulb).intoArray(counts, 0);
+            for (int lane = 0; lane < lanes; lane++) {
+                buffer[row + x + lane * xStep] = (int) counts[lane];
+            }
+            if (this.recorder != null) {
+                zr.intoArray(zrs, 0);
+                zi.intoArray(zis, 0);
+                for (int lane = 0; lane < lanes; lane++) {
+                    if (inBulb.laneIsSet(lane)) {
+                        this.recorder.recordInterior(x + lane * xStep, y);
+                    } else if (active.laneIsSet(lane)) {
+                        this.recorder.record(x + lane * xStep, y, zrs[lane], zis[lane]);
+                    }
+                }
+            }
+        }
+        return skipped + this.calcRemainder(buffer, row, x, x1, xStep, y, cImaginary, z);
+    }
+
+    /**
+     * Carries pixels 0 (inclusive) to count (exclusive) on from the Z given in
+     * zr and zi after fromIterations, as MandelbrotCalculator.calcMandelFrom
+     * does without the periodicity check, a vector's width of pixels at a
+     * time. The pixels need not be neighbours. Each pixel's result is written
+     * to results, and the Z of those which do not escape is left in zr and
+     * zi.
+     *
+     * @param cr
+     *            the real part of each pixel's C
+     * @param ci
+     *            the imaginary part of each pixel's C
+     * @param zr
+     *            the real part of each pixel's Z, in and out
+     * @param zi
+     *            the imaginary part of each pixel's Z, in and out
+     * @param count
+     *            the number of pixels
+     * @param fromIterations
+     *            the number of iterations already done to reach Z
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param results
+     *            receives the number of iterations for each pixel to escape,
+     *            or MandelbrotCalculator.NOT_ESCAPED
+     */
+    static void iterateFrom(double[] cr, double[] ci, double[] zr, double[] zi, int count, int fromIterations,
+            int maxIterations, double radiusSquared, int[] results) {
+        int lanes = DOUBLES.length();
+        double[] counts = new double[lanes];
+        int i = 0;
+        for (; i + lanes <= count; i += lanes) {
+            DoubleVector vcr = DoubleVector.fromArray(DOUBLES, cr, i);
+            DoubleVector vci = DoubleVector.fromArray(DOUBLES, ci, i);
+            DoubleVector vzr = DoubleVector.fromArray(DOUBLES, zr, i);
+            DoubleVector vzi = DoubleVector.fromArray(DOUBLES, zi, i);
+            DoubleVector iterations = DoubleVector.broadcast(DOUBLES, fromIterations);
+            VectorMask<Double> active = DOUBLES.maskAll(true);
+            for (int n = fromIterations; n < maxIterations && active.anyTrue(); n++) {
+                DoubleVector zr2 = vzr.mul(vzr);
+                DoubleVector zi2 = vzi.mul(vzi);
+                iterations = iterations.add(1, active);
+                active = active.andNot(zr2.add(zi2).compare(VectorOperators.GT, radiusSquared));
+                vzi = vzr.mul(2).mul(vzi).add(vci);
+                vzr = zr2.sub(zi2).add(vcr);
+            }
+            iterations.intoArray(counts, 0);
+            vzr.intoArray(zr, i);
+            vzi.intoArray(zi, i);
+            for (int lane = 0; lane < lanes; lane++) {
+                results[i + lane] = active.laneIsSet(lane) ? MandelbrotCalculator.NOT_ESCAPED : (int) counts[lane];
+            }
+        }
+        double[] z = new double[2];
+        for (; i < count; i++) {
+            z[0] = zr[i];
+            z[1] = zi[i];
+            results[i] = MandelbrotCalculator.calcMandelFrom(cr[i], ci[i], fromIterations, maxIterations,
+                    radiusSquared, false, z);
+            zr[i] = z[0];
+            zi[i] = z[1];
+        }
+    }
+
+    /**
+     * Calculates the pixels at the end of a row that do not fill a vector,
+     * returning how many were skipped by the bulb check.
+     */
+    private int calcRemainder(int[] buffer, int row, int x0, int x1, int xStep, int y, double cImaginary,
+            double[] z) {
+        int skipped = 0;
+        for (int x = x0; x < x1; x += xStep) {
+            int index = row + x;
+            double cReal = this.grid.realAt(x);
+            if (this.bulbCheck && MandelbrotCalculator.isInMainCardioidOrBulb(cReal, cImaginary)) {
+                buffer[index] = this.maxIterations;
+                skipped++;
+                if (this.recorder != null) {
+                    this.recorder.recordInterior(x, y);
+                }
+            } else if (this.recorder != null) {
+                z[0] = 0;
+                z[1] = 0;
+                int iterations = MandelbrotCalculator.calcMandelFrom(cReal, cImaginary, 0, this.maxIterations,
+                        this.radiusSquared, false, z);
+                if (iterations == MandelbrotCalculator.NOT_ESCAPED) {
+                    iterations = this.maxIterations;
+                    this.recorder.record(x, y, z[0], z[1]);
+                }
+                buffer[index] = iterations;
+            } else {
+                buffer[index] = MandelbrotCalculator.calcMandel(cReal, cImaginary, this.maxIterations,
+                        this.radiusSquared);
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * The lane-wise version of MandelbrotCalculator.isInMainCardioidOrBulb.
+     */
+    private static VectorMask<Double> inMainCardioidOrBulb(DoubleVector cr, DoubleVector ci) {
+        DoubleVector ci2 = ci.mul(ci);
+        DoubleVector xp1 = cr.add(1);
+        VectorMask<Double> bulb = xp1.mul(xp1).add(ci2).compare(VectorOperators.LT, 0.0625);
+        DoubleVector xq = cr.sub(0.25);
+        DoubleVector q = xq.mul(xq).add(ci2);
+        return bulb.or(q.mul(q.add(xq)).compare(VectorOperators.LT, ci2.mul(0.25)));
+    }
+}
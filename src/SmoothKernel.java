@@ -0,0 +1,94 @@
+/**
+ * Works out the continuous escape value of the pixels of a frame whose
+ * iteration values have already been calculated, so that the frame can be
+ * coloured without bands. Unlike other kernels it reads the iteration values
+ * in the buffer rather than writing them, and writes the continuous values to
+ * its own float array at the same indices.
+ *
+ * The continuous value of a pixel which escaped is k + 1 - log2(ln|Z_k| /
+ * ln 2), where Z_k is the first value of Z outside BAILOUT_SQUARED. The large
+ * bailout makes the value very nearly continuous across the bands, and for
+ * |Z| just outside a radius of 2 it is the iteration value itself, so the
+ * continuous values sit between the integer ones. Pixels which did not
+ * escape keep their iteration value. Only frames calculated in double
+ * arithmetic can be worked out this way, as each escaped pixel is iterated
+ * again.
+ *
+ */
+public class SmoothKernel implements TileKernel {
+
+    // 256 squared; large enough for the continuous value to be smooth
+    static final double BAILOUT_SQUARED = 65536;
+    // how many more iterations than the pixel's value Z may take to pass
+    // the bailout, which takes about three from a radius of 2
+    private static final int EXTRA_ITERATIONS = 16;
+    private static final double LOG_2 = Math.log(2);
+
+    private final TileGrid grid;
+    private final int maxIterations;
+    private final float[] smooth;
+
+    /**
+     * Creates a kernel for one frame.
+     *
+     * @param grid
+     *            the grid the frame's pixels lie on
+     * @param maxIterations
+     *            the maximum number of iterations the frame was calculated
+     *            with
+     * @param smooth
+     *            the array to write the continuous values to, laid out like
+     *            the frame's buffer
+     */
+    SmoothKernel(TileGrid grid, int maxIterations, float[] smooth) {
+        this.grid = grid;
+        this.maxIterations = maxIterations;
+        this.smooth = smooth;
+    }
+
+    @Override
+    public void calcTile(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+        for (int y = y0; y < y1; y++) {
+            double cImaginary = this.grid.imagAt(y);
+            int index = offset + y * stride + x0;
+            for (int x = x0; x < x1; x++, index++) {
+                int n = buffer[index];
+                if (n <= 0 || n >= this.maxIterations) {
+                    this.smooth[index] = n;
+                } else {
+                    this.smooth[index] = this.smoothValue(this.grid.realAt(x), cImaginary, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterates C again until Z passes the bailout, and returns its
+     * continuous escape value, kept below maxIterations so that the pixel is
+     * not taken to be inside the set. Returns n if Z does not pass the
+     * bailout soon enough after n iterations.
+     */
+    private float smoothValue(double cReal, double cImaginary, int n) {
+        double zr = 0;
+        double zi = 0;
+        int limit = n + EXTRA_ITERATIONS;
+        int k = 0;
+        double modulusSquared = 0;
+        while (k < limit) {
+            double zr2 = zr * zr;
+            double zi2 = zi * zi;
+            modulusSquared = zr2 + zi2;
+            if (modulusSquared > BAILOUT_SQUARED) {
+                break;
+            }
+            zi = 2 * zr * zi + cImaginary;
+            zr = zr2 - zi2 + cReal;
+            k++;
+        }
+        if (modulusSquared <= BAILOUT_SQUARED) {
+            return n;
+        }
+        double value = k + 1 - Math.log(0.5 * Math.log(modulusSquared) / LOG_2) / LOG_2;
+        return (float) Math.max(0, Math.min(value, Math.nextDown((float) this.maxIterations)));
+    }
+}
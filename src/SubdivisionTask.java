@@ -0,0 +1,142 @@
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A fork/join task which calculates a rectangle of the Mandelbrot set by
+ * Mariani-Silver subdivision. The pixels on the border of the rectangle must
+ * already have been calculated when the task runs. If every border pixel has
+ * the same iteration value, the inside of the rectangle is filled with that
+ * value without being calculated. Otherwise the rectangle is cut in two along
+ * its longer side, the line of pixels between the halves is calculated, and
+ * each half is handled the same way. Rectangles narrower than MIN_SIZE are
+ * calculated pixel by pixel.
+ *
+ * Filling is exact for the black inside of the set, which is connected, and
+ * in practice for the flat bands around it, but a thin filament that crosses
+ * a rectangle without touching its border is lost. SubdivisionTaskTest
+ * measures how often that happens.
+ *
+ */
+public class SubdivisionTask extends RecursiveAction {
+
+    // rectangles with a side this short or shorter are calculated directly
+    static final int MIN_SIZE = 6;
+
+    private static final long serialVersionUID = 1L;
+
+    private final TileKernel kernel;
+    private final int[] buffer;
+    private final int offset;
+    private final int stride;
+    private final int x0, y0, x1, y1;
+
+    /**
+     * Creates a task for the rectangle of pixels from (x0, y0) inclusive to
+     * (x1, y1) exclusive, whose border pixels have already been calculated.
+     *
+     * @param kernel
+     *            the kernel which calculates the pixels of the frame
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between two neighbouring rows
+     * @param x0
+     *            the left edge of the rectangle
+     * @param y0
+     *            the top edge of the rectangle
+     * @param x1
+     *            the right edge of the rectangle (exclusive)
+     * @param y1
+     *            the bottom edge of the rectangle (exclusive)
+     */
+    SubdivisionTask(TileKernel kernel, int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+        this.kernel = kernel;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.stride = stride;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
+    }
+
+    /**
+     * Calculates the outermost ring of pixels of the rectangle, so that a
+     * SubdivisionTask can then be run for it.
+     */
+    void calcBorder() {
+        this.calc(this.x0, this.y0, this.x1, this.y0 + 1);
+        if (this.y1 - this.y0 > 1) {
+            this.calc(this.x0, this.y1 - 1, this.x1, this.y1);
+        }
+        this.calc(this.x0, this.y0 + 1, this.x0 + 1, this.y1 - 1);
+        if (this.x1 - this.x0 > 1) {
+            this.calc(this.x1 - 1, this.y0 + 1, this.x1, this.y1 - 1);
+        }
+    }
+
+    @Override
+    protected void compute() {
+        int w = this.x1 - this.x0;
+        int h = this.y1 - this.y0;
+
+        if (w <= MIN_SIZE || h <= MIN_SIZE) {
+            this.calc(this.x0 + 1, this.y0 + 1, this.x1 - 1, this.y1 - 1);
+            return;
+        }
+
+        int value = this.buffer[this.index(this.x0, this.y0)];
+        if (this.borderIs(value)) {
+            for (int y = this.y0 + 1; y < this.y1 - 1; y++) {
+                int start = this.index(this.x0 + 1, y);
+                Arrays.fill(this.buffer, start, start + w - 2, value);
+            }
+            return;
+        }
+
+        // the two halves share the line of pixels between them
+        if (w >= h) {
+            int mid = this.x0 + w / 2;
+            this.calc(mid, this.y0 + 1, mid + 1, this.y1 - 1);
+            invokeAll(this.subTask(this.x0, this.y0, mid + 1, this.y1), this.subTask(mid, this.y0, this.x1, this.y1));
+        } else {
+            int mid = this.y0 + h / 2;
+            this.calc(this.x0 + 1, mid, this.x1 - 1, mid + 1);
+            invokeAll(this.subTask(this.x0, this.y0, this.x1, mid + 1), this.subTask(this.x0, mid, this.x1, this.y1));
+        }
+    }
+
+    private boolean borderIs(int value) {
+        int top = this.index(this.x0, this.y0);
+        int bottom = this.index(this.x0, this.y1 - 1);
+        for (int i = 0; i < this.x1 - this.x0; i++) {
+            if (this.buffer[top + i] != value || this.buffer[bottom + i] != value) {
+                return false;
+            }
+        }
+        int left = this.index(this.x0, this.y0 + 1);
+        int right = this.index(this.x1 - 1, this.y0 + 1);
+        for (int i = 0; i < this.y1 - this.y0 - 2; i++) {
+            if (this.buffer[left + i * this.stride] != value || this.buffer[right + i * this.stride] != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void calc(int cx0, int cy0, int cx1, int cy1) {
+        if (cx0 < cx1 && cy0 < cy1) {
+            this.kernel.calcTile(this.buffer, this.offset, this.stride, cx0, cy0, cx1, cy1);
+        }
+    }
+
+    private int index(int x, int y) {
+        return this.offset + y * this.stride + x;
+    }
+
+    private SubdivisionTask subTask(int sx0, int sy0, int sx1, int sy1) {
+        return new SubdivisionTask(this.kernel, this.buffer, this.offset, this.stride, sx0, sy0, sx1, sy1);
+    }
+}
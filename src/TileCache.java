@@ -0,0 +1,299 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the iteration values of recently calculated square tiles of the
+ * Mandelbrot set, so that going back to an area calculated earlier copies its
+ * pixels rather than calculating them again. Tiles lie on the pixel grid of
+ * the frame they were cut from (see TileGrid), and are used by frames on the
+ * same grid: the same frame again, or one moved from it by whole pixels. Only
+ * frames calculated in double arithmetic are cached. A tile is identified by
+ * its TileKey.
+ *
+ * The cache holds at most its memory budget of tiles, dropping the least
+ * recently used first. It counts its hits, misses and evictions. All methods
+ * may be called from any thread.
+ *
+ * Every pixel's C is worked out from its place on the grid alone, so a
+ * frame assembled from cached tiles is identical to a fresh calculation.
+ *
+ */
+public class TileCache {
+
+    // width and height of a tile in pixels
+    static final int TILE_SIZE = 64;
+
+    static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    // a tile's values plus an estimate for its key and map entry
+    private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE + 128;
+
+    // in access order, so the eldest entry is the least recently used
+    private final LinkedHashMap<TileKey, int[]> tiles = new LinkedHashMap<TileKey, int[]>(16, 0.75f, true);
+    private long budgetBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty cache with the default memory budget.
+     */
+    public TileCache() {
+        this(DEFAULT_BUDGET_BYTES);
+    }
+
+    /**
+     * Creates an empty cache with the given memory budget.
+     *
+     * @param budgetBytes
+     *            the most memory the cached tiles may take up
+     */
+    public TileCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Returns a cached tile, counting a hit or a miss. The tile is marked as
+     * the most recently used.
+     *
+     * @param key
+     *            the tile to look up
+     * @return the tile's row-major values, TILE_SIZE to a row, which must not
+     *         be changed; or null if it is not cached
+     */
+    synchronized int[] get(TileKey key) {
+        int[] tile = this.tiles.get(key);
+        if (tile == null) {
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+        }
+        return tile;
+    }
+
+    /**
+     * Adds a tile to the cache, then drops the least recently used tiles
+     * until the cache is within its budget.
+     *
+     * @param key
+     *            the tile's key
+     * @param tile
+     *            the tile's row-major values, TILE_SIZE to a row, which must
+     *            not be changed afterwards
+     */
+    synchronized void put(TileKey key, int[] tile) {
+        this.tiles.put(key, tile);
+        this.evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<TileKey, int[]>> eldest = this.tiles.entrySet().iterator();
+        while (this.tiles.size() * TILE_BYTES > this.budgetBytes && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            this.evictions.increment();
+        }
+    }
+
+    /**
+     * Caches every whole tile of a calculated frame that is not cached
+     * already. Does nothing if the frame is too deep to be cached.
+     *
+     * @param buffer
+     *            the row-major array holding the frame's iteration values
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between the start of two neighbouring
+     *            rows
+     * @param xResolution
+     *            the width in pixels of the frame
+     * @param yResolution
+     *            the height in pixels of the frame
+     * @param viewport
+     *            the area of the complex plane of the frame
+     * @param maxIterations
+     *            the maximum number of iterations the frame was calculated
+     *            with
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param periodicityCheck
+     *            whether the frame was calculated with the periodicity check
+     */
+    public void store(int[] buffer, int offset, int stride, int xResolution, int yResolution,
+            DeepViewport viewport, int maxIterations, double radiusSquared, boolean periodicityCheck) {
+        TileGrid grid = TileGrid.of(viewport, xResolution, yResolution);
+        if (grid == null) {
+            return;
+        }
+        long firstX = firstWholeTile(grid.getOriginX());
+        long firstY = firstWholeTile(grid.getOriginY());
+        for (long tileY = firstY; (tileY + 1) * TILE_SIZE <= grid.getOriginY() + yResolution; tileY++) {
+            for (long tileX = firstX; (tileX + 1) * TILE_SIZE <= grid.getOriginX() + xResolution; tileX++) {
+                TileKey key = new TileKey(grid, tileX, tileY, maxIterations, radiusSquared, periodicityCheck);
+                synchronized (this) {
+                    if (this.tiles.containsKey(key)) {
+                        continue;
+                    }
+                }
+                int x0 = (int) (tileX * TILE_SIZE - grid.getOriginX());
+                int y0 = (int) (tileY * TILE_SIZE - grid.getOriginY());
+                this.put(key, copyTile(buffer, offset, stride, x0, y0));
+            }
+        }
+    }
+
+    /**
+     * Returns whether any whole tile of a frame is cached, without counting
+     * hits or misses.
+     *
+     * @param xResolution
+     *            the width in pixels of the frame
+     * @param yResolution
+     *            the height in pixels of the frame
+     * @param viewport
+     *            the area of the complex plane of the frame
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param periodicityCheck
+     *            whether the frame is calculated with the periodicity check
+     * @return true if calculating the frame through the cache would hit
+     */
+    public boolean hasAnyTile(int xResolution, int yResolution, DeepViewport viewport, int maxIterations,
+            double radiusSquared, boolean periodicityCheck) {
+        TileGrid grid = TileGrid.of(viewport, xResolution, yResolution);
+        if (grid == null) {
+            return false;
+        }
+        long firstX = firstWholeTile(grid.getOriginX());
+        long firstY = firstWholeTile(grid.getOriginY());
+        synchronized (this) {
+            for (long tileY = firstY; (tileY + 1) * TILE_SIZE <= grid.getOriginY() + yResolution; tileY++) {
+                for (long tileX = firstX; (tileX + 1) * TILE_SIZE <= grid.getOriginX() + xResolution; tileX++) {
+                    if (this.tiles.containsKey(
+                            new TileKey(grid, tileX, tileY, maxIterations, radiusSquared, periodicityCheck))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the first tile whose left (or top) edge is at or after the
+     * given grid pixel.
+     */
+    static long firstWholeTile(long origin) {
+        return Math.floorDiv(origin + TILE_SIZE - 1, TILE_SIZE);
+    }
+
+    /**
+     * Copies the tile whose top left pixel is (x0, y0) out of a frame.
+     */
+    static int[] copyTile(int[] buffer, int offset, int stride, int x0, int y0) {
+        int[] tile = new int[TILE_SIZE * TILE_SIZE];
+        for (int y = 0; y < TILE_SIZE; y++) {
+            System.arraycopy(buffer, offset + (y0 + y) * stride + x0, tile, y * TILE_SIZE, TILE_SIZE);
+        }
+        return tile;
+    }
+
+    /**
+     * Copies a cached tile into a frame with its top left pixel at (x0, y0).
+     */
+    static void pasteTile(int[] tile, int[] buffer, int offset, int stride, int x0, int y0) {
+        for (int y = 0; y < TILE_SIZE; y++) {
+            System.arraycopy(tile, y * TILE_SIZE, buffer, offset + (y0 + y) * stride + x0, TILE_SIZE);
+        }
+    }
+
+    /**
+     * Drops every tile, keeping the counters.
+     */
+    public synchronized void clear() {
+        this.tiles.clear();
+    }
+
+    /**
+     * Returns the most memory the cached tiles may take up.
+     *
+     * @return the budget in bytes
+     */
+    public synchronized long getBudgetBytes() {
+        return this.budgetBytes;
+    }
+
+    /**
+     * Sets the most memory the cached tiles may take up, dropping the least
+     * recently used tiles if they no longer fit.
+     *
+     * @param budgetBytes
+     *            the budget in bytes
+     */
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        this.evict();
+    }
+
+    /**
+     * Returns roughly how much memory the cached tiles take up.
+     *
+     * @return the memory used in bytes
+     */
+    public synchronized long getUsedBytes() {
+        return this.tiles.size() * TILE_BYTES;
+    }
+
+    /**
+     * Returns the number of tiles cached.
+     *
+     * @return the number of tiles
+     */
+    public synchronized int getTileCount() {
+        return this.tiles.size();
+    }
+
+    /**
+     * Returns the number of tiles found in the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Returns the number of tiles looked for and not found.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Returns the number of tiles dropped to stay within the budget.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * Returns the fraction of tiles looked for that were found.
+     *
+     * @return the hit rate from 0 to 1, or 0 if nothing has been looked for
+     */
+    public double getHitRate() {
+        long hits = this.hits.sum();
+        long total = hits + this.misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,30 @@
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for the calculation of one tile of a frame by
+ * a TileKernel, on whichever thread of the calculator's pool calculated it
+ * (see TileEventKernel).
+ *
+ */
+@Name("mandelbrot.Tile")
+@Label("Calculate Tile")
+@Description("Calculation of one rectangle of a frame on a thread of the pool")
+public class TileEvent extends MandelbrotEvent {
+
+    @Label("Left")
+    int x;
+
+    @Label("Top")
+    int y;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Precision")
+    String precision;
+}
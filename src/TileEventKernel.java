@@ -0,0 +1,78 @@
+/**
+ * A TileKernel which records a TileEvent for every rectangle another kernel
+ * calculates. The calculator only puts one in front of the frame's kernel
+ * while the event is enabled in a recording, so frames calculated without a
+ * recording pay nothing for it.
+ *
+ */
+public class TileEventKernel implements TileKernel {
+
+    private final TileKernel kernel;
+    private final DeepViewport viewport;
+    private final int maxIts;
+    private final PrecisionTier tier;
+
+    /**
+     * Creates a kernel which records the tiles another calculates.
+     *
+     * @param kernel
+     *            the kernel which calculates the frame's pixels
+     * @param viewport
+     *            the area of the complex plane of the frame
+     * @param maxIts
+     *            the maximum iterations of the frame
+     * @param tier
+     *            the precision the frame is calculated at
+     */
+    TileEventKernel(TileKernel kernel, DeepViewport viewport, int maxIts, PrecisionTier tier) {
+        this.kernel = kernel;
+        this.viewport = viewport;
+        this.maxIts = maxIts;
+        this.tier = tier;
+    }
+
+    /**
+     * Returns whether a recording wants tile events, so whether a frame
+     * starting now should be calculated through this kernel.
+     *
+     * @return true if TileEvent is enabled
+     */
+    static boolean isRecording() {
+        return new TileEvent().isEnabled();
+    }
+
+    @Override
+    public void calcTile(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+        TileEvent event = new TileEvent();
+        event.begin();
+        this.kernel.calcTile(buffer, offset, stride, x0, y0, x1, y1);
+        event.end();
+        if (event.shouldCommit()) {
+            event.setFrame(this.viewport, this.maxIts, buffer, offset, stride, x0, y0, x1, y1);
+            event.x = x0;
+            event.y = y0;
+            event.width = x1 - x0;
+            event.height = y1 - y0;
+            event.precision = this.tier.name();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void calcSpaced(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1, int xStep,
+            int yStep) {
+        TileEvent event = new TileEvent();
+        event.begin();
+        this.kernel.calcSpaced(buffer, offset, stride, x0, y0, x1, y1, xStep, yStep);
+        event.end();
+        if (event.shouldCommit()) {
+            event.setFrame(this.viewport, this.maxIts, buffer, offset, stride, x0, y0, x1, y1, xStep, yStep);
+            event.x = x0;
+            event.y = y0;
+            event.width = Math.max(0, x1 - x0);
+            event.height = Math.max(0, y1 - y0);
+            event.precision = this.tier.name();
+            event.commit();
+        }
+    }
+}
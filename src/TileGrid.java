@@ -0,0 +1,167 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * The grid of pixels a frame is calculated on in double arithmetic, and where
+ * the frame sits on it. Pixel x of the grid has the real value
+ * x * realStep, with pixel 0 at 0, and likewise for the imaginary axis, so
+ * the constant C of a frame's pixel (x, y) is worked out as
+ * (originX + x) * realStep and (originY + y) * imagStep: a whole number of
+ * steps, rounded once. Every frame with the same steps, which is every frame
+ * moved from another by whole pixels (see DeepViewport.pan), lies on the same
+ * grid, so gives its shared pixels the same C and can share tiles of a
+ * TileCache. The steps are those of the frame itself, so its zoom is kept
+ * exactly; only where its pixels are sampled moves, by less than half a
+ * pixel.
+ *
+ */
+public class TileGrid {
+
+    private final double realStep;
+    private final double imagStep;
+    private final long originX;
+    private final long originY;
+
+    private TileGrid(double realStep, double imagStep, long originX, long originY) {
+        this.realStep = realStep;
+        this.imagStep = imagStep;
+        this.originX = originX;
+        this.originY = originY;
+    }
+
+    /**
+     * Returns the grid a frame of the viewport is calculated on. Its steps are
+     * the viewport's spans divided by the resolution, and its origin is the
+     * grid pixel nearest the viewport's minimum, worked out exactly from the
+     * viewport's centre.
+     *
+     * @param viewport
+     *            the area of the complex plane of the frame
+     * @param xResolution
+     *            the width in pixels of the frame
+     * @param yResolution
+     *            the height in pixels of the frame
+     * @return the frame's grid
+     */
+    public static TileGrid forFrame(DeepViewport viewport, int xResolution, int yResolution) {
+        double realStep = viewport.getRealSpan() / xResolution;
+        double imagStep = viewport.getImagSpan() / yResolution;
+        return new TileGrid(realStep, imagStep, originOf(viewport.getCentreReal(), viewport.getRealSpan(), realStep),
+                originOf(viewport.getCentreImag(), viewport.getImagSpan(), imagStep));
+    }
+
+    /**
+     * Returns the grid a frame with the given double bounds is calculated on,
+     * as for the viewport with the same bounds.
+     *
+     * @param xResolution
+     *            the width in pixels of the frame
+     * @param yResolution
+     *            the height in pixels of the frame
+     * @param minReal
+     *            the minimum real value
+     * @param maxReal
+     *            the maximum real value
+     * @param minImag
+     *            the minimum imaginary value
+     * @param maxImag
+     *            the maximum imaginary value
+     * @return the frame's grid
+     */
+    public static TileGrid forBounds(int xResolution, int yResolution, double minReal, double maxReal,
+            double minImag, double maxImag) {
+        return forFrame(DeepViewport.fromBounds(minReal, maxReal, minImag, maxImag), xResolution, yResolution);
+    }
+
+    /**
+     * Returns the grid of a frame whose tiles can be cached, or null if the
+     * frame is too deep to be calculated in double arithmetic.
+     *
+     * @param viewport
+     *            the area of the complex plane of the frame
+     * @param xResolution
+     *            the width in pixels of the frame
+     * @param yResolution
+     *            the height in pixels of the frame
+     * @return the frame's grid, or null
+     */
+    public static TileGrid of(DeepViewport viewport, int xResolution, int yResolution) {
+        if (PrecisionTier.forViewport(viewport, xResolution, yResolution) != PrecisionTier.DOUBLE
+                || !(viewport.getRealSpan() > 0) || !(viewport.getImagSpan() > 0)) {
+            return null;
+        }
+        return forFrame(viewport, xResolution, yResolution);
+    }
+
+    /**
+     * Returns the grid pixel nearest to centre - span / 2, rounding halves
+     * up. Worked out without rounding, so a centre moved by a whole number of
+     * steps always moves the origin by that number. A zero or infinite step
+     * has every pixel at the origin.
+     */
+    private static long originOf(BigDecimal centre, double span, double step) {
+        if (step == 0 || Double.isInfinite(step) || Double.isNaN(step)) {
+            return 0;
+        }
+        BigDecimal edge = centre.subtract(new BigDecimal(span / 2)).add(new BigDecimal(step / 2));
+        return edge.divide(new BigDecimal(step), 0, RoundingMode.FLOOR).longValueExact();
+    }
+
+    /**
+     * Returns the real value of the frame's column x.
+     *
+     * @param x
+     *            the column, counted from the frame's left edge
+     * @return the real part of C for the column
+     */
+    public double realAt(int x) {
+        return (this.originX + x) * this.realStep;
+    }
+
+    /**
+     * Returns the imaginary value of the frame's row y.
+     *
+     * @param y
+     *            the row, counted from the frame's top edge
+     * @return the imaginary part of C for the row
+     */
+    public double imagAt(int y) {
+        return (this.originY + y) * this.imagStep;
+    }
+
+    /**
+     * Returns the real distance between neighbouring pixels.
+     *
+     * @return the real step
+     */
+    public double getRealStep() {
+        return this.realStep;
+    }
+
+    /**
+     * Returns the imaginary distance between neighbouring pixels.
+     *
+     * @return the imaginary step
+     */
+    public double getImagStep() {
+        return this.imagStep;
+    }
+
+    /**
+     * Returns the x position on the grid of the frame's pixel (0, 0).
+     *
+     * @return the frame's left edge in grid pixels
+     */
+    public long getOriginX() {
+        return this.originX;
+    }
+
+    /**
+     * Returns the y position on the grid of the frame's pixel (0, 0).
+     *
+     * @return the frame's top edge in grid pixels
+     */
+    public long getOriginY() {
+        return this.originY;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Calculates the iteration values for rectangles of one frame. A kernel holds
+ * everything about the frame except which rectangle to calculate, so that
+ * TileTask and SubdivisionTask can share the work of a frame out between
+ * threads without knowing how each pixel is calculated. Kernels which can
+ * calculate pixels spread out across a rectangle quicker than one at a time,
+ * as the passes of a progressive render ask for, override calcSpaced.
+ *
+ */
+public interface TileKernel {
+
+    /**
+     * Calculates the iteration values for the rectangle of pixels from (x0,
+     * y0) inclusive to (x1, y1) exclusive and stores them in buffer. The value
+     * of a pixel must not depend on which rectangle it was calculated as part
+     * of.
+     *
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between two neighbouring rows
+     * @param x0
+     *            the left edge of the rectangle
+     * @param y0
+     *            the top edge of the rectangle
+     * @param x1
+     *            the right edge of the rectangle (exclusive)
+     * @param y1
+     *            the bottom edge of the rectangle (exclusive)
+     */
+    void calcTile(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1);
+
+    /**
+     * Calculates the iteration values for the pixels from (x0, y0) up to but
+     * not including x1 and y1 which are a whole number of xStep pixels right
+     * of x0 and yStep pixels down from y0, and stores them in buffer. Each
+     * pixel's value must be the one calcTile would give it. By default the
+     * pixels are passed to calcTile a row at a time if they are neighbours
+     * and one at a time if not.
+     *
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between two neighbouring rows
+     * @param x0
+     *            the left edge of the pixels
+     * @param y0
+     *            the top edge of the pixels
+     * @param x1
+     *            the right edge of the pixels (exclusive)
+     * @param y1
+     *            the bottom edge of the pixels (exclusive)
+     * @param xStep
+     *            the distance between two neighbouring pixels of a row
+     * @param yStep
+     *            the distance between two neighbouring rows of pixels
+     */
+    default void calcSpaced(int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1, int xStep,
+            int yStep) {
+        for (int y = y0; y < y1; y += yStep) {
+            if (xStep == 1) {
+                this.calcTile(buffer, offset, stride, x0, y, x1, y + 1);
+                continue;
+            }
+            for (int x = x0; x < x1; x += xStep) {
+                this.calcTile(buffer, offset, stride, x, y, x + 1, y + 1);
+            }
+        }
+    }
+}
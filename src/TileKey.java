@@ -0,0 +1,76 @@
+/**
+ * Identifies one tile of a TileCache: the steps of its grid (see TileGrid),
+ * its position in tiles on the grid, and the maximum iterations, escape radius and periodicity
+ * check its values were calculated with. The periodicity check can take
+ * points which escape slowly for points inside the set, so tiles calculated
+ * with it are never used for frames calculated without it, or the other way
+ * round.
+ *
+ */
+public class TileKey {
+
+    private final double realStep;
+    private final double imagStep;
+    private final long tileX;
+    private final long tileY;
+    private final int maxIterations;
+    private final double radiusSquared;
+    private final boolean periodicityCheck;
+
+    /**
+     * Creates the key of a tile.
+     *
+     * @param grid
+     *            the grid the tile lies on
+     * @param tileX
+     *            the tile's column, counting TileCache.TILE_SIZE pixels to a
+     *            tile from pixel 0 of the grid
+     * @param tileY
+     *            the tile's row
+     * @param maxIterations
+     *            the maximum number of iterations
+     * @param radiusSquared
+     *            the squared escape radius
+     * @param periodicityCheck
+     *            whether the periodicity check was switched on
+     */
+    TileKey(TileGrid grid, long tileX, long tileY, int maxIterations, double radiusSquared,
+            boolean periodicityCheck) {
+        this.realStep = grid.getRealStep();
+        this.imagStep = grid.getImagStep();
+        this.tileX = tileX;
+        this.tileY = tileY;
+        this.maxIterations = maxIterations;
+        this.radiusSquared = radiusSquared;
+        this.periodicityCheck = periodicityCheck;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TileKey)) {
+            return false;
+        }
+        TileKey key = (TileKey) other;
+        return Double.compare(this.realStep, key.realStep) == 0 && Double.compare(this.imagStep, key.imagStep) == 0
+                && this.tileX == key.tileX && this.tileY == key.tileY && this.maxIterations == key.maxIterations
+                && Double.compare(this.radiusSquared, key.radiusSquared) == 0
+                && this.periodicityCheck == key.periodicityCheck;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = Double.hashCode(this.realStep);
+        hash = hash * 31 + Double.hashCode(this.imagStep);
+        hash = hash * 31 + Long.hashCode(this.tileX);
+        hash = hash * 31 + Long.hashCode(this.tileY);
+        hash = hash * 31 + this.maxIterations;
+        hash = hash * 31 + Double.hashCode(this.radiusSquared);
+        return hash * 31 + Boolean.hashCode(this.periodicityCheck);
+    }
+
+    @Override
+    public String toString() {
+        return "step " + this.realStep + "/" + this.imagStep + " tile " + this.tileX + "," + this.tileY + " at "
+                + this.maxIterations + " iterations" + (this.periodicityCheck ? " with periodicity check" : "");
+    }
+}
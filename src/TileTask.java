@@ -0,0 +1,80 @@
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A fork/join task which calculates a rectangle of the Mandelbrot set. Tiles
+ * near the edge of the set take far longer than tiles away from it, so rather
+ * than handing each thread an equal share of the frame up front, the rectangle
+ * is halved along its longer side again and again until it is no bigger than
+ * MAX_TILE_AREA. Each half is forked so that idle threads can steal the
+ * larger unfinished halves from busy ones, which keeps every thread working
+ * until the whole frame is done.
+ *
+ */
+public class TileTask extends RecursiveAction {
+
+    // tiles at or below this number of pixels are calculated directly
+    static final int MAX_TILE_AREA = 32 * 32;
+
+    private static final long serialVersionUID = 1L;
+
+    private final TileKernel kernel;
+    private final int[] buffer;
+    private final int offset;
+    private final int stride;
+    private final int x0, y0, x1, y1;
+
+    /**
+     * Creates a task for the rectangle of pixels from (x0, y0) inclusive to
+     * (x1, y1) exclusive.
+     *
+     * @param kernel
+     *            the kernel which calculates the pixels of the frame
+     * @param buffer
+     *            the row-major array to store the iteration values in
+     * @param offset
+     *            the index in buffer of pixel (0, 0)
+     * @param stride
+     *            the distance in buffer between two neighbouring rows
+     * @param x0
+     *            the left edge of the tile
+     * @param y0
+     *            the top edge of the tile
+     * @param x1
+     *            the right edge of the tile (exclusive)
+     * @param y1
+     *            the bottom edge of the tile (exclusive)
+     */
+    TileTask(TileKernel kernel, int[] buffer, int offset, int stride, int x0, int y0, int x1, int y1) {
+        this.kernel = kernel;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.stride = stride;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
+    }
+
+    @Override
+    protected void compute() {
+        int w = this.x1 - this.x0;
+        int h = this.y1 - this.y0;
+
+        if (w * h <= MAX_TILE_AREA) {
+            this.kernel.calcTile(this.buffer, this.offset, this.stride, this.x0, this.y0, this.x1, this.y1);
+            return;
+        }
+
+        if (w >= h) {
+            int mid = this.x0 + w / 2;
+            invokeAll(this.subTask(this.x0, this.y0, mid, this.y1), this.subTask(mid, this.y0, this.x1, this.y1));
+        } else {
+            int mid = this.y0 + h / 2;
+            invokeAll(this.subTask(this.x0, this.y0, this.x1, mid), this.subTask(this.x0, mid, this.x1, this.y1));
+        }
+    }
+
+    private TileTask subTask(int sx0, int sy0, int sx1, int sy1) {
+        return new TileTask(this.kernel, this.buffer, this.offset, this.stride, sx0, sy0, sx1, sy1);
+    }
+}
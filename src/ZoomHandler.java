@@ -2,14 +2,21 @@
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
 
 /**
  * Listens for the user’s mouse input, parses the co-ordinates and passes them
- * to the model.
+ * to the model. Dragging with the left button draws a zoom marquee; dragging
+ * with the right button pans the view.
  *
  */
 public class ZoomHandler extends MouseAdapter {
+    private static final Logger LOGGER = Logger.getLogger(ZoomHandler.class.getName());
     private int x1, x2, y1, y2;
+    private boolean panning;
     private MDisplay panel;
     private Model model;
 
@@ -19,10 +26,13 @@ public class ZoomHandler extends MouseAdapter {
         panel.addMouseListener(new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent mouse) {
-                panel.setZooming(true);
+                ZoomHandler.this.panning = SwingUtilities.isRightMouseButton(mouse);
+                panel.setZooming(!ZoomHandler.this.panning);
                 ZoomHandler.this.x1 = mouse.getX();
                 ZoomHandler.this.y1 = mouse.getY();
-                System.out.println("Mouse pressed at: " + ZoomHandler.this.x1 + "," + ZoomHandler.this.y1);
+                if (LOGGER.isLoggable(Level.FINER)) {
+                    LOGGER.finer("Mouse pressed at: " + ZoomHandler.this.x1 + "," + ZoomHandler.this.y1);
+                }
             }
 
             @Override
@@ -30,6 +40,16 @@ public class ZoomHandler extends MouseAdapter {
                 panel.setZooming(false);
                 ZoomHandler.this.x2 = mouse.getX();
                 ZoomHandler.this.y2 = mouse.getY();
+                if (ZoomHandler.this.panning) {
+                    int dx = ZoomHandler.this.x2 - ZoomHandler.this.x1;
+                    int dy = ZoomHandler.this.y2 - ZoomHandler.this.y1;
+                    if (dx != 0 || dy != 0) {
+                        // the image follows the mouse, so the view moves the
+                        // other way
+                        model.pan(-dx, -dy);
+                    }
+                    return;
+                }
                 ZoomHandler.this.makeSquare();
                 model.calcMinMax(ZoomHandler.this.x1, ZoomHandler.this.y1, ZoomHandler.this.x2, ZoomHandler.this.y2);
             }
@@ -39,6 +59,11 @@ public class ZoomHandler extends MouseAdapter {
             public void mouseDragged(MouseEvent mouse) {
                 ZoomHandler.this.x2 = mouse.getX();
                 ZoomHandler.this.y2 = mouse.getY();
+                if (ZoomHandler.this.panning) {
+                    panel.drawPan(ZoomHandler.this.x2 - ZoomHandler.this.x1,
+                            ZoomHandler.this.y2 - ZoomHandler.this.y1);
+                    return;
+                }
                 ZoomHandler.this.makeSquare();
                 panel.drawZoom(ZoomHandler.this.x1, ZoomHandler.this.y1, ZoomHandler.this.x2, ZoomHandler.this.y2);
             }